@@ -0,0 +1,105 @@
+package app.simsmartgsm.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Traffic modem đã capture (log serial monitor) cho benchmark
+ * - Dòng "&gt;&gt; CMD": lệnh host gửi; "&gt;": prompt "&gt; " của AT+CMGS; "#": comment; còn lại là RX + CRLF
+ * - rx(): toàn bộ bytes modem trả về, đúng như data listener nhận
+ * - responses(prefix): text response (giống AtResponse.getText()) của các lệnh bắt đầu bằng prefix
+ * Mặc định đọc resource traffic/ec25-session.log, file khác: -Dtraffic=/path/to/capture.log
+ */
+public final class Traffic {
+
+    public static final String DEFAULT = "traffic/ec25-session.log";
+
+    private final byte[] rx;
+    private final Map<String, List<String>> responses;
+
+    private Traffic(byte[] rx, Map<String, List<String>> responses) {
+        this.rx = rx;
+        this.responses = responses;
+    }
+
+    public static Traffic load() {
+        String path = System.getProperty("traffic");
+        try {
+            if (path != null) {
+                return parse(Files.readString(Path.of(path), StandardCharsets.ISO_8859_1));
+            }
+            try (InputStream in = Traffic.class.getClassLoader().getResourceAsStream(DEFAULT)) {
+                if (in == null) {
+                    throw new IllegalStateException("Missing resource " + DEFAULT);
+                }
+                return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Traffic parse(String log) {
+        ByteArrayOutputStream rx = new ByteArrayOutputStream();
+        Map<String, List<String>> responses = new LinkedHashMap<>();
+        String command = null;
+        StringBuilder response = new StringBuilder();
+
+        for (String line : log.split("\r?\n", -1)) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith(">> ")) {
+                command = line.substring(3);
+                response.setLength(0);
+                continue;
+            }
+            if (line.equals(">")) {
+                rx.writeBytes("> ".getBytes(StandardCharsets.US_ASCII));
+                continue;
+            }
+            rx.writeBytes((line + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+            if (command == null || line.isEmpty() || line.equals(command)) {
+                continue;
+            }
+            response.append(line).append("\r\n");
+            if (isFinal(line)) {
+                responses.computeIfAbsent(command, key -> new ArrayList<>()).add(response.toString());
+                command = null;
+            }
+        }
+        return new Traffic(rx.toByteArray(), responses);
+    }
+
+    public byte[] rx() {
+        return rx;
+    }
+
+    public String[] responses(String commandPrefix) {
+        List<String> result = new ArrayList<>();
+        responses.forEach((command, texts) -> {
+            if (command.startsWith(commandPrefix)) {
+                result.addAll(texts);
+            }
+        });
+        if (result.isEmpty()) {
+            throw new IllegalStateException("No captured response for " + commandPrefix);
+        }
+        return result.toArray(new String[0]);
+    }
+
+    private static boolean isFinal(String line) {
+        return line.equals("OK") || line.equals("ERROR") || line.equals("NO CARRIER")
+                || line.startsWith("+CME ERROR") || line.startsWith("+CMS ERROR");
+    }
+}
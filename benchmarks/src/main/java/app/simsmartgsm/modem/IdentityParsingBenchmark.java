@@ -0,0 +1,66 @@
+package app.simsmartgsm.modem;
+
+import app.simsmartgsm.bench.Traffic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Parse identity lúc scan port (PortScanService): số SIM (+CNUM, regex), ICCID, IMEI, nhà mạng, sóng
+ * 1 op = mọi response identity / ICCID trong capture
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentityParsingBenchmark {
+
+    private String[] identity;
+    private String[] iccid;
+
+    @Setup
+    public void setup() {
+        Traffic traffic = Traffic.load();
+        identity = traffic.responses("AT+CGSN;+COPS?;+CSQ;+CNUM");
+        iccid = Stream.of(traffic.responses("AT+QCCID"), traffic.responses("AT+CCID"))
+                .flatMap(Stream::of)
+                .toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void phoneNumber(Blackhole blackhole) {
+        for (String response : identity) {
+            blackhole.consume(PortScanService.parsePhoneNumber(response));
+        }
+    }
+
+    @Benchmark
+    public void iccid(Blackhole blackhole) {
+        for (String response : iccid) {
+            blackhole.consume(PortScanService.parseIccid(response));
+        }
+    }
+
+    @Benchmark
+    public void identityBatch(Blackhole blackhole) {
+        for (String response : identity) {
+            blackhole.consume(PortScanService.parseImei(response));
+            blackhole.consume(PortScanService.parseCarrier(response));
+            blackhole.consume(PortScanService.parseSignalStrength(response));
+            blackhole.consume(PortScanService.parsePhoneNumber(response));
+        }
+    }
+}
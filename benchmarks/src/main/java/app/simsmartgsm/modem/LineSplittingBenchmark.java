@@ -0,0 +1,127 @@
+package app.simsmartgsm.modem;
+
+import app.simsmartgsm.bench.Traffic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tách dòng trên bytes RX đã capture, cắt theo kích thước mỗi lần đọc serial
+ * - framer: chỉ AtFramer
+ * - serialPortHandler: cả đường nhận của SerialPortHandler (framer + AtCommandEngine + UrcDispatcher)
+ * 1 op = toàn bộ capture
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineSplittingBenchmark {
+
+    @Param({"32", "512", "4096"})
+    private int readSize;
+
+    private byte[][] reads;
+    private AtFramer framer;
+    private long lineChars;
+
+    private SerialPortHandler handler;
+    private ModemPort.DataListener handlerInput;
+
+    /**
+     * Port giả: giữ listener để bơm bytes vào SerialPortHandler
+     */
+    private final class CapturePort implements ModemPort {
+        @Override
+        public String getName() {
+            return "BENCH";
+        }
+
+        @Override
+        public boolean open(DataListener listener) {
+            handlerInput = listener;
+            return true;
+        }
+
+        @Override
+        public boolean write(byte[] bytes) {
+            return true;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        byte[] rx = Traffic.load().rx();
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < rx.length; offset += readSize) {
+            int length = Math.min(readSize, rx.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(rx, offset, chunk, 0, length);
+            chunks.add(chunk);
+        }
+        reads = chunks.toArray(new byte[0][]);
+
+        framer = new AtFramer(new AtFramer.Listener() {
+            @Override
+            public void onLine(CharSequence line) {
+                lineChars += line.length();
+            }
+
+            @Override
+            public void onPrompt() {
+                lineChars++;
+            }
+        });
+
+        handler = new SerialPortHandler(new CapturePort());
+        handler.open();
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.close();
+    }
+
+    @Benchmark
+    public long framer() {
+        lineChars = 0;
+        for (byte[] read : reads) {
+            int offset = 0;
+            while (offset < read.length) {
+                offset += framer.feed(read, offset, read.length - offset);
+            }
+        }
+        return lineChars;
+    }
+
+    @Benchmark
+    public int serialPortHandler() {
+        for (byte[] read : reads) {
+            handlerInput.onData(read, read.length);
+        }
+        return reads.length;
+    }
+}
@@ -0,0 +1,55 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.bench.Traffic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse trong vòng đời cuộc gọi (ModemCallService): poll AT+CLCC, tìm file ghi âm trong AT+QFLST
+ * 1 op = mọi response tương ứng trong capture
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallParsingBenchmark {
+
+    private String[] clcc;
+    private String[] fileLists;
+
+    @Setup
+    public void setup() {
+        Traffic traffic = Traffic.load();
+        clcc = traffic.responses("AT+CLCC");
+        fileLists = traffic.responses("AT+QFLST");
+    }
+
+    @Benchmark
+    public void parseClccResponse(Blackhole blackhole) {
+        for (String response : clcc) {
+            blackhole.consume(ModemCallService.parseClccResponse(response));
+        }
+    }
+
+    @Benchmark
+    public void findLatestRecordingFile(Blackhole blackhole) {
+        for (String response : fileLists) {
+            String file = ModemCallService.findLatestRecordingFile(response);
+            blackhole.consume(file);
+            blackhole.consume(ModemCallService.findRecordingFileSize(response, file));
+        }
+    }
+}
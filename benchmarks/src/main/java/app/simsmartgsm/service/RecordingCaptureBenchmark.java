@@ -0,0 +1,122 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.modem.QfdwlTransferParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Đường nhận file ghi âm: bytes sau CONNECT của AT+QFDWL -> QfdwlTransferParser -> sink
+ * - knownSize: size từ AT+QFLST (đếm byte) hoặc chưa biết (dò trailer)
+ * - sink: discard (chỉ parser + checksum) hoặc file (RecordingFileWriter append, không fsync)
+ * 1 op = 1 file WAV 256KB (~23s ở 115200 baud)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordingCaptureBenchmark {
+
+    private static final int WAV_SIZE = 256 * 1024;
+
+    @Param({"512", "4096"})
+    private int readSize;
+
+    @Param({"true", "false"})
+    private boolean knownSize;
+
+    @Param({"discard", "file"})
+    private String sink;
+
+    private byte[][] reads;
+    private Path directory;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] wav = new byte[WAV_SIZE];
+        new Random(42).nextBytes(wav);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(WAV_SIZE + 64);
+        stream.writeBytes(wav);
+        stream.writeBytes(("\r\n+QFDWL: " + WAV_SIZE + "," + Integer.toHexString(QfdwlTransferParser.checksum(wav))
+                + "\r\n\r\nOK\r\n").getBytes(StandardCharsets.US_ASCII));
+        byte[] transfer = stream.toByteArray();
+
+        int count = (transfer.length + readSize - 1) / readSize;
+        reads = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int offset = i * readSize;
+            reads[i] = new byte[Math.min(readSize, transfer.length - offset)];
+            System.arraycopy(transfer, offset, reads[i], 0, reads[i].length);
+        }
+        directory = Files.createTempDirectory("recording-bench");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long capture() {
+        RecordingFileWriter writer = sink.equals("file")
+                ? new RecordingFileWriter(directory.resolve("bench.wav"))
+                : null;
+        long[] received = new long[1];
+        QfdwlTransferParser parser = new QfdwlTransferParser("BENCH", knownSize ? WAV_SIZE : -1,
+                new QfdwlTransferParser.Sink() {
+                    @Override
+                    public void onData(byte[] data, int offset, int length) throws IOException {
+                        if (writer != null) {
+                            writer.write(data, offset, length);
+                        }
+                        received[0] += length;
+                    }
+
+                    @Override
+                    public void onComplete(long size, boolean checksumValid) {
+                        if (!checksumValid) {
+                            throw new IllegalStateException("Checksum mismatch");
+                        }
+                    }
+
+                    @Override
+                    public void onError(String reason) {
+                        throw new IllegalStateException(reason);
+                    }
+                });
+
+        for (byte[] read : reads) {
+            int offset = 0;
+            while (offset < read.length && !parser.isDone()) {
+                offset += parser.onBytes(read, offset, read.length - offset);
+            }
+        }
+        if (writer != null) {
+            writer.abort();
+        }
+        return received[0];
+    }
+}
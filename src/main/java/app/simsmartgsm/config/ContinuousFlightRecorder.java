@@ -0,0 +1,108 @@
+package app.simsmartgsm.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.management.jfr.FlightRecorderMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JFR chạy liên tục (settings "default", overhead ~1%), giữ maxAge phút gần nhất trên disk
+ * - Event riêng: SerialRead, AtCommand, CallState, RecordingTransfer (category "SimSmart GSM")
+ * - dump(N): cắt N phút gần nhất ra file .jfr (theo chunk, có thể dư vài giây), xem bằng JMC
+ * - Tắt các event chứa biến môi trường / system property / command line (SPRING_DATA_MONGODB_URI có mật khẩu)
+ */
+@Component
+@Slf4j
+public class ContinuousFlightRecorder {
+
+    // jdk.JVMInformation / jdk.SystemProcess chứa tham số JVM và command line của các process
+    private static final List<String> SENSITIVE_EVENTS = List.of(
+            "jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty", "jdk.JVMInformation", "jdk.SystemProcess");
+
+    @Value("${jfr.enabled:true}")
+    private boolean enabled;
+
+    @Value("${jfr.settings:default}")
+    private String settings;
+
+    @Value("${jfr.max-age-minutes:30}")
+    private long maxAgeMinutes;
+
+    private Recording recording;
+
+    @PostConstruct
+    void start() {
+        if (!enabled || !FlightRecorder.isAvailable()) {
+            log.info("JFR continuous recording disabled");
+            return;
+        }
+        try {
+            Recording created = new Recording(Configuration.getConfiguration(settings));
+            created.setName("simsmart-continuous");
+            SENSITIVE_EVENTS.forEach(created::disable);
+            created.setToDisk(true);
+            created.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+            created.start();
+            recording = created;
+            log.info("🎥 JFR continuous recording started (settings={}, maxAge={}m)", settings, maxAgeMinutes);
+        } catch (Exception e) {
+            log.warn("⚠️ Cannot start JFR recording: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    public boolean isRunning() {
+        return recording != null;
+    }
+
+    public long getMaxAgeMinutes() {
+        return maxAgeMinutes;
+    }
+
+    /**
+     * Ghi N phút gần nhất của recording ra file
+     */
+    public void dump(long minutes, Path target) throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("JFR recording is not running");
+        }
+        FlightRecorderMXBean bean = ManagementFactory.getPlatformMXBean(FlightRecorderMXBean.class);
+        // Clone đã stop: đọc được toàn bộ chunk, recording chính vẫn chạy
+        long cloneId = bean.cloneRecording(recording.getId(), true);
+        try {
+            long startTime = System.currentTimeMillis() - Duration.ofMinutes(minutes).toMillis();
+            long streamId = bean.openStream(cloneId, Map.of("startTime", String.valueOf(startTime)));
+            try (OutputStream out = Files.newOutputStream(target)) {
+                byte[] block;
+                while ((block = bean.readStream(streamId)) != null) {
+                    out.write(block);
+                }
+            } finally {
+                bean.closeStream(streamId);
+            }
+        } finally {
+            bean.closeRecording(cloneId);
+        }
+        log.info("🎥 JFR dump: last {}m -> {} ({} bytes)", minutes, target, Files.size(target));
+    }
+}
@@ -0,0 +1,76 @@
+package app.simsmartgsm.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * GET /actuator/jfrdump?minutes=5 -> file .jfr của N phút gần nhất (giống /actuator/heapdump)
+ * File tạm bị xoá sau khi tải xong
+ */
+@Component
+@WebEndpoint(id = "jfrdump")
+@RequiredArgsConstructor
+public class JfrDumpEndpoint {
+
+    private static final long DEFAULT_MINUTES = 5;
+
+    private final ContinuousFlightRecorder recorder;
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump(@Nullable Long minutes) throws IOException {
+        if (!recorder.isRunning()) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+        }
+        long range = Math.max(1, Math.min(minutes != null ? minutes : DEFAULT_MINUTES, recorder.getMaxAgeMinutes()));
+        Path file = Files.createTempFile("simsmart-", ".jfr");
+        try {
+            recorder.dump(range, file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new WebEndpointResponse<>(new TemporaryFileResource(file), WebEndpointResponse.STATUS_OK);
+    }
+
+    /**
+     * Xoá file tạm khi stream response được đóng
+     */
+    private static final class TemporaryFileResource extends FileSystemResource {
+
+        private TemporaryFileResource(Path file) {
+            super(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(getFile().toPath());
+                    }
+                }
+            };
+        }
+
+        @Override
+        public boolean isFile() {
+            // Không để Spring MVC gửi thẳng file (bỏ qua getInputStream -> không xoá được)
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package app.simsmartgsm.config;
+
+import app.simsmartgsm.entity.CallRecord;
+import app.simsmartgsm.entity.SmsMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tạo index khai báo trên entity (@CompoundIndex / @Indexed)
+ * - auto-index-creation tắt: Mongo ở xa, không để startup đợi / fail vì tạo index
+ * - Chạy background sau khi app ready, index đã có thì Mongo bỏ qua
+ * - Xoá index cũ đã được compound index thay thế
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class MongoIndexInitializer {
+
+    private static final List<Class<?>> INDEXED_ENTITIES = List.of(CallRecord.class, SmsMessage.class);
+    // startTime đơn lẻ: thừa khi đã có startTime_id
+    private static final Map<Class<?>, List<String>> OBSOLETE_INDEXES = Map.of(CallRecord.class, List.of("startTime"));
+
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        Thread thread = new Thread(this::createIndexes, "mongo-index-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void createIndexes() {
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> entity : INDEXED_ENTITIES) {
+            try {
+                IndexOperations indexOps = mongoTemplate.indexOps(entity);
+                dropObsoleteIndexes(entity, indexOps);
+                int count = 0;
+                for (IndexDefinition definition : resolver.resolveIndexFor(entity)) {
+                    indexOps.createIndex(definition);
+                    count++;
+                }
+                log.info("🗂️ Ensured {} index(es) on {}", count, mongoTemplate.getCollectionName(entity));
+            } catch (Exception e) {
+                log.warn("⚠️ Cannot ensure indexes for {}: {}", entity.getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+    private void dropObsoleteIndexes(Class<?> entity, IndexOperations indexOps) {
+        List<String> obsolete = OBSOLETE_INDEXES.getOrDefault(entity, List.of());
+        if (obsolete.isEmpty()) {
+            return;
+        }
+        indexOps.getIndexInfo().stream()
+                .filter(info -> obsolete.contains(info.getName()))
+                .forEach(info -> {
+                    indexOps.dropIndex(info.getName());
+                    log.info("🗑️ Dropped obsolete index {} on {}", info.getName(), mongoTemplate.getCollectionName(entity));
+                });
+    }
+}
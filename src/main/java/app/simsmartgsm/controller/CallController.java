@@ -1,5 +1,6 @@
 package app.simsmartgsm.controller;
 
+import app.simsmartgsm.service.CallStatusBroadcaster;
 import app.simsmartgsm.service.ModemCallService;
 import app.simsmartgsm.service.ModemCallService.CallState;
 import app.simsmartgsm.service.ModemCallService.RecordingState;
@@ -13,6 +14,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.File;
+import java.util.Map;
 
 /**
  * REST API cho call và recording
@@ -25,6 +27,7 @@ import java.io.File;
 public class CallController {
 
     private final ModemCallService callService;
+    private final CallStatusBroadcaster callStatusBroadcaster;
 
     /**
      * Bắt đầu cuộc gọi - TỰ ĐỘNG XỬ LÝ TOÀN BỘ
@@ -249,6 +252,15 @@ public class CallController {
         }
     }
 
+    /**
+     * Snapshot trạng thái mọi port cho client mới kết nối / bị hụt seq
+     * GET /api/call/status-snapshot -> {seq, ports: {COM5: {..., seq}}}
+     */
+    @GetMapping("/status-snapshot")
+    public Map<String, Object> getStatusSnapshot() {
+        return callStatusBroadcaster.snapshot();
+    }
+
     // Response classes
     public static class ApiResponse {
         public boolean success;
@@ -2,13 +2,16 @@ package app.simsmartgsm.controller;
 
 import app.simsmartgsm.entity.CallRecord;
 import app.simsmartgsm.repository.CallRecordRepository;
+import app.simsmartgsm.service.HistoryQueryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * REST Controller cho Call Records
@@ -20,6 +23,7 @@ import java.util.List;
 public class CallRecordController {
 
     private final CallRecordRepository callRecordRepository;
+    private final HistoryQueryService historyQueryService;
 
     /**
      * Lấy danh sách call records gần đây
@@ -69,4 +73,24 @@ public class CallRecordController {
             return List.of();
         }
     }
+
+    /**
+     * Lịch sử call records phân trang theo cursor (không offset)
+     * GET /api/call-records/history?comPort=COM75&deviceId=...&simPhone=+8491&limit=50&cursor=...
+     * - simPhone: tìm theo prefix đã chuẩn hoá
+     * - cursor: lấy từ nextCursor của trang trước, null = hết dữ liệu
+     */
+    @GetMapping("/history")
+    public ResponseEntity<?> getHistory(
+            @RequestParam(required = false) String comPort,
+            @RequestParam(required = false) String deviceId,
+            @RequestParam(required = false) String simPhone,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(historyQueryService.callRecords(comPort, deviceId, simPhone, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 }
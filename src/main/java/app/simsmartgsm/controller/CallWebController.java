@@ -1,6 +1,7 @@
 package app.simsmartgsm.controller;
 
 import app.simsmartgsm.modem.PortScanService;
+import app.simsmartgsm.modem.PortWatcher;
 import app.simsmartgsm.modem.PortScanService.PortInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -15,6 +16,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -28,6 +30,7 @@ import java.util.concurrent.Executors;
 public class CallWebController {
 
     private final PortScanService portScanService;
+    private final PortWatcher portWatcher;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
@@ -103,6 +106,33 @@ public class CallWebController {
         return emitter;
     }
 
+    /**
+     * SSE endpoint nhận event cắm/rút modem từ PortWatcher
+     * GET /call-ui/api/modem-call/port-events
+     */
+    @GetMapping(value = "/api/modem-call/port-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter portEvents() {
+        SseEmitter emitter = new SseEmitter(30 * 60 * 1000L); // 30 minute timeout, FE tự reconnect
+
+        Consumer<Map<String, Object>> listener = event -> {
+            try {
+                sendEvent(emitter, (String) event.get("type"), event);
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+        };
+        portWatcher.addListener(listener);
+
+        emitter.onCompletion(() -> portWatcher.removeListener(listener));
+        emitter.onTimeout(() -> {
+            portWatcher.removeListener(listener);
+            emitter.complete();
+        });
+        emitter.onError(e -> portWatcher.removeListener(listener));
+
+        return emitter;
+    }
+
     /**
      * Helper method to send SSE events
      */
@@ -1,11 +1,15 @@
 package app.simsmartgsm.controller;
 
+import app.simsmartgsm.entity.SmsMessage;
 import app.simsmartgsm.modem.PortScanService;
 import app.simsmartgsm.modem.PortScanService.PortInfo;
+import app.simsmartgsm.service.OutboundSmsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
@@ -22,18 +26,20 @@ import java.util.Map;
 public class ModemApiController {
 
     private final PortScanService portScanService;
+    private final OutboundSmsService outboundSmsService;
 
     /**
      * Regular scan ports endpoint (non-SSE)
      * GET /api/modem-call/scan-ports
      * Sử dụng cho: 1) Nút scan 2) Auto-scan khi start app
+     * ?full=true: bỏ qua cache, query lại thông tin mọi port
      */
     @GetMapping("/scan-ports")
-    public Map<String, Object> scanPorts() {
+    public Map<String, Object> scanPorts(@RequestParam(defaultValue = "false") boolean full) {
         log.info("🔍 scan-ports endpoint called");
 
         try {
-            List<PortInfo> ports = portScanService.scanAllPorts();
+            List<PortInfo> ports = portScanService.scanAllPorts(full);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -52,4 +58,41 @@ public class ModemApiController {
             return response;
         }
     }
+
+    /**
+     * Gửi SMS qua hàng đợi của modem (trả về ngay, không đợi network)
+     * POST /api/modem-call/send-sms?comPort=COM5&targetPhone=...&message=...
+     */
+    @PostMapping("/send-sms")
+    public Map<String, Object> sendSms(@RequestParam String comPort,
+                                       @RequestParam String targetPhone,
+                                       @RequestParam String message) {
+        Map<String, Object> response = new HashMap<>();
+        if (comPort.isBlank() || targetPhone.isBlank() || message.isEmpty()) {
+            response.put("success", false);
+            response.put("error", "comPort, targetPhone and message are required");
+            return response;
+        }
+
+        try {
+            SmsMessage sms = outboundSmsService.enqueue(comPort, targetPhone, message);
+            response.put("success", true);
+            response.put("id", sms.getId());
+            response.put("status", sms.getStatus());
+        } catch (Exception e) {
+            log.error("❌ Error queueing SMS on {}", comPort, e);
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * Thống kê gửi SMS theo modem (queued / sent / failed / messagesPerSecond)
+     * GET /api/modem-call/sms-stats
+     */
+    @GetMapping("/sms-stats")
+    public Map<String, Map<String, Object>> smsStats() {
+        return outboundSmsService.getStats();
+    }
 }
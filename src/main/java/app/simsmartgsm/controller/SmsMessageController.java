@@ -0,0 +1,38 @@
+package app.simsmartgsm.controller;
+
+import app.simsmartgsm.service.HistoryQueryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * REST Controller cho lịch sử SMS
+ */
+@RestController
+@RequestMapping("/api/sms-messages")
+@RequiredArgsConstructor
+public class SmsMessageController {
+
+    private final HistoryQueryService historyQueryService;
+
+    /**
+     * Lịch sử SMS phân trang theo cursor (không offset)
+     * GET /api/sms-messages/history?toNumber=0912&comPort=COM5&type=INBOX&limit=50&cursor=...
+     * - toNumber: tìm theo prefix đã chuẩn hoá (bỏ khoảng trắng, dấu -, có/không dấu +)
+     */
+    @GetMapping("/history")
+    public ResponseEntity<?> getHistory(
+            @RequestParam(required = false) String toNumber,
+            @RequestParam(required = false) String comPort,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(historyQueryService.smsMessages(toNumber, comPort, type, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -2,6 +2,9 @@ package app.simsmartgsm.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
@@ -12,6 +15,14 @@ import java.time.Instant;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "call_records")
+// Lịch sử cuộc gọi: lọc theo port / máy / SIM, sort startTime giảm dần, _id để phân trang cursor
+// startTime_id: trang lịch sử mặc định (không filter)
+@CompoundIndexes({
+        @CompoundIndex(name = "startTime_id", def = "{'startTime': -1, '_id': -1}"),
+        @CompoundIndex(name = "comPort_startTime", def = "{'comPort': 1, 'startTime': -1, '_id': -1}"),
+        @CompoundIndex(name = "deviceId_startTime", def = "{'deviceId': 1, 'startTime': -1, '_id': -1}"),
+        @CompoundIndex(name = "simPhone_startTime", def = "{'simPhone': 1, 'startTime': -1, '_id': -1}")
+})
 public class CallRecord {
 
     @Id
@@ -47,6 +58,8 @@ public class CallRecord {
     private Instant endTime; // NEW: Thời gian kết thúc
     private Integer durationSeconds; // NEW: Thời lượng cuộc gọi (giây)
 
+    // TTL index: Mongo tự xoá khi quá expireAt (null = giữ vĩnh viễn)
+    @Indexed(name = "expireAt_ttl", expireAfter = "0s")
     private Instant expireAt;
     private Instant createdAt;
     private Instant updatedAt;
@@ -48,6 +48,9 @@ public class Sim {
 
     private String imsi;
 
+    /** IMEI của modem đang chứa SIM */
+    private String imei;
+
     private String agentId;
 
     /** Nội dung (ghi chú / thông tin khác) */
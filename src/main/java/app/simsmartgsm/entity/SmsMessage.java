@@ -3,6 +3,9 @@ package app.simsmartgsm.entity;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
@@ -13,6 +16,15 @@ import java.time.Instant;
 @AllArgsConstructor
 @NoArgsConstructor(force = true) // nếu cần cho MongoDB
 @Document(collection = "sms_messages")
+// Tra cứu theo số nhận (prefix), theo port / loại, và tin OUTBOX chờ gửi lại khi khởi động
+// timestamp_id: trang lịch sử mặc định (không filter)
+@CompoundIndexes({
+        @CompoundIndex(name = "timestamp_id", def = "{'timestamp': -1, '_id': -1}"),
+        @CompoundIndex(name = "toNumber_timestamp", def = "{'toNumber': 1, 'timestamp': -1, '_id': -1}"),
+        @CompoundIndex(name = "comPort_timestamp", def = "{'comPort': 1, 'timestamp': -1, '_id': -1}"),
+        @CompoundIndex(name = "type_timestamp", def = "{'type': 1, 'timestamp': -1, '_id': -1}"),
+        @CompoundIndex(name = "device_type_status", def = "{'deviceName': 1, 'type': 1, 'status': 1}")
+})
 public class SmsMessage {
     @Id
     private String id;
@@ -54,9 +66,19 @@ public class SmsMessage {
     private String status;
 
     private String serviceType;
+
+    /** Mã OTP tách từ nội dung (nếu có) */
+    private String otpCode;
+
+    /** Ngôn ngữ nội dung (ISO 639-1, vd: vi / en) */
+    private String language;
     
     private Long accountId;
 
     /** Thời điểm lưu SMS */
     private Instant timestamp;
+
+    /** Hết hạn lưu trữ, TTL index tự xoá (null = giữ vĩnh viễn) */
+    @Indexed(name = "expireAt_ttl", expireAfter = "0s")
+    private Instant expireAt;
 }
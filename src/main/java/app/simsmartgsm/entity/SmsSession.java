@@ -14,7 +14,7 @@ import java.time.LocalDateTime;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @CompoundIndexes({
         @CompoundIndex(name = "unique_campaign_phone", def = "{'campaignId': 1, 'phoneNumber': 1}", unique = true)
 })
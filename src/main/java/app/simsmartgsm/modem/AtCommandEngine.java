@@ -0,0 +1,396 @@
+package app.simsmartgsm.modem;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * AtCommandEngine - hàng đợi AT command cho MỘT port
+ * - Các command được gửi lần lượt theo FIFO, mỗi lúc chỉ 1 command chờ response
+ * - Response được ghép từ các dòng AtFramer tách ra (không polling, không clear buffer)
+ * - Dòng không thuộc command đang chờ (RING, +CMTI, ...) được coi là URC
+ * - Command timeout: gửi "AT" đồng bộ, bỏ mọi dòng tới khi nhận final result của command cũ + của "AT"
+ *   (hoặc im lặng 2 x timeout) rồi mới gửi command kế tiếp, response trễ không lọt sang command sau
+ */
+@Slf4j
+public class AtCommandEngine {
+
+    private static final byte CTRL_Z = 0x1A;
+    private static final int MAX_RESPONSE_LINES = 512;
+    private static final String SYNC_COMMAND = "AT";
+
+    // Một thread chung cho timeout của tất cả các port (chỉ schedule, không block)
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "at-command-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String portName;
+    private final Predicate<byte[]> writer;
+    private final ModemMetrics.Port metrics;
+
+    private final Deque<PendingCommand> queue = new ArrayDeque<>();
+    private PendingCommand inFlight;
+    // Đang đồng bộ lại sau timeout, không gửi command mới
+    private Resync resync;
+
+    /**
+     * @param writer ghi bytes ra port, trả về true nếu ghi thành công
+     */
+    public AtCommandEngine(String portName, Predicate<byte[]> writer) {
+        this(portName, writer, ModemMetrics.NOOP.port(portName));
+    }
+
+    public AtCommandEngine(String portName, Predicate<byte[]> writer, ModemMetrics.Port metrics) {
+        this.portName = portName;
+        this.writer = writer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Đưa command vào hàng đợi, future hoàn thành khi nhận được final result code
+     * hoặc TimeoutException sau timeoutMs (tính từ lúc command thực sự được gửi)
+     */
+    public CompletableFuture<AtResponse> submit(String command, long timeoutMs) {
+        return submit(command, null, timeoutMs);
+    }
+
+    /**
+     * Command có prompt "> " (vd: AT+CMGS): promptPayload được gửi kèm Ctrl+Z khi nhận prompt
+     */
+    public CompletableFuture<AtResponse> submit(String command, byte[] promptPayload, long timeoutMs) {
+        PendingCommand pending = new PendingCommand(command, promptPayload, timeoutMs);
+        List<PendingCommand> failed;
+        synchronized (this) {
+            queue.addLast(pending);
+            failed = dispatchNextLocked();
+        }
+        failAll(failed, "Failed to write command");
+        return pending.future;
+    }
+
+    /**
+     * Số command đang chờ (kể cả command đang gửi)
+     */
+    public synchronized int pendingCount() {
+        return queue.size() + (inFlight != null ? 1 : 0);
+    }
+
+    /**
+     * Huỷ toàn bộ command đang chờ (khi đóng port)
+     */
+    public void close() {
+        List<PendingCommand> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(queue);
+            queue.clear();
+            if (resync != null) {
+                resync.timer.cancel(false);
+                resync = null;
+            }
+            if (inFlight != null) {
+                pending.add(0, inFlight);
+                inFlight = null;
+            }
+        }
+        failAll(pending, "Port closed");
+    }
+
+    /**
+     * Nhận một dòng từ AtFramer (view chỉ hợp lệ trong lúc gọi, không giữ lại)
+     */
+    public void onLine(CharSequence line) {
+        PendingCommand done = null;
+        AtResponse response = null;
+        List<PendingCommand> failed = List.of();
+
+        synchronized (this) {
+            if (resync != null) {
+                failed = onResyncLineLocked(line);
+            } else {
+                PendingCommand current = inFlight;
+                if (current == null || isUnsolicited(line, current.command)) {
+                    onUrcLocked(line);
+                    return;
+                }
+
+                // Echo của command (ATE1)
+                if (AtFramer.contentEquals(line, current.command)) {
+                    return;
+                }
+
+                if (isFinalResult(line, current.command)) {
+                    done = current;
+                    response = new AtResponse(current.command, current.lines, line.toString());
+                    inFlight = null;
+                    failed = dispatchNextLocked();
+                } else if (current.lines.size() < MAX_RESPONSE_LINES) {
+                    current.lines.add(line.toString());
+                }
+            }
+        }
+
+        if (done != null) {
+            record(done, response.isOk() ? "ok" : "error");
+            done.complete(response);
+        }
+        failAll(failed, "Failed to write command");
+    }
+
+    /**
+     * Nhận prompt "> " từ AtFramer: gửi payload + Ctrl+Z của command đang chờ
+     */
+    public void onPrompt() {
+        synchronized (this) {
+            PendingCommand current = inFlight;
+            if (current == null || current.promptPayload == null) {
+                log.debug("Unexpected prompt on {}", portName);
+                return;
+            }
+            byte[] payload = new byte[current.promptPayload.length + 1];
+            System.arraycopy(current.promptPayload, 0, payload, 0, current.promptPayload.length);
+            payload[payload.length - 1] = CTRL_Z;
+            if (!writer.test(payload)) {
+                log.warn("Failed to write prompt payload for '{}' on {}", current.command, portName);
+            }
+        }
+    }
+
+    // ========== PRIVATE METHODS ==========
+
+    /**
+     * Gửi command kế tiếp trong hàng đợi, trả về các command ghi thất bại
+     */
+    private List<PendingCommand> dispatchNextLocked() {
+        List<PendingCommand> failed = null;
+        while (inFlight == null && resync == null && !queue.isEmpty()) {
+            PendingCommand next = queue.pollFirst();
+            byte[] bytes = (next.command + "\r").getBytes(StandardCharsets.US_ASCII);
+            if (writer.test(bytes)) {
+                inFlight = next;
+                next.sentAt = System.nanoTime();
+                AtCommandEvent event = new AtCommandEvent();
+                if (event.isEnabled()) {
+                    event.begin();
+                    next.event = event;
+                }
+                next.timeoutTask = TIMEOUT_SCHEDULER.schedule(() -> onTimeout(next), next.timeoutMs,
+                        TimeUnit.MILLISECONDS);
+                log.debug("Sent command to {}: {}", portName, next.command);
+            } else {
+                if (failed == null) {
+                    failed = new ArrayList<>();
+                }
+                failed.add(next);
+            }
+        }
+        return failed != null ? failed : List.of();
+    }
+
+    private void onTimeout(PendingCommand pending) {
+        List<PendingCommand> failed;
+        synchronized (this) {
+            if (inFlight != pending) {
+                return;
+            }
+            inFlight = null;
+            startResyncLocked(pending);
+            failed = dispatchNextLocked();
+        }
+        record(pending, "timeout");
+        log.warn("⏱️ Timeout waiting response for '{}' on {} after {}ms",
+                pending.command, portName, pending.timeoutMs);
+        pending.future.completeExceptionally(new TimeoutException(
+                "No final result for " + pending.command + " on " + portName));
+        failAll(failed, "Failed to write command");
+    }
+
+    /**
+     * Gửi "AT" đồng bộ: final result thứ 1 (nếu có) là của command timeout, thứ 2 là của "AT"
+     */
+    private void startResyncLocked(PendingCommand timedOut) {
+        if (!writer.test((SYNC_COMMAND + "\r").getBytes(StandardCharsets.US_ASCII))) {
+            return;
+        }
+        Resync started = new Resync(timedOut.command, timedOut.timeoutMs * 2);
+        resync = started;
+        restartResyncTimerLocked(started);
+        log.debug("Resyncing {} after timeout of '{}'", portName, timedOut.command);
+    }
+
+    /**
+     * Dòng nhận được khi đang resync: URC vẫn được báo, còn lại bỏ qua
+     * @return command ghi thất bại nếu resync vừa xong
+     */
+    private List<PendingCommand> onResyncLineLocked(CharSequence line) {
+        Resync current = resync;
+        // Trước final result đầu tiên, dòng có thể thuộc command cũ (vd: NO CARRIER của ATD)
+        String owner = current.finals == 0 ? current.staleCommand : SYNC_COMMAND;
+        if (isUnsolicited(line, owner)) {
+            onUrcLocked(line);
+            return List.of();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Discarding late line on {}: {}", portName, line);
+        }
+        if (isFinalResult(line, owner) && ++current.finals >= 2) {
+            return finishResyncLocked(current);
+        }
+        restartResyncTimerLocked(current);
+        return List.of();
+    }
+
+    /**
+     * Không nhận thêm gì trong cửa sổ (command cũ không bao giờ trả lời / modem im lặng)
+     */
+    private void onResyncQuiet(Resync expired) {
+        List<PendingCommand> failed;
+        synchronized (this) {
+            if (resync != expired) {
+                return;
+            }
+            failed = finishResyncLocked(expired);
+        }
+        failAll(failed, "Failed to write command");
+    }
+
+    private void restartResyncTimerLocked(Resync current) {
+        if (current.timer != null) {
+            current.timer.cancel(false);
+        }
+        current.timer = TIMEOUT_SCHEDULER.schedule(() -> onResyncQuiet(current), current.windowMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private List<PendingCommand> finishResyncLocked(Resync current) {
+        current.timer.cancel(false);
+        resync = null;
+        log.debug("Resync on {} done ({} final result(s) discarded)", portName, current.finals);
+        return dispatchNextLocked();
+    }
+
+    private void onUrcLocked(CharSequence line) {
+        metrics.urc(line);
+        if (log.isDebugEnabled()) {
+            log.debug("URC from {}: {}", portName, line);
+        }
+    }
+
+    /**
+     * Metrics + JFR event khi command kết thúc (command chưa gửi được tính 0ms)
+     */
+    private void record(PendingCommand pending, String result) {
+        metrics.command(pending.command, result, pending.sentAt != 0 ? System.nanoTime() - pending.sentAt : 0);
+        AtCommandEvent event = pending.event;
+        if (event != null && event.shouldCommit()) {
+            event.port = portName;
+            event.command = pending.command;
+            event.result = result;
+            event.responseLines = pending.lines.size();
+            event.commit();
+        }
+    }
+
+    private void failAll(List<PendingCommand> pending, String reason) {
+        for (PendingCommand p : pending) {
+            if (p.timeoutTask != null) {
+                p.timeoutTask.cancel(false);
+            }
+            record(p, "aborted");
+            p.future.completeExceptionally(new IllegalStateException(reason + ": " + p.command + " on " + portName));
+        }
+    }
+
+    /**
+     * Final result code kết thúc một command
+     * NO CARRIER / BUSY / NO ANSWER chỉ là final result của ATD/ATA, còn lại là URC
+     */
+    static boolean isFinalResult(CharSequence line, String command) {
+        if (AtFramer.isFinalResult(line)) {
+            return true;
+        }
+        return isCallCommand(command) && isCallResult(line);
+    }
+
+    /**
+     * Dòng không thuộc response của command đang chờ
+     */
+    static boolean isUnsolicited(CharSequence line, String command) {
+        if (isCallResult(line)) {
+            return !isCallCommand(command);
+        }
+        if (AtFramer.contentEquals(line, "RING") || AtFramer.startsWith(line, "+CRING:")) {
+            return true;
+        }
+        for (String prefix : URC_PREFIXES) {
+            if (AtFramer.startsWith(line, prefix)) {
+                // "+CLCC: ..." là response của AT+CLCC, nhưng là URC với command khác
+                String name = prefix.substring(0, prefix.length() - 1);
+                return !command.regionMatches(true, 2, name, 0, name.length());
+            }
+        }
+        return false;
+    }
+
+    private static final String[] URC_PREFIXES = {
+            "+CMTI:", "+CMT:", "+CDS:", "+CDSI:", "+CLIP:", "+CLCC:", "^DSCI:",
+            "+CREG:", "+CGREG:", "+CEREG:", "+QIND:", "+CUSD:", "+CPIN:"
+    };
+
+    private static boolean isCallCommand(String command) {
+        return command.regionMatches(true, 0, "ATD", 0, 3) || command.equalsIgnoreCase("ATA");
+    }
+
+    private static boolean isCallResult(CharSequence line) {
+        return AtFramer.contentEquals(line, "NO CARRIER") || AtFramer.contentEquals(line, "BUSY")
+                || AtFramer.contentEquals(line, "NO ANSWER") || AtFramer.contentEquals(line, "NO DIALTONE");
+    }
+
+    private static class Resync {
+        private final String staleCommand;
+        private final long windowMs;
+        private int finals;
+        private ScheduledFuture<?> timer;
+
+        Resync(String staleCommand, long windowMs) {
+            this.staleCommand = staleCommand;
+            this.windowMs = windowMs;
+        }
+    }
+
+    private static class PendingCommand {
+        private final String command;
+        private final byte[] promptPayload;
+        private final long timeoutMs;
+        private final List<String> lines = new ArrayList<>();
+        private final CompletableFuture<AtResponse> future = new CompletableFuture<>();
+        private ScheduledFuture<?> timeoutTask;
+        private long sentAt;
+        private AtCommandEvent event;
+
+        PendingCommand(String command, byte[] promptPayload, long timeoutMs) {
+            this.command = command;
+            this.promptPayload = promptPayload;
+            this.timeoutMs = timeoutMs;
+        }
+
+        void complete(AtResponse response) {
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            future.complete(response);
+        }
+    }
+}
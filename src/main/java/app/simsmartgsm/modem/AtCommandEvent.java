@@ -0,0 +1,32 @@
+package app.simsmartgsm.modem;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event cho 1 AT command: duration từ lúc ghi ra port tới final result / timeout
+ */
+@Name("app.simsmartgsm.AtCommand")
+@Label("AT Command")
+@Category({"SimSmart GSM", "Modem"})
+@Description("AT command round trip")
+@StackTrace(false)
+class AtCommandEvent extends Event {
+
+    @Label("Port")
+    String port;
+
+    @Label("Command")
+    String command;
+
+    @Label("Result")
+    @Description("ok / error / timeout / aborted")
+    String result;
+
+    @Label("Response Lines")
+    int responseLines;
+}
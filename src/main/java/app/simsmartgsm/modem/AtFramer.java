@@ -0,0 +1,207 @@
+package app.simsmartgsm.modem;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * AtFramer - tách dòng AT response trực tiếp trên byte ring buffer
+ * - Không tạo String cho mỗi chunk / mỗi dòng
+ * - Mỗi dòng được trả ra dạng CharSequence view trỏ vào ring buffer,
+ *   view CHỈ hợp lệ trong lúc callback chạy, cần giữ lại thì gọi toString()
+ * - Nhận diện prompt "> " (AT+CMGS) dù không có CR/LF phía sau
+ * Không thread-safe: mỗi port một instance, chỉ được gọi từ thread đọc port
+ */
+public class AtFramer {
+
+    /**
+     * Callback khi tách được dòng / prompt
+     */
+    public interface Listener {
+        void onLine(CharSequence line);
+
+        default void onPrompt() {
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final byte[] ring;
+    private final int mask;
+    private final Listener listener;
+    private final LineView view = new LineView();
+
+    // Vị trí tuyệt đối (tăng dần) của đầu dòng hiện tại và byte kế tiếp
+    private long lineStart;
+    private long writePos;
+    // Dòng dài hơn ring buffer (vd: binary data) -> bỏ qua tới CR/LF kế tiếp
+    private boolean overflow;
+    // Listener yêu cầu dừng sau dòng hiện tại (chuyển sang binary mode)
+    private boolean paused;
+
+    public AtFramer(Listener listener) {
+        this(DEFAULT_CAPACITY, listener);
+    }
+
+    /**
+     * @param capacity kích thước ring buffer, làm tròn lên luỹ thừa của 2
+     */
+    public AtFramer(int capacity, Listener listener) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.ring = new byte[size];
+        this.mask = size - 1;
+        this.listener = listener;
+    }
+
+    /**
+     * Đưa bytes mới đọc được vào framer
+     * @return số byte đã xử lý (nhỏ hơn length nếu listener gọi pause())
+     */
+    public int feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (b == '\r' || b == '\n') {
+                emitLine();
+                if (paused) {
+                    paused = false;
+                    return i - offset + 1;
+                }
+                continue;
+            }
+            if (overflow) {
+                continue;
+            }
+            if (writePos - lineStart == ring.length) {
+                overflow = true;
+                continue;
+            }
+            ring[(int) (writePos++ & mask)] = b;
+
+            // Prompt "> " của AT+CMGS không kết thúc bằng CR/LF
+            if (b == ' ' && writePos - lineStart == 2 && ring[(int) (lineStart & mask)] == '>') {
+                lineStart = writePos;
+                listener.onPrompt();
+            }
+        }
+
+        // Một số modem chỉ gửi ">" rồi chờ
+        if (!overflow && writePos - lineStart == 1 && ring[(int) (lineStart & mask)] == '>') {
+            lineStart = writePos;
+            listener.onPrompt();
+        }
+        return length;
+    }
+
+    /**
+     * Gọi trong onLine(): dừng feed ngay sau dòng hiện tại, phần bytes còn lại
+     * được trả về cho caller (vd: binary data sau "CONNECT")
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Bỏ dữ liệu dòng đang dở (vd: khi đóng port)
+     */
+    public void reset() {
+        lineStart = writePos;
+        overflow = false;
+    }
+
+    private void emitLine() {
+        int length = (int) (writePos - lineStart);
+        boolean skip = overflow || isBlank(length);
+        overflow = false;
+        if (!skip) {
+            view.set(lineStart, length);
+            listener.onLine(view);
+        }
+        lineStart = writePos;
+    }
+
+    private boolean isBlank(int length) {
+        for (int i = 0; i < length; i++) {
+            if (ring[(int) ((lineStart + i) & mask)] != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ========== CharSequence helpers (tránh toString() trên hot path) ==========
+
+    public static boolean contentEquals(CharSequence s, String value) {
+        if (s.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (s.charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean startsWith(CharSequence s, String prefix) {
+        if (s.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Final result code chung: OK, ERROR, +CME ERROR: x, +CMS ERROR: x
+     */
+    public static boolean isFinalResult(CharSequence line) {
+        return contentEquals(line, "OK") || contentEquals(line, "ERROR")
+                || startsWith(line, "+CME ERROR") || startsWith(line, "+CMS ERROR");
+    }
+
+    /**
+     * View US-ASCII trên ring buffer, không copy
+     */
+    private final class LineView implements CharSequence {
+        private long start;
+        private int length;
+
+        void set(long start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) (ring[(int) ((start + index) & mask)] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            int from = (int) (start & mask);
+            if (from + length <= ring.length) {
+                return new String(ring, from, length, StandardCharsets.ISO_8859_1);
+            }
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (ring[(int) ((start + i) & mask)] & 0xFF);
+            }
+            return new String(chars);
+        }
+    }
+}
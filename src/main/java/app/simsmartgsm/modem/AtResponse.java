@@ -0,0 +1,63 @@
+package app.simsmartgsm.modem;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Kết quả của một AT command đã hoàn tất
+ * - lines: các dòng thông tin (không gồm echo và final result code)
+ * - finalResult: OK / ERROR / +CME ERROR: x / +CMS ERROR: x / NO CARRIER ...
+ */
+@Getter
+public class AtResponse {
+
+    private final String command;
+    private final List<String> lines;
+    private final String finalResult;
+
+    public AtResponse(String command, List<String> lines, String finalResult) {
+        this.command = command;
+        this.lines = List.copyOf(lines);
+        this.finalResult = finalResult;
+    }
+
+    public boolean isOk() {
+        return "OK".equals(finalResult);
+    }
+
+    public boolean isError() {
+        return !isOk();
+    }
+
+    /**
+     * Lấy dòng đầu tiên bắt đầu bằng prefix (vd: "+CSQ:"), null nếu không có
+     */
+    public String firstLine(String prefix) {
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ghép lại thành text giống response thô từ modem (tương thích code parse cũ)
+     */
+    public String getText() {
+        StringBuilder sb = new StringBuilder(64 + lines.size() * 32);
+        for (String line : lines) {
+            sb.append(line).append("\r\n");
+        }
+        if (finalResult != null) {
+            sb.append(finalResult).append("\r\n");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return command + " -> " + lines + " " + finalResult;
+    }
+}
@@ -0,0 +1,24 @@
+package app.simsmartgsm.modem;
+
+/**
+ * Nhận dữ liệu binary từ port sau khi modem trả "CONNECT" (vd: AT+QFDWL)
+ * Trong lúc receiver chưa xong, bytes KHÔNG đi qua AtFramer
+ */
+public interface BinaryReceiver {
+
+    /**
+     * Nhận bytes, trả về số byte đã dùng
+     * Khi transfer kết thúc giữa chunk, phần còn lại (vd: "\r\nOK\r\n") được trả lại cho AtFramer
+     */
+    int onBytes(byte[] data, int offset, int length);
+
+    /**
+     * Transfer đã kết thúc (thành công hoặc lỗi)
+     */
+    boolean isDone();
+
+    /**
+     * Huỷ transfer (command lỗi / timeout / đóng port)
+     */
+    void abort(String reason);
+}
@@ -0,0 +1,47 @@
+package app.simsmartgsm.modem;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Sự kiện cuộc gọi do modem tự báo (URC)
+ * - RING / +CRING: có cuộc gọi đến
+ * - +CLIP: số gọi đến
+ * - +CLCC / ^DSCI: trạng thái cuộc gọi (stat theo 3GPP 27.007)
+ * - NO CARRIER / BUSY / NO ANSWER: cuộc gọi kết thúc
+ */
+@Getter
+@RequiredArgsConstructor
+public class CallEvent {
+
+    public enum Type {
+        RING,
+        CALLER_ID,
+        STATUS,
+        DISCONNECTED
+    }
+
+    /** stat trong +CLCC / ^DSCI */
+    public static final int STAT_ACTIVE = 0;
+    public static final int STAT_HELD = 1;
+    public static final int STAT_DIALING = 2;
+    public static final int STAT_ALERTING = 3;
+    public static final int STAT_INCOMING = 4;
+    public static final int STAT_WAITING = 5;
+    public static final int STAT_RELEASED = 6;
+
+    private final String comPort;
+    private final Type type;
+    /** stat của STATUS, -1 với các type khác */
+    private final int stat;
+    /** Số điện thoại (nếu modem báo), có thể null */
+    private final String number;
+    /** Dòng URC gốc với DISCONNECTED (NO CARRIER / BUSY / NO ANSWER) */
+    private final String reason;
+
+    @Override
+    public String toString() {
+        return comPort + " " + type + (stat >= 0 ? " stat=" + stat : "")
+                + (number != null ? " " + number : "") + (reason != null ? " " + reason : "");
+    }
+}
@@ -0,0 +1,98 @@
+package app.simsmartgsm.modem;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ModemPort trên serial port thật (jSerialComm), 115200 8N1, RTS/DTR bật
+ */
+@Slf4j
+public class JSerialCommPort implements ModemPort {
+
+    // Buffer pool để reuse buffers, giảm GC pressure
+    private static final int BUFFER_SIZE = 8192; // 8KB buffer
+    private static final ThreadLocal<byte[]> BUFFER_POOL = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private final String portName;
+    private SerialPort serialPort;
+
+    public JSerialCommPort(String portName) {
+        this.portName = portName;
+    }
+
+    @Override
+    public String getName() {
+        return portName;
+    }
+
+    @Override
+    public boolean open(DataListener listener) {
+        try {
+            serialPort = SerialPort.getCommPort(portName);
+            serialPort.setComPortParameters(115200, 8, 1, 0); // Baud rate, data bits, stop bits, parity
+            serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 100, 0);
+
+            if (!serialPort.openPort()) {
+                log.error("❌ Failed to open port: {}", portName);
+                return false;
+            }
+            log.info("✅ Opened serial port: {}", portName);
+
+            // Enable hardware flow control (RTS/DTR cho GSM modems)
+            serialPort.setRTS();
+            serialPort.setDTR();
+
+            serialPort.addDataListener(new SerialPortDataListener() {
+                @Override
+                public int getListeningEvents() {
+                    return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+                }
+
+                @Override
+                public void serialEvent(SerialPortEvent event) {
+                    if (event.getEventType() != SerialPort.LISTENING_EVENT_DATA_AVAILABLE)
+                        return;
+
+                    try {
+                        int available = serialPort.bytesAvailable();
+                        if (available <= 0)
+                            return;
+
+                        // Reuse pooled buffer thay vì tạo mới mỗi lần
+                        byte[] buffer = BUFFER_POOL.get();
+                        int numRead = serialPort.readBytes(buffer, Math.min(available, BUFFER_SIZE));
+                        if (numRead > 0) {
+                            listener.onData(buffer, numRead);
+                        }
+                    } catch (Exception e) {
+                        log.error("Error in data listener for {}: {}", portName, e.getMessage());
+                    }
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            log.error("Error opening port: {}", portName, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean write(byte[] bytes) {
+        return serialPort != null && serialPort.writeBytes(bytes, bytes.length) == bytes.length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort != null && serialPort.isOpen();
+    }
+
+    @Override
+    public void close() {
+        if (serialPort != null && serialPort.isOpen()) {
+            serialPort.closePort();
+            log.info("Closed serial port: {}", portName);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package app.simsmartgsm.modem;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics Micrometer theo port / nhóm AT command, xem tại /actuator/prometheus
+ * - modem.at.command: latency từ lúc gửi tới final result, tag result = ok / error / timeout / aborted
+ * - modem.at.retries: số lần gửi lại AT khi scan
+ * - modem.serial.bytes: bytes vào / ra port (direction = in / out)
+ * - modem.urc: URC theo loại (RING, CLCC, CMTI...)
+ */
+@Component
+public class ModemMetrics {
+
+    // Không có Spring (test, benchmark): registry rỗng, meter không ghi vào đâu
+    public static final ModemMetrics NOOP = new ModemMetrics(new CompositeMeterRegistry());
+
+    // Bucket cố định thay cho histogram mặc định (~70 bucket/series) vì có hàng trăm port
+    private static final Duration[] LATENCY_BUCKETS = {
+            Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5), Duration.ofSeconds(10),
+            Duration.ofSeconds(30), Duration.ofSeconds(60)
+    };
+
+    // Giới hạn độ dài tag để command / URC lạ không tạo series tuỳ ý
+    private static final int MAX_TAG_LENGTH = 10;
+
+    private final MeterRegistry registry;
+    private final Map<String, Port> ports = new ConcurrentHashMap<>();
+
+    public ModemMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Meter của 1 port (tạo 1 lần, cache lại cho hot path)
+     */
+    public Port port(String portName) {
+        return ports.computeIfAbsent(portName, Port::new);
+    }
+
+    public final class Port {
+        private final String portName;
+        private final Counter bytesIn;
+        private final Counter bytesOut;
+        private final Map<String, Timer> commandTimers = new ConcurrentHashMap<>();
+        private final Map<String, Counter> retryCounters = new ConcurrentHashMap<>();
+        private final Map<String, Counter> urcCounters = new ConcurrentHashMap<>();
+
+        private Port(String portName) {
+            this.portName = portName;
+            this.bytesIn = bytesCounter("in");
+            this.bytesOut = bytesCounter("out");
+        }
+
+        public void bytesIn(int count) {
+            bytesIn.increment(count);
+        }
+
+        public void bytesOut(int count) {
+            bytesOut.increment(count);
+        }
+
+        /**
+         * @param result ok / error / timeout / aborted
+         */
+        public void command(String command, String result, long elapsedNanos) {
+            String family = commandFamily(command);
+            commandTimers.computeIfAbsent(family + '|' + result, key -> Timer.builder("modem.at.command")
+                            .description("AT command round trip, từ lúc gửi tới final result")
+                            .tags("port", portName, "command", family, "result", result)
+                            .serviceLevelObjectives(LATENCY_BUCKETS)
+                            .register(registry))
+                    .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void retry(String command) {
+            retryCounters.computeIfAbsent(commandFamily(command), family -> Counter.builder("modem.at.retries")
+                            .tags("port", portName, "command", family)
+                            .register(registry))
+                    .increment();
+        }
+
+        public void urc(CharSequence line) {
+            urcCounters.computeIfAbsent(urcType(line), type -> Counter.builder("modem.urc")
+                            .tags("port", portName, "type", type)
+                            .register(registry))
+                    .increment();
+        }
+
+        private Counter bytesCounter(String direction) {
+            return Counter.builder("modem.serial.bytes")
+                    .baseUnit("bytes")
+                    .tags("port", portName, "direction", direction)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * AT+CLCC=1 -> CLCC, AT^DSCI=1 -> DSCI, ATD0912..; -> D, ATH -> H, AT -> AT
+     * Nhiều command 1 dòng (AT+CGSN;+COPS?...) -> BATCH
+     */
+    static String commandFamily(String command) {
+        if (command.length() <= 2) {
+            return "AT";
+        }
+        char first = Character.toUpperCase(command.charAt(2));
+        if (first != '+' && first != '^') {
+            return first == '&' && command.length() > 3 ? "&" + Character.toUpperCase(command.charAt(3))
+                    : String.valueOf(first);
+        }
+        if (command.indexOf(';') > 0) {
+            return "BATCH";
+        }
+        int end = 3;
+        while (end < command.length() && end - 3 < MAX_TAG_LENGTH && Character.isLetterOrDigit(command.charAt(end))) {
+            end++;
+        }
+        return end > 3 ? command.substring(3, end).toUpperCase() : "other";
+    }
+
+    /**
+     * +CMTI: "SM",3 -> CMTI, ^DSCI: ... -> DSCI, RING / NO CARRIER giữ nguyên, còn lại -> other
+     */
+    static String urcType(CharSequence line) {
+        if (line.length() > 1 && (line.charAt(0) == '+' || line.charAt(0) == '^')) {
+            int end = 1;
+            while (end < line.length() && end - 1 < MAX_TAG_LENGTH && Character.isLetterOrDigit(line.charAt(end))) {
+                end++;
+            }
+            if (end > 1 && end < line.length() && line.charAt(end) == ':') {
+                return line.subSequence(1, end).toString();
+            }
+            return "other";
+        }
+        for (String known : KNOWN_URCS) {
+            if (AtFramer.contentEquals(line, known)) {
+                return known;
+            }
+        }
+        return "other";
+    }
+
+    private static final String[] KNOWN_URCS = {"RING", "NO CARRIER", "BUSY", "NO ANSWER", "RDY"};
+}
@@ -0,0 +1,25 @@
+package app.simsmartgsm.modem;
+
+/**
+ * Kênh byte tới 1 modem: serial thật (jSerialComm) hoặc modem ảo (VirtualModem)
+ * - SerialPortHandler chỉ làm việc qua interface này, không phụ thuộc phần cứng
+ */
+public interface ModemPort {
+
+    /**
+     * Nhận bytes từ modem (buffer có thể được tái sử dụng sau khi hàm trả về)
+     */
+    interface DataListener {
+        void onData(byte[] buffer, int length);
+    }
+
+    String getName();
+
+    boolean open(DataListener listener);
+
+    boolean write(byte[] bytes);
+
+    boolean isOpen();
+
+    void close();
+}
@@ -0,0 +1,231 @@
+package app.simsmartgsm.modem;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quản lý DUY NHẤT 1 SerialPortHandler đang mở cho mỗi COM port
+ * - Scan, call, SMS, recording đều lấy handler từ đây, command đi chung 1 hàng đợi
+ * - Port mở 1 lần và giữ mở, không còn open/close mỗi lần scan
+ * - Lease: đánh dấu port đang bận (vd: đang gọi), scan sẽ không gửi command vào port đó
+ * - Listener chỉ được báo khi port đã xác nhận là modem (activate), port lạ không bị gửi
+ *   command setup (URC, SMS mode...)
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ModemRegistry {
+
+    /**
+     * Nhận thông báo khi port được xác nhận là modem / port bị gỡ (vd: đăng ký URC listener)
+     */
+    public interface Listener {
+        void onOpened(SerialPortHandler handler);
+
+        default void onRetired(String portName) {
+        }
+    }
+
+    /**
+     * Quyền dùng port cho 1 công việc dài (cuộc gọi, gửi SMS...), close() để trả lại
+     */
+    public final class Lease implements AutoCloseable {
+        private final String portName;
+        private final String owner;
+        private final SerialPortHandler handler;
+        // Counter lúc lease: port bị retire rồi lease lại sẽ có counter mới, không bị trừ nhầm
+        private final AtomicInteger count;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String portName, String owner, SerialPortHandler handler, AtomicInteger count) {
+            this.portName = portName;
+            this.owner = owner;
+            this.handler = handler;
+            this.count = count;
+        }
+
+        public SerialPortHandler getHandler() {
+            return handler;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                count.decrementAndGet();
+                log.debug("Lease released: {} by {}", portName, owner);
+            }
+        }
+    }
+
+    private final PortProvider portProvider;
+    private final ModemMetrics modemMetrics;
+
+    private final Map<String, SerialPortHandler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> leases = new ConcurrentHashMap<>();
+    // Mở port (serial I/O) ngoài lock của map, chỉ serialize theo từng port
+    private final Map<String, Object> openLocks = new ConcurrentHashMap<>();
+    // Kiểm tra lease + đóng port trong release() là 1 bước với việc tăng lease
+    private final Object leaseLock = new Object();
+    private final Set<String> activated = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        handlers.forEach((name, handler) -> {
+            if (activated.contains(name)) {
+                notifyOpened(listener, handler);
+            }
+        });
+    }
+
+    /**
+     * Lấy handler đang mở của port, mở nếu chưa có
+     * @return null nếu không mở được port
+     */
+    public SerialPortHandler open(String portName) {
+        SerialPortHandler handler = get(portName);
+        if (handler != null) {
+            return handler;
+        }
+        synchronized (openLocks.computeIfAbsent(portName, name -> new Object())) {
+            handler = handlers.get(portName);
+            if (handler != null) {
+                if (handler.isOpen()) {
+                    return handler;
+                }
+                // Port bị đóng ngoài ý muốn (lỗi driver) -> mở lại
+                if (handlers.remove(portName, handler)) {
+                    activated.remove(portName);
+                }
+            }
+            SerialPortHandler created = new SerialPortHandler(portProvider.create(portName), modemMetrics);
+            if (!created.open()) {
+                return null;
+            }
+            SerialPortHandler existing = handlers.putIfAbsent(portName, created);
+            if (existing != null) {
+                created.close();
+                return existing;
+            }
+            return created;
+        }
+    }
+
+    /**
+     * Port đã xác nhận là modem (trả lời AT): báo listener 1 lần cho mỗi lần mở
+     */
+    public void activate(String portName) {
+        SerialPortHandler handler = get(portName);
+        if (handler != null && activated.add(portName)) {
+            listeners.forEach(listener -> notifyOpened(listener, handler));
+        }
+    }
+
+    /**
+     * Handler đang mở, không mở mới
+     */
+    public SerialPortHandler get(String portName) {
+        SerialPortHandler handler = handlers.get(portName);
+        return handler != null && handler.isOpen() ? handler : null;
+    }
+
+    /**
+     * Mở port (nếu cần) và đánh dấu đang bận
+     * @return null nếu không mở được port
+     */
+    public Lease lease(String portName, String owner) {
+        // Tăng lease trước khi mở: release() chạy song song không thể đóng handler sắp trả về
+        AtomicInteger count;
+        synchronized (leaseLock) {
+            count = leases.computeIfAbsent(portName, name -> new AtomicInteger());
+            count.incrementAndGet();
+        }
+        SerialPortHandler handler = open(portName);
+        if (handler == null) {
+            count.decrementAndGet();
+            return null;
+        }
+        activate(portName);
+        log.debug("Lease acquired: {} by {}", portName, owner);
+        return new Lease(portName, owner, handler, count);
+    }
+
+    /**
+     * Port đang có công việc giữ lease (scan nên bỏ qua)
+     */
+    public boolean isLeased(String portName) {
+        AtomicInteger count = leases.get(portName);
+        return count != null && count.get() > 0;
+    }
+
+    /**
+     * Đóng port nếu không ai đang dùng (vd: port không phải modem sau khi probe)
+     */
+    public void release(String portName) {
+        SerialPortHandler handler;
+        synchronized (leaseLock) {
+            if (isLeased(portName)) {
+                return;
+            }
+            handler = handlers.remove(portName);
+            activated.remove(portName);
+        }
+        if (handler != null) {
+            handler.close();
+        }
+    }
+
+    /**
+     * Port đã bị rút: đóng handler bất kể lease, báo cho các service
+     */
+    public void retire(String portName) {
+        SerialPortHandler handler = handlers.remove(portName);
+        activated.remove(portName);
+        leases.remove(portName);
+        if (handler != null) {
+            handler.close();
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.onRetired(portName);
+            } catch (Exception e) {
+                log.warn("Registry listener failed on retire {}: {}", portName, e.getMessage());
+            }
+        }
+        log.info("🔌 Retired port {}", portName);
+    }
+
+    public Set<String> getOpenPorts() {
+        return Set.copyOf(handlers.keySet());
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        handlers.values().forEach(SerialPortHandler::close);
+        handlers.clear();
+        activated.clear();
+        leases.clear();
+    }
+
+    private void notifyOpened(Listener listener, SerialPortHandler handler) {
+        try {
+            listener.onOpened(handler);
+        } catch (Exception e) {
+            log.warn("Registry listener failed on open {}: {}", handler.getPortName(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package app.simsmartgsm.modem;
+
+import java.util.List;
+
+/**
+ * Nguồn COM port cho scan / watcher / registry (serial thật hoặc modem ảo, chọn bằng modem.backend)
+ */
+public interface PortProvider {
+
+    /**
+     * Tên các port đang có (vd: COM5, ttyUSB0)
+     */
+    List<String> listPorts();
+
+    ModemPort create(String portName);
+}
@@ -1,68 +1,88 @@
 package app.simsmartgsm.modem;
 
-import com.fazecast.jSerialComm.SerialPort;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service để scan ports và lấy thông tin SIM
+ * - Probe song song trên executor dùng chung (giới hạn số thread)
+ * - Một deadline chung cho cả lần scan, probe quá hạn bị cancel (interrupt)
+ * - Kết quả được trả về theo thứ tự port scan xong trước
  */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class PortScanService {
 
+    @Value("${scan.max-parallel:32}")
+    private int maxParallel;
+
+    @Value("${scan.deadline-ms:30000}")
+    private long scanDeadlineMs;
+
+    private final SimIdentityCache identityCache;
+    private final ModemRegistry modemRegistry;
+    private final PortProvider portProvider;
+    private final ModemMetrics modemMetrics;
+
+    private ExecutorService scanExecutor;
+
+    // Probe: AT tối đa 5 lần x 300ms để đợi modem sẵn sàng, rồi 1 dòng query identity
+    private static final int READY_ATTEMPTS = 5;
+    private static final long READY_TIMEOUT_MS = 300;
+    private static final long COMMAND_TIMEOUT_MS = 3000;
+    private static final String IDENTITY_BATCH = "AT+CGSN;+COPS?;+CSQ;+CNUM";
+    private static final String[] IDENTITY_COMMANDS = {"AT+CGSN", "AT+COPS?", "AT+CSQ", "AT+CNUM"};
+    private static final String[] ICCID_COMMANDS = {"AT+CCID", "AT+QCCID", "AT+ICCID"};
+
+    // Port đang được probe (tránh 2 lần scan cùng lúc mở cùng 1 port)
+    private final Set<String> portsInProbe = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void initExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        scanExecutor = Executors.newFixedThreadPool(Math.max(1, maxParallel), r -> {
+            Thread thread = new Thread(r, "port-scan-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        scanExecutor.shutdownNow();
+    }
+
     /**
-     * Scan tất cả COM ports và lấy thông tin SIM
+     * Scan tất cả COM ports và lấy thông tin SIM (quick scan: dùng cache nếu ICCID không đổi)
      */
     public List<PortInfo> scanAllPorts() {
-        log.info("🔍 Bắt đầu scan COM ports...");
-
-        SerialPort[] ports = SerialPort.getCommPorts();
-        List<PortInfo> portInfoList = new CopyOnWriteArrayList<>();
-
-        if (ports.length == 0) {
-            log.warn("Không tìm thấy COM port nào");
-            return portInfoList;
-        }
-
-        // Sử dụng ThreadPool để scan nhiều port cùng lúc
-        ExecutorService executor = Executors.newFixedThreadPool(Math.min(ports.length, 10));
-        List<Future<PortInfo>> futures = new ArrayList<>();
+        return scanAllPorts(false);
+    }
 
-        for (SerialPort port : ports) {
-            Future<PortInfo> future = executor.submit(() -> {
-                try {
-                    return scanSinglePort(port.getSystemPortName());
-                } catch (Exception e) {
-                    log.error("Error scanning port: {}", port.getSystemPortName(), e);
-                    return null;
-                }
-            });
-            futures.add(future);
-        }
+    /**
+     * @param fullRescan true = bỏ qua cache, query lại toàn bộ thông tin mọi port
+     */
+    public List<PortInfo> scanAllPorts(boolean fullRescan) {
+        log.info("🔍 Bắt đầu scan COM ports{}...", fullRescan ? " (full)" : "");
 
-        // Collect results
-        for (Future<PortInfo> future : futures) {
-            try {
-                PortInfo info = future.get(10, TimeUnit.SECONDS);
-                if (info != null && info.isAvailable()) {
-                    portInfoList.add(info);
-                }
-            } catch (TimeoutException e) {
-                log.warn("Timeout scanning port");
-            } catch (Exception e) {
-                log.error("Error getting scan result", e);
+        List<PortInfo> portInfoList = new ArrayList<>();
+        for (PortInfo info : scanPorts(null, fullRescan)) {
+            if (info.isAvailable()) {
+                portInfoList.add(info);
             }
         }
 
-        executor.shutdown();
-
         log.info("✅ Scan hoàn tất. Tìm thấy {} port khả dụng", portInfoList.size());
         return portInfoList;
     }
@@ -74,264 +94,367 @@ public class PortScanService {
     public List<PortInfo> scanAllPortsProgressive(java.util.function.Consumer<PortInfo> onPortScanned) {
         log.info("🔍 Bắt đầu progressive scan COM ports (multi-threaded)...");
 
-        SerialPort[] ports = SerialPort.getCommPorts();
-        List<PortInfo> portInfoList = new CopyOnWriteArrayList<>();
+        List<PortInfo> portInfoList = scanPorts(onPortScanned, false);
+
+        log.info("✅ Progressive scan hoàn tất. Tìm thấy {} port", portInfoList.size());
+        return portInfoList;
+    }
+
+    /**
+     * Probe 1 port trên executor dùng chung (port mới cắm vào)
+     * Kết quả null nếu port đang được probe bởi lần scan khác
+     */
+    public CompletableFuture<PortInfo> scanPort(String portName) {
+        return CompletableFuture.supplyAsync(() -> probePort(portName, false), scanExecutor);
+    }
+
+    /**
+     * Probe song song tất cả ports, trả kết quả theo thứ tự hoàn thành
+     * Callback được gọi trên thread của caller (không cần synchronized)
+     */
+    private List<PortInfo> scanPorts(java.util.function.Consumer<PortInfo> onPortScanned, boolean fullRescan) {
+        List<String> ports = portProvider.listPorts();
+        List<PortInfo> results = new ArrayList<>();
 
-        if (ports.length == 0) {
+        if (ports.isEmpty()) {
             log.warn("Không tìm thấy COM port nào");
-            return portInfoList;
-        }
-
-        // Sử dụng ThreadPool để scan nhiều port cùng lúc
-        ExecutorService executor = Executors.newFixedThreadPool(Math.min(ports.length, 10));
-        CountDownLatch latch = new CountDownLatch(ports.length);
-
-        for (SerialPort port : ports) {
-            executor.submit(() -> {
-                try {
-                    PortInfo info = scanSinglePort(port.getSystemPortName());
-                    if (info != null) {
-                        portInfoList.add(info);
-
-                        // Gọi callback ngay khi scan xong (thread-safe)
-                        if (onPortScanned != null) {
-                            synchronized (onPortScanned) {
-                                onPortScanned.accept(info);
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("Error scanning port: {}", port.getSystemPortName(), e);
-                } finally {
-                    latch.countDown();
-                }
-            });
+            return results;
+        }
+
+        CompletionService<PortInfo> completionService = new ExecutorCompletionService<>(scanExecutor);
+        List<Future<PortInfo>> futures = new ArrayList<>(ports.size());
+
+        for (String portName : ports) {
+            futures.add(completionService.submit(() -> probePort(portName, fullRescan)));
         }
 
-        // Đợi tất cả ports scan xong
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(scanDeadlineMs);
         try {
-            latch.await(60, TimeUnit.SECONDS);
+            for (int done = 0; done < futures.size(); done++) {
+                long remaining = deadline - System.nanoTime();
+                Future<PortInfo> future = remaining > 0
+                        ? completionService.poll(remaining, TimeUnit.NANOSECONDS)
+                        : null;
+                if (future == null) {
+                    log.warn("⏱️ Scan deadline {}ms reached, {} port(s) chưa xong",
+                            scanDeadlineMs, futures.size() - done);
+                    break;
+                }
+
+                PortInfo info = getResult(future);
+                if (info != null) {
+                    results.add(info);
+                    if (onPortScanned != null) {
+                        onPortScanned.accept(info);
+                    }
+                }
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            log.error("Progressive scan interrupted", e);
+            log.error("Scan interrupted", e);
+        } finally {
+            // Huỷ probe còn treo để trả port lại
+            futures.forEach(future -> future.cancel(true));
         }
 
-        executor.shutdown();
+        return results;
+    }
 
-        log.info("✅ Progressive scan hoàn tất. Tìm thấy {} port", portInfoList.size());
-        return portInfoList;
+    private PortInfo getResult(Future<PortInfo> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            log.error("Error getting scan result", e.getCause());
+        } catch (InterruptedException | CancellationException e) {
+            log.debug("Scan task cancelled");
+        }
+        return null;
+    }
+
+    /**
+     * Probe một port, bỏ qua nếu port đang được probe bởi lần scan khác
+     */
+    private PortInfo probePort(String portName, boolean fullRescan) {
+        if (!portsInProbe.add(portName)) {
+            log.debug("Port {} đang được scan, bỏ qua", portName);
+            return null;
+        }
+        try {
+            return scanSinglePort(portName, fullRescan);
+        } catch (Exception e) {
+            log.error("Error scanning port: {}", portName, e);
+            return null;
+        } finally {
+            portsInProbe.remove(portName);
+        }
     }
 
     /**
      * Scan một port và lấy thông tin SIM
+     * - Không sleep cố định: gửi AT tới khi modem trả OK
+     * - Đọc ICCID, nếu khớp cache thì trả luôn kết quả cache (quick scan)
+     * - Miss/đổi SIM: lấy IMEI, nhà mạng, signal, số điện thoại bằng MỘT dòng command
      */
-    private PortInfo scanSinglePort(String portName) {
+    private PortInfo scanSinglePort(String portName, boolean fullRescan) {
         PortInfo info = new PortInfo();
         info.setComPort(portName);
 
-        SerialPort serialPort = null;
-        try {
-            serialPort = SerialPort.getCommPort(portName);
-            serialPort.setComPortParameters(115200, 8, 1, 0);
-            serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_BLOCKING, 3000, 0); // Tăng timeout
+        // Port đang gọi/gửi SMS: không chen command vào, trả thông tin đã biết
+        if (modemRegistry.isLeased(portName)) {
+            PortInfo cached = identityCache.get(portName);
+            if (cached != null) {
+                cached.setStatus("In use");
+                return cached;
+            }
+            info.setAvailable(true);
+            info.setStatus("In use");
+            return info;
+        }
+
+        // Handler dùng chung trong ModemRegistry, modem giữ mở sau khi scan
+        SerialPortHandler handler = modemRegistry.open(portName);
+        if (handler == null) {
+            info.setAvailable(false);
+            info.setStatus("Không thể mở port");
+            log.debug("❌ Cannot open port: {}", portName);
+            return info;
+        }
 
-            if (!serialPort.openPort()) {
+        try {
+            // Đợi modem sẵn sàng (thay cho sleep 800ms)
+            AtResponse testResponse = sendATCommandWithRetry(handler, "AT", READY_ATTEMPTS, READY_TIMEOUT_MS);
+            if (testResponse == null || !testResponse.isOk()) {
                 info.setAvailable(false);
-                info.setStatus("Không thể mở port");
-                log.debug("❌ Cannot open port: {}", portName);
+                info.setStatus("Port không phản hồi AT command");
+                log.debug("⚠️ Port {} không phản hồi AT", portName);
+                // Không phải modem -> trả port lại cho hệ thống
+                modemRegistry.release(portName);
                 return info;
             }
 
-            // Đợi port stable lâu hơn
-            Thread.sleep(800);
-
-            // Test port với AT command đơn giản
-            try {
-                String testResponse = sendATCommand(serialPort, "AT");
-                if (testResponse == null || !testResponse.contains("OK")) {
-                    info.setAvailable(false);
-                    info.setStatus("Port không phản hồi AT command");
-                    log.debug("⚠️ Port {} không phản hồi AT", portName);
-                    return info;
+            String iccid = queryIccid(handler);
+            if (!fullRescan) {
+                PortInfo cached = identityCache.lookup(portName, iccid);
+                if (cached != null) {
+                    log.debug("⚡ Port {} khớp cache (ICCID {})", portName, iccid);
+                    modemRegistry.activate(portName);
+                    return cached;
                 }
-            } catch (Exception e) {
-                info.setAvailable(false);
-                info.setStatus("Lỗi kiểm tra AT: " + e.getMessage());
-                log.debug("❌ AT test failed for {}: {}", portName, e.getMessage());
-                return info;
             }
 
             info.setAvailable(true);
             info.setStatus("Active");
+            info.setIccid(iccid);
 
-            // Lấy số điện thoại SIM
-            String phoneNumber = getPhoneNumber(serialPort);
+            String identity = queryIdentity(handler);
+
+            // Lấy số điện thoại SIM (CNUM, fallback CPBR)
+            String phoneNumber = parsePhoneNumber(identity);
+            if (phoneNumber == null) {
+                AtResponse cpbr = sendATCommandWithRetry(handler, "AT+CPBR=1", 1, COMMAND_TIMEOUT_MS);
+                phoneNumber = cpbr != null ? parsePhonebookNumber(cpbr.getText()) : null;
+            }
             info.setPhoneNumber(phoneNumber != null && !phoneNumber.isEmpty() ? phoneNumber : "N/A");
 
             // Lấy nhà mạng
-            String carrier = getCarrier(serialPort);
+            String carrier = parseCarrier(identity);
             info.setCarrier(carrier != null && !carrier.isEmpty() ? carrier : "N/A");
 
             // Lấy IMEI
-            String imei = getIMEI(serialPort);
+            String imei = parseImei(identity);
             info.setImei(imei != null && !imei.isEmpty() ? imei : "N/A");
 
             // Lấy signal strength
-            String signal = getSignalStrength(serialPort);
+            String signal = parseSignalStrength(identity);
             info.setSignalStrength(signal != null && !signal.isEmpty() ? signal : "N/A");
 
             log.info("📱 Port {}: Phone={}, Carrier={}, IMEI={}, Signal={}",
                     portName, phoneNumber, carrier, imei, signal);
 
+            identityCache.put(info);
+            // Modem đã xác nhận: bật URC call / SMS sau khi query xong
+            modemRegistry.activate(portName);
+
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             log.error("❌ Interrupted while scanning port {}", portName);
             info.setAvailable(false);
             info.setStatus("Interrupted");
+            // Probe dở (vd: hết deadline scan) -> trả port lại, lần scan sau mở lại
+            modemRegistry.release(portName);
         } catch (Exception e) {
             log.error("❌ Error scanning port {}: {}", portName, e.getMessage());
             info.setAvailable(false);
             info.setStatus("Error: " + e.getMessage());
-        } finally {
-            // Đảm bảo port được đóng
-            if (serialPort != null && serialPort.isOpen()) {
-                try {
-                    serialPort.closePort();
-                    log.debug("✅ Closed port: {}", portName);
-                } catch (Exception e) {
-                    log.warn("⚠️ Error closing port {}: {}", portName, e.getMessage());
-                }
-            }
+            modemRegistry.release(portName);
         }
 
         return info;
     }
 
     /**
-     * Lấy số điện thoại SIM qua AT+CNUM
+     * Đọc ICCID của SIM, mỗi hãng modem dùng command khác nhau
+     * @return null nếu không có SIM / modem không hỗ trợ
      */
-    private String getPhoneNumber(SerialPort port) {
-        try {
-            // Thử AT+CNUM trước
-            String response = sendATCommand(port, "AT+CNUM");
-            log.debug("📞 AT+CNUM response: {}", response);
-
-            if (response != null && !response.isEmpty()) {
-                // Method 1: Parse standard format: +CNUM: "","<number>",<type>
-                if (response.contains("+CNUM:")) {
-                    String[] lines = response.split("\n");
-                    for (String line : lines) {
-                        if (line.contains("+CNUM:")) {
-                            log.debug("📞 Parsing line: {}", line);
-
-                            // Try to extract number between quotes
-                            String[] parts = line.split("\"");
-                            for (int i = 0; i < parts.length; i++) {
-                                String part = parts[i].trim();
-                                // Look for phone number (starts with + or digit)
-                                if (part.matches("^[+0-9][0-9]{8,}$")) {
-                                    String number = part.replace("+84", "0")
-                                            .replace("+81", "0")
-                                            .replace("+", "");
-                                    log.info("✅ Found phone number: {}", number);
-                                    return number;
-                                }
-                            }
-                        }
-                    }
+    private String queryIccid(SerialPortHandler handler) throws InterruptedException {
+        for (String command : ICCID_COMMANDS) {
+            AtResponse response = sendATCommandWithRetry(handler, command, 1, COMMAND_TIMEOUT_MS);
+            if (response != null && response.isOk()) {
+                String iccid = parseIccid(response.getText());
+                if (iccid != null) {
+                    return iccid;
                 }
             }
+        }
+        return null;
+    }
 
-            // Method 2: Thử AT+CPBR=1 (đọc phonebook entry đầu tiên - có thể chứa số của
-            // SIM)
-            response = sendATCommand(port, "AT+CPBR=1");
-            log.debug("📞 AT+CPBR=1 response: {}", response);
-
-            if (response != null && response.contains("+CPBR:")) {
-                String[] parts = response.split("\"");
-                for (String part : parts) {
-                    if (part.matches("^[+0-9][0-9]{8,}$")) {
-                        String number = part.replace("+84", "0")
-                                .replace("+81", "0")
-                                .replace("+", "");
-                        log.info("✅ Found phone number from CPBR: {}", number);
-                        return number;
-                    }
-                }
+    /**
+     * +CCID: 8984xxxxxxxxxxxxxxx / +QCCID: 8984...F / 8984... -> 8984...
+     */
+    static String parseIccid(String response) {
+        for (String line : response.split("\n")) {
+            line = line.replaceFirst("^\\+\\w*CCID:", "").replace("\"", "").trim();
+            if (line.matches("\\d{18,20}[Ff]?")) {
+                return line.endsWith("F") || line.endsWith("f") ? line.substring(0, line.length() - 1) : line;
             }
+        }
+        return null;
+    }
 
-            log.warn("⚠️ Could not extract phone number from responses");
+    /**
+     * Gửi 1 dòng AT+CGSN;+COPS?;+CSQ;+CNUM
+     * Modem huỷ cả dòng nếu 1 command lỗi -> fallback gửi từng command
+     */
+    private String queryIdentity(SerialPortHandler handler) throws InterruptedException {
+        AtResponse batch = sendATCommandWithRetry(handler, IDENTITY_BATCH, 1, COMMAND_TIMEOUT_MS);
+        if (batch != null && batch.isOk()) {
+            return batch.getText();
+        }
 
-        } catch (Exception e) {
-            log.error("❌ Error getting phone number from {}: {}",
-                    port.getSystemPortName(), e.getMessage());
+        log.debug("Batch identity query failed on {}, querying one by one", handler.getPortName());
+        StringBuilder text = new StringBuilder(256);
+        for (String command : IDENTITY_COMMANDS) {
+            AtResponse response = sendATCommandWithRetry(handler, command, 1, COMMAND_TIMEOUT_MS);
+            if (response != null) {
+                text.append(response.getText());
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Lấy số điện thoại SIM từ response AT+CNUM
+     */
+    static String parsePhoneNumber(String response) {
+        if (response == null || !response.contains("+CNUM:")) {
+            return null;
         }
+        log.debug("📞 AT+CNUM response: {}", response);
+
+        // Parse standard format: +CNUM: "","<number>",<type>
+        for (String line : response.split("\n")) {
+            if (line.contains("+CNUM:")) {
+                log.debug("📞 Parsing line: {}", line);
+
+                // Try to extract number between quotes
+                String number = extractQuotedNumber(line);
+                if (number != null) {
+                    log.info("✅ Found phone number: {}", number);
+                    return number;
+                }
+            }
+        }
+
+        log.warn("⚠️ Could not extract phone number from responses");
         return null;
     }
 
     /**
-     * Lấy tên nhà mạng qua AT+COPS?
+     * Lấy số điện thoại từ AT+CPBR=1 (phonebook entry đầu tiên - có thể chứa số của SIM)
      */
-    private String getCarrier(SerialPort port) {
-        try {
-            String response = sendATCommand(port, "AT+COPS?");
+    static String parsePhonebookNumber(String response) {
+        log.debug("📞 AT+CPBR=1 response: {}", response);
+        if (response == null || !response.contains("+CPBR:")) {
+            return null;
+        }
+        String number = extractQuotedNumber(response);
+        if (number != null) {
+            log.info("✅ Found phone number from CPBR: {}", number);
+        }
+        return number;
+    }
 
-            // Parse response: +COPS: 0,0,"VIETTEL",7
-            if (response != null && response.contains("+COPS:")) {
-                String[] parts = response.split("\"");
-                if (parts.length >= 2) {
-                    return parts[1]; // VIETTEL, VINAPHONE, MOBIFONE, etc
-                }
+    static String extractQuotedNumber(String text) {
+        for (String part : text.split("\"")) {
+            part = part.trim();
+            // Look for phone number (starts with + or digit)
+            if (part.matches("^[+0-9][0-9]{8,}$")) {
+                return part.replace("+84", "0")
+                        .replace("+81", "0")
+                        .replace("+", "");
             }
-        } catch (Exception e) {
-            log.debug("Không lấy được carrier từ {}", port.getSystemPortName());
         }
         return null;
     }
 
     /**
-     * Lấy IMEI qua AT+GSN or AT+CGSN
+     * Lấy tên nhà mạng từ AT+COPS? - +COPS: 0,0,"VIETTEL",7
      */
-    private String getIMEI(SerialPort port) {
-        try {
-            String response = sendATCommand(port, "AT+CGSN");
+    static String parseCarrier(String response) {
+        String line = findLine(response, "+COPS:");
+        if (line != null) {
+            String[] parts = line.split("\"");
+            if (parts.length >= 2) {
+                return parts[1]; // VIETTEL, VINAPHONE, MOBIFONE, etc
+            }
+        }
+        return null;
+    }
 
-            if (response != null) {
-                // IMEI thường là 15 chữ số
-                String[] lines = response.split("\n");
-                for (String line : lines) {
-                    line = line.trim();
-                    if (line.matches("\\d{15}")) {
-                        return line;
-                    }
-                }
+    /**
+     * Lấy IMEI từ AT+CGSN (15 chữ số, có modem trả dạng +CGSN: "...")
+     */
+    static String parseImei(String response) {
+        if (response == null) {
+            return null;
+        }
+        for (String line : response.split("\n")) {
+            line = line.replace("+CGSN:", "").replace("\"", "").trim();
+            if (line.matches("\\d{15}")) {
+                return line;
             }
-        } catch (Exception e) {
-            log.debug("Không lấy được IMEI từ {}", port.getSystemPortName());
         }
         return null;
     }
 
     /**
-     * Lấy signal strength qua AT+CSQ
+     * Lấy signal strength từ AT+CSQ - +CSQ: 25,99
      */
-    private String getSignalStrength(SerialPort port) {
+    static String parseSignalStrength(String response) {
+        String line = findLine(response, "+CSQ:");
+        if (line == null) {
+            return null;
+        }
         try {
-            String response = sendATCommand(port, "AT+CSQ");
-
-            // Parse response: +CSQ: 25,99
-            if (response != null && response.contains("+CSQ:")) {
-                String[] parts = response.split(":");
-                if (parts.length >= 2) {
-                    String[] values = parts[1].trim().split(",");
-                    if (values.length >= 1) {
-                        int rssi = Integer.parseInt(values[0].trim());
-                        return rssi + " (" + getSignalQuality(rssi) + ")";
-                    }
-                }
+            String[] values = line.substring(line.indexOf(':') + 1).trim().split(",");
+            int rssi = Integer.parseInt(values[0].trim());
+            return rssi + " (" + getSignalQuality(rssi) + ")";
+        } catch (NumberFormatException e) {
+            log.debug("Không parse được signal: {}", line);
+            return null;
+        }
+    }
+
+    static String findLine(String response, String prefix) {
+        if (response == null) {
+            return null;
+        }
+        for (String line : response.split("\n")) {
+            line = line.trim();
+            if (line.startsWith(prefix)) {
+                return line;
             }
-        } catch (Exception e) {
-            log.debug("Không lấy được signal từ {}", port.getSystemPortName());
         }
         return null;
     }
@@ -339,7 +462,7 @@ public class PortScanService {
     /**
      * Convert RSSI to quality
      */
-    private String getSignalQuality(int rssi) {
+    static String getSignalQuality(int rssi) {
         if (rssi >= 20)
             return "Excellent";
         if (rssi >= 15)
@@ -352,81 +475,28 @@ public class PortScanService {
     }
 
     /**
-     * Gửi AT command và đợi response với retry mechanism
+     * Gửi AT command qua hàng đợi của port, retry khi timeout
+     * Trả về null nếu hết số lần thử
      */
-    private String sendATCommand(SerialPort port, String command) throws Exception {
-        return sendATCommandWithRetry(port, command, 3);
-    }
-
-    /**
-     * Gửi AT command với retry
-     */
-    private String sendATCommandWithRetry(SerialPort port, String command, int maxRetries) throws Exception {
-        Exception lastException = null;
-
+    private AtResponse sendATCommandWithRetry(SerialPortHandler handler, String command, int maxRetries,
+            long timeoutMs) throws InterruptedException {
         for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            if (attempt > 1) {
+                modemMetrics.port(handler.getPortName()).retry(command);
+            }
             try {
-                // Clear input buffer
-                while (port.bytesAvailable() > 0) {
-                    port.readBytes(new byte[port.bytesAvailable()], port.bytesAvailable());
-                }
-
-                // Send command
-                byte[] cmdBytes = (command + "\r").getBytes();
-                int written = port.writeBytes(cmdBytes, cmdBytes.length);
-
-                if (written != cmdBytes.length) {
-                    throw new Exception("Failed to write complete command");
-                }
-
-                // Wait for modem to process
-                Thread.sleep(300);
-
-                // Read response with timeout
-                StringBuilder response = new StringBuilder();
-                long timeout = System.currentTimeMillis() + 3000; // Tăng timeout lên 3s
-                boolean gotResponse = false;
-
-                while (System.currentTimeMillis() < timeout) {
-                    if (port.bytesAvailable() > 0) {
-                        byte[] buffer = new byte[port.bytesAvailable()];
-                        int read = port.readBytes(buffer, buffer.length);
-                        if (read > 0) {
-                            response.append(new String(buffer, 0, read));
-                            gotResponse = true;
-                        }
-
-                        // Check for completion
-                        String resp = response.toString();
-                        if (resp.contains("OK") || resp.contains("ERROR")) {
-                            log.debug("✅ AT command '{}' succeeded on attempt {}", command, attempt);
-                            return resp;
-                        }
-                    }
-                    Thread.sleep(50);
-                }
-
-                // If we got some response but no OK/ERROR, return it anyway
-                if (gotResponse && response.length() > 0) {
-                    log.debug("⚠️ AT command '{}' got partial response on attempt {}", command, attempt);
-                    return response.toString();
-                }
-
-                throw new Exception("Timeout waiting for response");
-
-            } catch (Exception e) {
-                lastException = e;
-                log.warn("❌ AT command '{}' failed on attempt {}/{}: {}",
-                        command, attempt, maxRetries, e.getMessage());
-
-                if (attempt < maxRetries) {
-                    Thread.sleep(200); // Wait before retry
+                AtResponse response = handler.sendCommandAsync(command, timeoutMs).get();
+                log.debug("✅ AT command '{}' -> {} on attempt {}", command, response.getFinalResult(), attempt);
+                return response;
+            } catch (ExecutionException e) {
+                log.debug("❌ AT command '{}' failed on attempt {}/{}: {}",
+                        command, attempt, maxRetries, e.getCause().getMessage());
+                if (!(e.getCause() instanceof TimeoutException)) {
+                    return null;
                 }
             }
         }
-
-        throw new Exception("AT command failed after " + maxRetries + " attempts: " +
-                (lastException != null ? lastException.getMessage() : "Unknown error"));
+        return null;
     }
 
     /**
@@ -437,6 +507,7 @@ public class PortScanService {
         private String phoneNumber;
         private String carrier;
         private String imei;
+        private String iccid;
         private String signalStrength;
         private boolean available;
         private String status;
@@ -474,6 +545,14 @@ public class PortScanService {
             this.imei = imei;
         }
 
+        public String getIccid() {
+            return iccid;
+        }
+
+        public void setIccid(String iccid) {
+            this.iccid = iccid;
+        }
+
         public String getSignalStrength() {
             return signalStrength;
         }
@@ -0,0 +1,142 @@
+package app.simsmartgsm.modem;
+
+import app.simsmartgsm.modem.PortScanService.PortInfo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Theo dõi cắm/rút modem (hot-plug) thay cho scan lại toàn bộ ports
+ * - Mỗi interval chỉ enumerate tên port (không mở port) và so với lần trước
+ * - Port mới: probe riêng port đó; port mất: xoá cache và báo FE
+ * - Event gửi qua WebSocket /topic/ports và các SSE listener
+ * Lần chạy đầu chỉ ghi nhận danh sách port, scan lúc startup đã probe rồi
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PortWatcher {
+
+    public static final String EVENT_ADDED = "port-added";
+    public static final String EVENT_REMOVED = "port-removed";
+
+    private final PortScanService portScanService;
+    private final SimIdentityCache identityCache;
+    private final ModemRegistry modemRegistry;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PortProvider portProvider;
+
+    @Value("${scan.watch-enabled:true}")
+    private boolean watchEnabled;
+
+    private final List<Consumer<Map<String, Object>>> listeners = new CopyOnWriteArrayList<>();
+    // Port đang có trong hệ thống -> kết quả probe gần nhất (null nếu chưa có / không phải modem)
+    private final Map<String, PortInfo> knownPorts = new ConcurrentHashMap<>();
+    private volatile boolean initialized;
+
+    @Scheduled(fixedDelayString = "${scan.watch-interval-ms:2000}", initialDelayString = "${scan.watch-interval-ms:2000}")
+    public void poll() {
+        if (!watchEnabled) {
+            return;
+        }
+        Set<String> current = new HashSet<>(portProvider.listPorts());
+
+        if (!initialized) {
+            current.forEach(name -> knownPorts.put(name, new PortInfo()));
+            initialized = true;
+            log.info("👀 Port watcher started with {} port(s)", current.size());
+            return;
+        }
+
+        for (String name : current) {
+            if (!knownPorts.containsKey(name)) {
+                knownPorts.put(name, new PortInfo());
+                onPortAdded(name);
+            }
+        }
+        for (String name : Set.copyOf(knownPorts.keySet())) {
+            if (!current.contains(name)) {
+                PortInfo last = knownPorts.remove(name);
+                onPortRemoved(name, last);
+            }
+        }
+    }
+
+    /**
+     * Đăng ký nhận event add/remove (vd: SSE emitter)
+     */
+    public void addListener(Consumer<Map<String, Object>> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Map<String, Object>> listener) {
+        listeners.remove(listener);
+    }
+
+    private void onPortAdded(String portName) {
+        log.info("🔌 Port added: {}", portName);
+        portScanService.scanPort(portName).whenComplete((info, error) -> {
+            if (error != null) {
+                log.error("Error probing new port {}", portName, error);
+                return;
+            }
+            if (info == null || !info.isAvailable()) {
+                log.debug("Port {} không phải modem", portName);
+                return;
+            }
+            // Port có thể đã bị rút trong lúc probe
+            if (knownPorts.replace(portName, info) == null) {
+                return;
+            }
+            Map<String, Object> event = new HashMap<>();
+            event.put("type", EVENT_ADDED);
+            event.put("comPort", portName);
+            event.put("phoneNumber", info.getPhoneNumber());
+            event.put("carrier", info.getCarrier());
+            event.put("imei", info.getImei());
+            event.put("signalStrength", info.getSignalStrength());
+            event.put("available", info.isAvailable());
+            event.put("status", info.getStatus());
+            publish(event);
+        });
+    }
+
+    private void onPortRemoved(String portName, PortInfo last) {
+        log.info("🔌 Port removed: {}", portName);
+        identityCache.invalidate(portName);
+        modemRegistry.retire(portName);
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", EVENT_REMOVED);
+        event.put("comPort", portName);
+        event.put("phoneNumber", last != null ? last.getPhoneNumber() : null);
+        publish(event);
+    }
+
+    private void publish(Map<String, Object> event) {
+        try {
+            messagingTemplate.convertAndSend("/topic/ports", event);
+        } catch (Exception e) {
+            log.error("Error broadcasting port event", e);
+        }
+        for (Consumer<Map<String, Object>> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.warn("Port event listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
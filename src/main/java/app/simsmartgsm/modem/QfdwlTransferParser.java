@@ -0,0 +1,352 @@
+package app.simsmartgsm.modem;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * State machine byte-level cho AT+QFDWL (Quectel file download)
+ * <pre>
+ * AT+QFDWL="RECORD.wav"
+ * CONNECT                      &lt;- AtFramer xử lý, sau đó chuyển sang parser này
+ * &lt;binary data&gt;
+ * +QFDWL: &lt;size&gt;,&lt;checksum&gt;
+ * OK                           &lt;- trả lại cho AtFramer
+ * </pre>
+ * - Trailer chỉ được chấp nhận khi size khớp đúng số byte đã nhận, nên payload
+ *   có chứa chuỗi "+QFDWL:" cũng không bị cắt nhầm
+ * - Checksum = XOR từng cặp 2 byte (16-bit), so với checksum modem báo
+ * - Nếu biết trước size (từ AT+QFLST) thì đếm đúng size byte rồi đọc trailer
+ */
+@Slf4j
+public class QfdwlTransferParser implements BinaryReceiver {
+
+    /**
+     * Nơi nhận payload (vd: file trên disk)
+     */
+    public interface Sink {
+        void onData(byte[] data, int offset, int length) throws IOException;
+
+        void onComplete(long size, boolean checksumValid);
+
+        void onError(String reason);
+    }
+
+    private enum State {
+        PAYLOAD,
+        TRAILER,
+        DONE
+    }
+
+    private static final byte[] MARKER = "+QFDWL: ".getBytes(StandardCharsets.US_ASCII);
+    // Trailer dài nhất: "\r\n+QFDWL: 4294967295,ffff\r\n"
+    private static final int HOLDBACK = 64;
+    private static final int MAX_TRAILER_LINE = 48;
+
+    private final String portName;
+    private final long expectedSize;
+    private final Sink sink;
+
+    private State state = State.PAYLOAD;
+    private long written;
+    private int checksum;
+    private int pendingHigh = -1;
+    private boolean failed;
+    // Ghi sink lỗi: vẫn đọc hết transfer để trả đúng "OK" cho AtFramer, rồi báo lỗi
+    private String writeError;
+
+    // Size chưa biết: giữ lại HOLDBACK byte cuối vì có thể là trailer
+    private final byte[] hold = new byte[HOLDBACK];
+    private int holdStart;
+    private int holdLength;
+    private final byte[] staging = new byte[4096];
+    private int stagingLength;
+
+    // Size đã biết: dòng trailer sau payload
+    private final StringBuilder trailerLine = new StringBuilder(MAX_TRAILER_LINE);
+
+    /**
+     * @param expectedSize size file từ AT+QFLST, <= 0 nếu chưa biết
+     */
+    public QfdwlTransferParser(String portName, long expectedSize, Sink sink) {
+        this.portName = portName;
+        this.expectedSize = expectedSize;
+        this.sink = sink;
+    }
+
+    @Override
+    public synchronized int onBytes(byte[] data, int offset, int length) {
+        if (state == State.DONE) {
+            return 0;
+        }
+        if (expectedSize > 0) {
+            return onKnownSize(data, offset, length);
+        }
+        return onUnknownSize(data, offset, length);
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state == State.DONE;
+    }
+
+    @Override
+    public synchronized void abort(String reason) {
+        if (state != State.DONE) {
+            fail(reason);
+        }
+    }
+
+    public synchronized long getBytesWritten() {
+        return written;
+    }
+
+    public synchronized boolean isFailed() {
+        return failed;
+    }
+
+    // ========== KNOWN SIZE ==========
+
+    private int onKnownSize(byte[] data, int offset, int length) {
+        int pos = offset;
+        int end = offset + length;
+
+        if (state == State.PAYLOAD) {
+            int chunk = (int) Math.min(expectedSize - written, length);
+            emit(data, pos, chunk);
+            pos += chunk;
+            if (written == expectedSize) {
+                state = State.TRAILER;
+            }
+        }
+
+        while (state == State.TRAILER && pos < end) {
+            byte b = data[pos++];
+            if (b == '\n') {
+                if (trailerLine.length() > 0) {
+                    onTrailerLine(trailerLine.toString());
+                    trailerLine.setLength(0);
+                }
+            } else if (b != '\r' && trailerLine.length() < MAX_TRAILER_LINE) {
+                trailerLine.append((char) (b & 0xFF));
+            }
+        }
+        return pos - offset;
+    }
+
+    private void onTrailerLine(String line) {
+        if (!line.startsWith("+QFDWL:")) {
+            fail("Unexpected line after payload: " + line);
+            return;
+        }
+        long size = parseSize(line);
+        int reported = parseChecksum(line);
+        if (size != written) {
+            fail("Size mismatch: modem " + size + ", received " + written);
+            return;
+        }
+        finish(reported);
+    }
+
+    // ========== UNKNOWN SIZE ==========
+
+    private int onUnknownSize(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (holdLength == HOLDBACK) {
+                stage(hold[holdStart]);
+                holdStart = (holdStart + 1) % HOLDBACK;
+                holdLength--;
+            }
+            hold[(holdStart + holdLength) % HOLDBACK] = b;
+            holdLength++;
+
+            if (b == '\n' && tryTrailer()) {
+                return i - offset + 1;
+            }
+        }
+        flushStaging();
+        return length;
+    }
+
+    /**
+     * Kiểm tra holdback có kết thúc bằng trailer hợp lệ không (size khớp số byte đã nhận)
+     */
+    private boolean tryTrailer() {
+        int lineEnd = holdLength - 1;
+        if (lineEnd > 0 && holdAt(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        for (int start = lineEnd - MARKER.length; start >= 0 && lineEnd - start <= MAX_TRAILER_LINE; start--) {
+            if (!markerAt(start)) {
+                continue;
+            }
+            String line = holdString(start, lineEnd);
+            long size = parseSize(line);
+            int reported = parseChecksum(line);
+            if (size < 0 || reported < 0) {
+                return false;
+            }
+
+            // Payload = mọi byte trước trailer, có thể có thêm CRLF trước "+QFDWL:"
+            long before = written + start;
+            int payloadInHold;
+            if (size == before) {
+                payloadInHold = start;
+            } else if (size == before - 2 && start >= 2 && holdAt(start - 2) == '\r' && holdAt(start - 1) == '\n') {
+                payloadInHold = start - 2;
+            } else {
+                return false;
+            }
+
+            for (int i = 0; i < payloadInHold; i++) {
+                stage(holdAt(i));
+            }
+            flushStaging();
+            holdLength = 0;
+            finish(reported);
+            return true;
+        }
+        return false;
+    }
+
+    private byte holdAt(int index) {
+        return hold[(holdStart + index) % HOLDBACK];
+    }
+
+    private boolean markerAt(int start) {
+        for (int i = 0; i < MARKER.length; i++) {
+            if (holdAt(start + i) != MARKER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String holdString(int from, int to) {
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            sb.append((char) (holdAt(i) & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    // ========== COMMON ==========
+
+    private void emit(byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            updateChecksum(data[i]);
+        }
+        written += length;
+        write(data, offset, length);
+    }
+
+    private void stage(byte b) {
+        updateChecksum(b);
+        written++;
+        staging[stagingLength++] = b;
+        if (stagingLength == staging.length) {
+            flushStaging();
+        }
+    }
+
+    private void flushStaging() {
+        if (stagingLength > 0) {
+            write(staging, 0, stagingLength);
+            stagingLength = 0;
+        }
+    }
+
+    private void updateChecksum(byte value) {
+        int b = value & 0xFF;
+        if (pendingHigh < 0) {
+            pendingHigh = b;
+        } else {
+            checksum ^= (pendingHigh << 8) | b;
+            pendingHigh = -1;
+        }
+    }
+
+    private void write(byte[] data, int offset, int length) {
+        if (writeError != null) {
+            return;
+        }
+        try {
+            sink.onData(data, offset, length);
+        } catch (IOException e) {
+            writeError = "Write failed: " + e.getMessage();
+        }
+    }
+
+    private void finish(int reported) {
+        if (writeError != null) {
+            fail(writeError);
+            return;
+        }
+        int computed = checksum ^ (pendingHigh >= 0 ? pendingHigh << 8 : 0);
+        boolean valid = computed == reported;
+        state = State.DONE;
+        if (!valid) {
+            log.warn("⚠️ QFDWL checksum mismatch on {}: modem {}, computed {}", portName,
+                    Integer.toHexString(reported), Integer.toHexString(computed));
+        }
+        log.info("📥 QFDWL transfer finished on {}: {} bytes", portName, written);
+        sink.onComplete(written, valid);
+    }
+
+    private void fail(String reason) {
+        state = State.DONE;
+        failed = true;
+        log.error("❌ QFDWL transfer failed on {}: {}", portName, reason);
+        sink.onError(reason);
+    }
+
+    /**
+     * "+QFDWL: 1234,613e" -> 1234
+     */
+    static long parseSize(String line) {
+        int colon = line.indexOf(':');
+        int comma = line.indexOf(',', colon + 1);
+        if (colon < 0 || comma < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(line.substring(colon + 1, comma).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * "+QFDWL: 1234,613e" -> 0x613e
+     */
+    static int parseChecksum(String line) {
+        int comma = line.indexOf(',', line.indexOf(':') + 1);
+        if (comma < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(line.substring(comma + 1).trim(), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checksum kiểu Quectel cho cả mảng (dùng cho test / simulator)
+     */
+    public static int checksum(byte[] data) {
+        int result = 0;
+        for (int i = 0; i < data.length; i += 2) {
+            int high = data[i] & 0xFF;
+            int low = i + 1 < data.length ? data[i + 1] & 0xFF : 0;
+            result ^= (high << 8) | low;
+        }
+        return result;
+    }
+}
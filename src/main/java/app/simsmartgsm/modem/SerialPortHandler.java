@@ -1,12 +1,11 @@
 package app.simsmartgsm.modem;
 
-import com.fazecast.jSerialComm.SerialPort;
-import com.fazecast.jSerialComm.SerialPortDataListener;
-import com.fazecast.jSerialComm.SerialPortEvent;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * SerialPortHandler - Xử lý serial port TRỰC TIẾP
@@ -16,92 +15,141 @@ import java.util.function.BiConsumer;
 @Slf4j
 public class SerialPortHandler {
 
-    // Buffer pool để reuse buffers, giảm GC pressure
-    private static final int BUFFER_SIZE = 8192; // 8KB buffer
-    private static final ThreadLocal<byte[]> BUFFER_POOL = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    // Timeout mặc định cho command gửi kiểu fire-and-forget
+    private static final long DEFAULT_COMMAND_TIMEOUT_MS = 5000;
 
     private final String portName;
-    private SerialPort serialPort;
+    // Serial thật (JSerialCommPort) hoặc modem ảo (VirtualModem)
+    private final ModemPort port;
     private BiConsumer<String, byte[]> dataReceivedCallback;
 
-    // Line buffer cho protocol parsing (AT commands)
-    private final StringBuilder lineBuffer = new StringBuilder(512);
+    // Hàng đợi AT command, response được ghép từ data listener
+    private final AtCommandEngine commandEngine;
+    private final ModemMetrics.Port metrics;
+
+    // Tách dòng trên byte ring buffer (chỉ chạy trên thread đọc port)
+    private final AtFramer framer;
+
+    // URC (RING, +CLCC, +CMTI, ...) -> event có kiểu
+    private final UrcDispatcher urcDispatcher;
+    private volatile boolean callReportingEnabled;
+
+    // Binary transfer: armed khi gửi command, active sau khi modem trả "CONNECT"
+    private volatile BinaryReceiver armedReceiver;
+    private volatile BinaryReceiver binaryReceiver;
+    private boolean skipLineFeed;
+
+    private volatile Consumer<CharSequence> lineReceivedCallback;
 
     public SerialPortHandler(String portName) {
-        this.portName = portName;
+        this(new JSerialCommPort(portName));
+    }
+
+    public SerialPortHandler(ModemPort port) {
+        this(port, ModemMetrics.NOOP);
+    }
+
+    public SerialPortHandler(ModemPort port, ModemMetrics modemMetrics) {
+        this.port = port;
+        this.portName = port.getName();
+        this.metrics = modemMetrics.port(portName);
+        this.commandEngine = new AtCommandEngine(portName, this::writeBytes, metrics);
+        this.urcDispatcher = new UrcDispatcher(portName);
+        this.framer = new AtFramer(new AtFramer.Listener() {
+            @Override
+            public void onLine(CharSequence line) {
+                BinaryReceiver armed = armedReceiver;
+                if (armed != null && AtFramer.contentEquals(line, "CONNECT")) {
+                    armedReceiver = null;
+                    binaryReceiver = armed;
+                    framer.pause();
+                }
+                commandEngine.onLine(line);
+                urcDispatcher.dispatch(line);
+                Consumer<CharSequence> callback = lineReceivedCallback;
+                if (callback != null) {
+                    callback.accept(line);
+                }
+            }
+
+            @Override
+            public void onPrompt() {
+                commandEngine.onPrompt();
+            }
+        });
     }
 
     /**
      * Mở serial port (giống C# sp.Open())
      */
     public boolean open() {
-        try {
-            serialPort = SerialPort.getCommPort(portName);
-            serialPort.setComPortParameters(115200, 8, 1, 0); // Baud rate, data bits, stop bits, parity
-            serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 100, 0);
-
-            if (serialPort.openPort()) {
-                log.info("✅ Opened serial port: {}", portName);
-
-                // Enable hardware flow control (RTS/DTR cho GSM modems)
-                serialPort.setRTS();
-                serialPort.setDTR();
-
-                // Setup data received listener (giống C# SerialPort_DataReceived)
-                setupDataListener();
-                return true;
-            } else {
-                log.error("❌ Failed to open port: {}", portName);
-                return false;
-            }
-        } catch (Exception e) {
-            log.error("Error opening port: {}", portName, e);
-            return false;
+        // Data received listener (giống C# SerialPort_DataReceived)
+        return port.open(this::onData);
+    }
+
+    private void onData(byte[] buffer, int numRead) {
+        metrics.bytesIn(numRead);
+        SerialReadEvent event = new SerialReadEvent();
+        event.begin();
+        boolean binary = binaryReceiver != null;
+        onBytesReceived(buffer, numRead);
+        if (event.shouldCommit()) {
+            event.port = portName;
+            event.bytes = numRead;
+            event.binary = binary;
+            event.commit();
+        }
+
+        BiConsumer<String, byte[]> callback = dataReceivedCallback;
+        if (callback != null) {
+            // Copy bytes for callback (QUAN TRỌNG: Giữ nguyên raw bytes cho binary data)
+            byte[] callbackData = new byte[numRead];
+            System.arraycopy(buffer, 0, callbackData, 0, numRead);
+
+            // Convert to string (for text-based protocols like AT commands)
+            // NOTE: Binary data (WAV) sẽ có garbage characters, nhưng callback
+            // vẫn nhận được RAW bytes chính xác qua callbackData
+            String textData = new String(buffer, 0, numRead, StandardCharsets.US_ASCII);
+
+            callback.accept(textData, callbackData);
         }
     }
 
     /**
-     * Setup listener để nhận data (giống C# SerialPort_DataReceived event)
+     * Chia bytes cho AtFramer (text) hoặc BinaryReceiver (sau "CONNECT" của AT+QFDWL)
      */
-    private void setupDataListener() {
-        serialPort.addDataListener(new SerialPortDataListener() {
-            @Override
-            public int getListeningEvents() {
-                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+    private void onBytesReceived(byte[] buffer, int length) {
+        int pos = 0;
+        while (pos < length) {
+            BinaryReceiver receiver = binaryReceiver;
+            if (receiver == null) {
+                int consumed = framer.feed(buffer, pos, length - pos);
+                pos += consumed;
+                // Vừa chuyển sang binary mode trên "CONNECT\r": bỏ '\n' đi kèm
+                if (binaryReceiver != null && buffer[pos - 1] == '\r') {
+                    if (pos < length) {
+                        if (buffer[pos] == '\n') {
+                            pos++;
+                        }
+                    } else {
+                        skipLineFeed = true;
+                    }
+                }
+                continue;
             }
 
-            @Override
-            public void serialEvent(SerialPortEvent event) {
-                if (event.getEventType() != SerialPort.LISTENING_EVENT_DATA_AVAILABLE)
-                    return;
-
-                try {
-                    int available = serialPort.bytesAvailable();
-                    if (available <= 0)
-                        return;
-
-                    // Reuse pooled buffer thay vì tạo mới mỗi lần
-                    byte[] buffer = BUFFER_POOL.get();
-                    int toRead = Math.min(available, BUFFER_SIZE);
-                    int numRead = serialPort.readBytes(buffer, toRead);
-
-                    if (numRead > 0 && dataReceivedCallback != null) {
-                        // Copy bytes for callback (QUAN TRỌNG: Giữ nguyên raw bytes cho binary data)
-                        byte[] callbackData = new byte[numRead];
-                        System.arraycopy(buffer, 0, callbackData, 0, numRead);
-
-                        // Convert to string (for text-based protocols like AT commands)
-                        // NOTE: Binary data (WAV) sẽ có garbage characters, nhưng callback
-                        // vẫn nhận được RAW bytes chính xác qua callbackData
-                        String textData = new String(buffer, 0, numRead, StandardCharsets.US_ASCII);
-
-                        dataReceivedCallback.accept(textData, callbackData);
-                    }
-                } catch (Exception e) {
-                    log.error("Error in data listener for {}: {}", portName, e.getMessage());
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buffer[pos] == '\n') {
+                    pos++;
+                    continue;
                 }
             }
-        });
+            pos += receiver.onBytes(buffer, pos, length - pos);
+            if (receiver.isDone()) {
+                binaryReceiver = null;
+            }
+        }
     }
 
     /**
@@ -112,65 +160,136 @@ public class SerialPortHandler {
     }
 
     /**
-     * Đăng ký callback với line-based processing (tự động parse theo \r\n)
-     * Phù hợp cho AT command protocol
-     * OPTIONAL: Dùng thay cho onDataReceived() nếu muốn xử lý theo dòng
+     * Đăng ký callback với line-based processing (tự động parse theo CR/LF)
+     * Phù hợp cho AT command protocol, chạy song song với onDataReceived()
+     * NOTE: line là view trên buffer của port, chỉ hợp lệ trong callback -
+     * cần giữ lại thì gọi line.toString()
      */
-    public void onLineReceived(java.util.function.Consumer<String> lineCallback) {
-        this.dataReceivedCallback = (text, bytes) -> {
-            synchronized (lineBuffer) {
-                lineBuffer.append(text);
+    public void onLineReceived(Consumer<CharSequence> lineCallback) {
+        this.lineReceivedCallback = lineCallback;
+    }
 
-                String data = lineBuffer.toString();
-                int lineEnd;
+    /**
+     * Đăng ký callback cho call event (RING, +CLCC, ^DSCI, NO CARRIER...)
+     */
+    public void onCallEvent(Consumer<CallEvent> listener) {
+        urcDispatcher.onCallEvent(listener);
+    }
 
-                while ((lineEnd = data.indexOf("\r\n")) != -1) {
-                    String line = data.substring(0, lineEnd);
-                    data = data.substring(lineEnd + 2);
+    /**
+     * Đăng ký callback cho URC theo prefix (vd: "+CMTI:")
+     */
+    public void onUrc(String prefix, Consumer<String> listener) {
+        urcDispatcher.onUrc(prefix, listener);
+    }
 
-                    if (!line.isEmpty()) {
-                        lineCallback.accept(line);
-                    }
-                }
+    /**
+     * Đăng ký callback cho SMS nhận qua +CMT (PDU hex ở dòng sau header)
+     */
+    public void onSmsDeliver(Consumer<String> listener) {
+        urcDispatcher.onSmsDeliver(listener);
+    }
 
-                // Keep remaining data in buffer
-                lineBuffer.setLength(0);
-                lineBuffer.append(data);
-            }
-        };
+    /**
+     * Bật modem tự báo trạng thái cuộc gọi: AT+CLCC=1 (Quectel/SIMCom), AT^DSCI=1 (Huawei)
+     * Future trả về true nếu modem chấp nhận ít nhất 1 kiểu
+     */
+    public CompletableFuture<Boolean> enableCallReporting() {
+        CompletableFuture<Boolean> clcc = reportingCommand("AT+CLCC=1");
+        CompletableFuture<Boolean> dsci = reportingCommand("AT^DSCI=1");
+        return clcc.thenCombine(dsci, (a, b) -> {
+            callReportingEnabled = a || b;
+            log.info("📡 Call status reporting on {}: {}", portName, callReportingEnabled ? "enabled" : "not supported");
+            return callReportingEnabled;
+        });
+    }
+
+    /**
+     * Modem có tự báo trạng thái cuộc gọi không (nếu không thì cần polling AT+CLCC)
+     */
+    public boolean isCallReportingEnabled() {
+        return callReportingEnabled;
+    }
+
+    private CompletableFuture<Boolean> reportingCommand(String command) {
+        return sendCommandAsync(command, 2000)
+                .thenApply(AtResponse::isOk)
+                .exceptionally(e -> false);
     }
 
     /**
      * Gửi AT command (giống C# sp.Write())
+     * Command được xếp hàng sau các command đang chờ response, không đợi kết quả
      */
     public boolean sendCommand(String command) {
-        try {
-            String fullCommand = command + "\r";
-            byte[] bytes = fullCommand.getBytes(StandardCharsets.US_ASCII);
-            int written = serialPort.writeBytes(bytes, bytes.length);
-            log.debug("Sent command to {}: {}", portName, command);
-            return written > 0;
-        } catch (Exception e) {
-            log.error("Error sending command to {}: {}", portName, command, e);
+        return sendCommand(command, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    /**
+     * Gửi AT command không đợi kết quả, với timeout riêng (vd: AT+QFDWL chạy lâu)
+     */
+    public boolean sendCommand(String command, long timeoutMs) {
+        if (!isOpen()) {
+            log.warn("Cannot send command to closed port {}: {}", portName, command);
             return false;
         }
+        sendCommandAsync(command, timeoutMs).whenComplete((response, error) -> {
+            if (error != null) {
+                log.debug("Command '{}' on {} failed: {}", command, portName, error.getMessage());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Gửi AT command qua hàng đợi, future hoàn thành khi có final result code
+     */
+    public CompletableFuture<AtResponse> sendCommandAsync(String command, long timeoutMs) {
+        return commandEngine.submit(command, timeoutMs);
+    }
+
+    /**
+     * Gửi command trả binary data sau "CONNECT" (vd: AT+QFDWL)
+     * Bytes sau CONNECT đi thẳng vào receiver tới khi receiver báo xong, không qua AtFramer
+     */
+    public CompletableFuture<AtResponse> sendBinaryCommandAsync(String command, BinaryReceiver receiver, long timeoutMs) {
+        armedReceiver = receiver;
+        CompletableFuture<AtResponse> future = commandEngine.submit(command, timeoutMs);
+        future.whenComplete((response, error) -> {
+            if (armedReceiver == receiver) {
+                armedReceiver = null;
+            }
+            if (binaryReceiver == receiver) {
+                binaryReceiver = null;
+            }
+            if (!receiver.isDone()) {
+                receiver.abort(error != null ? error.getMessage() : "Command ended: " + response.getFinalResult());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Gửi command có prompt "> " (AT+CMGS), payload + Ctrl+Z được gửi khi modem trả prompt
+     */
+    public CompletableFuture<AtResponse> sendCommandAsync(String command, byte[] promptPayload, long timeoutMs) {
+        return commandEngine.submit(command, promptPayload, timeoutMs);
     }
 
     /**
      * Đóng port (giống C# sp.Close())
      */
     public void close() {
-        if (serialPort != null && serialPort.isOpen()) {
-            serialPort.closePort();
-            log.info("Closed serial port: {}", portName);
-        }
+        commandEngine.close();
+        callReportingEnabled = false;
+        port.close();
     }
 
     /**
      * Check port đang mở không
      */
     public boolean isOpen() {
-        return serialPort != null && serialPort.isOpen();
+        return port.isOpen();
     }
 
     public String getPortName() {
@@ -183,50 +302,26 @@ public class SerialPortHandler {
      */
     public String sendCommandAndWaitResponse(String command, int timeoutMs) {
         try {
-            // Clear buffer trước (reuse pooled buffer)
-            byte[] clearBuffer = BUFFER_POOL.get();
-            while (serialPort.bytesAvailable() > 0) {
-                int toRead = Math.min(serialPort.bytesAvailable(), BUFFER_SIZE);
-                serialPort.readBytes(clearBuffer, toRead);
-            }
-
-            // Gửi command (KHÔNG THAY ĐỔI)
-            String fullCommand = command + "\r";
-            byte[] bytes = fullCommand.getBytes(StandardCharsets.US_ASCII);
-            serialPort.writeBytes(bytes, bytes.length);
-            log.debug("Sent query command to {}: {}", portName, command);
-
-            // Đợi response với pooled buffer
-            StringBuilder response = new StringBuilder(256);
-            long startTime = System.currentTimeMillis();
-            byte[] buffer = BUFFER_POOL.get();
-
-            while (System.currentTimeMillis() - startTime < timeoutMs) {
-                int available = serialPort.bytesAvailable();
-                if (available > 0) {
-                    int toRead = Math.min(available, BUFFER_SIZE);
-                    int numRead = serialPort.readBytes(buffer, toRead);
-
-                    if (numRead > 0) {
-                        String data = new String(buffer, 0, numRead, StandardCharsets.US_ASCII);
-                        response.append(data);
-
-                        // Nếu nhận được OK hoặc ERROR thì kết thúc
-                        String responseStr = response.toString();
-                        if (responseStr.contains("OK") || responseStr.contains("ERROR")) {
-                            break;
-                        }
-                    }
-                }
+            return sendCommandAsync(command, timeoutMs).join().getText();
+        } catch (Exception e) {
+            log.debug("No response for '{}' on {}: {}", command, portName, e.getMessage());
+            return "";
+        }
+    }
 
-                // Smarter wait - park instead of sleep (giảm CPU usage)
-                java.util.concurrent.locks.LockSupport.parkNanos(5_000_000); // 5ms
+    /**
+     * Ghi bytes ra port (dùng bởi AtCommandEngine)
+     */
+    private boolean writeBytes(byte[] bytes) {
+        try {
+            boolean written = port.write(bytes);
+            if (written) {
+                metrics.bytesOut(bytes.length);
             }
-
-            return response.toString();
+            return written;
         } catch (Exception e) {
-            log.error("Error sending query command to {}: {}", portName, command, e);
-            return "";
+            log.error("Error writing to {}: {}", portName, e.getMessage());
+            return false;
         }
     }
 }
@@ -0,0 +1,31 @@
+package app.simsmartgsm.modem;
+
+import com.fazecast.jSerialComm.SerialPort;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Port serial thật qua jSerialComm (mặc định)
+ */
+@Component
+@ConditionalOnProperty(name = "modem.backend", havingValue = "serial", matchIfMissing = true)
+public class SerialPortProvider implements PortProvider {
+
+    @Override
+    public List<String> listPorts() {
+        SerialPort[] ports = SerialPort.getCommPorts();
+        List<String> names = new ArrayList<>(ports.length);
+        for (SerialPort port : ports) {
+            names.add(port.getSystemPortName());
+        }
+        return names;
+    }
+
+    @Override
+    public ModemPort create(String portName) {
+        return new JSerialCommPort(portName);
+    }
+}
@@ -0,0 +1,30 @@
+package app.simsmartgsm.modem;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event cho mỗi lần đọc từ port: duration = thời gian xử lý callback (framer / binary receiver)
+ */
+@Name("app.simsmartgsm.SerialRead")
+@Label("Serial Read")
+@Category({"SimSmart GSM", "Modem"})
+@Description("Bytes đọc từ port và thời gian xử lý trên thread đọc")
+@StackTrace(false)
+class SerialReadEvent extends Event {
+
+    @Label("Port")
+    String port;
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+
+    @Label("Binary Transfer")
+    boolean binary;
+}
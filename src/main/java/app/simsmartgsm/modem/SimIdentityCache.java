@@ -0,0 +1,219 @@
+package app.simsmartgsm.modem;
+
+import app.simsmartgsm.config.DeviceConfig;
+import app.simsmartgsm.entity.Sim;
+import app.simsmartgsm.modem.PortScanService.PortInfo;
+import app.simsmartgsm.repository.SimRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache thông tin modem/SIM theo COM port và ICCID
+ * - Trong memory: comPort -> PortInfo, ICCID -> PortInfo (SIM/modem đổi port sau khi cắm lại)
+ * - Lưu xuống collection "sims" qua SimRepository, load lại khi app khởi động
+ * - Ghi Mongo chạy trên 1 thread riêng, scan không bao giờ đợi DB
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SimIdentityCache {
+
+    /**
+     * Nhận thay đổi SIM theo port (vd: routing table số điện thoại -> port)
+     */
+    public interface Listener {
+        /** Gọi trên thread ghi DB sau khi Sim đã được lưu */
+        void onSimSaved(Sim sim);
+
+        default void onInvalidated(String comPort) {
+        }
+    }
+
+    private final SimRepository simRepository;
+    private final DeviceConfig deviceConfig;
+
+    private final Map<String, PortInfo> byPort = new ConcurrentHashMap<>();
+    private final Map<String, PortInfo> byIccid = new ConcurrentHashMap<>();
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sim-cache-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @PreDestroy
+    void shutdown() {
+        writer.shutdown();
+    }
+
+    /**
+     * Load SIM đã lưu của device này vào cache (background, không block startup)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadFromDatabase() {
+        writer.execute(() -> {
+            try {
+                List<Sim> sims = simRepository.findByDeviceName(getDeviceName());
+                int loaded = 0;
+                for (Sim sim : sims) {
+                    if (sim.getComName() == null || sim.getCcid() == null) {
+                        continue;
+                    }
+                    PortInfo info = new PortInfo();
+                    info.setComPort(sim.getComName());
+                    info.setIccid(sim.getCcid());
+                    info.setImei(sim.getImei() != null ? sim.getImei() : "N/A");
+                    info.setPhoneNumber(sim.getPhoneNumber() != null ? sim.getPhoneNumber() : "N/A");
+                    info.setCarrier(sim.getSimProvider() != null ? sim.getSimProvider() : "N/A");
+                    info.setSignalStrength("N/A");
+                    info.setAvailable(true);
+                    info.setStatus("Active");
+                    // Không ghi đè kết quả scan mới hơn
+                    if (byPort.putIfAbsent(info.getComPort(), info) == null) {
+                        byIccid.putIfAbsent(info.getIccid(), info);
+                        loaded++;
+                    }
+                }
+                log.info("📇 Loaded {} cached SIM identities for device {}", loaded, getDeviceName());
+            } catch (Exception e) {
+                log.warn("⚠️ Cannot load SIM identities from database: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Tìm thông tin đã cache cho port nếu ICCID vẫn khớp
+     * @return bản copy của PortInfo, null nếu miss hoặc SIM đã đổi
+     */
+    public PortInfo lookup(String comPort, String iccid) {
+        if (iccid == null) {
+            return null;
+        }
+        PortInfo cached = byPort.get(comPort);
+        if (cached == null) {
+            // Modem có thể đã đổi COM port (cắm lại USB)
+            cached = byIccid.get(iccid);
+        }
+        if (cached == null || !iccid.equals(cached.getIccid())) {
+            return null;
+        }
+
+        PortInfo copy = copyOf(cached);
+        if (!comPort.equals(cached.getComPort())) {
+            log.info("🔀 SIM {} moved from {} to {}", iccid, cached.getComPort(), comPort);
+            copy.setComPort(comPort);
+            put(copy);
+        }
+        return copy;
+    }
+
+    /**
+     * Thông tin đã cache của port (không kiểm tra ICCID, dùng khi port đang bận)
+     */
+    public PortInfo get(String comPort) {
+        PortInfo cached = byPort.get(comPort);
+        return cached != null ? copyOf(cached) : null;
+    }
+
+    /**
+     * Lưu kết quả full scan vào cache và database
+     */
+    public void put(PortInfo info) {
+        if (info.getIccid() == null || !info.isAvailable()) {
+            return;
+        }
+        PortInfo stored = copyOf(info);
+        PortInfo previous = byPort.put(stored.getComPort(), stored);
+        if (previous != null && !stored.getIccid().equals(previous.getIccid())) {
+            byIccid.remove(previous.getIccid(), previous);
+        }
+        PortInfo moved = byIccid.put(stored.getIccid(), stored);
+        if (moved != null && !moved.getComPort().equals(stored.getComPort())) {
+            byPort.remove(moved.getComPort(), moved);
+        }
+        writer.execute(() -> persist(stored));
+    }
+
+    /**
+     * Xoá cache của port (port bị rút / SIM lỗi)
+     * Giữ entry theo ICCID: modem cắm lại ở COM khác vẫn nhận ra SIM, không phải probe lại
+     */
+    public void invalidate(String comPort) {
+        byPort.remove(comPort);
+        for (Listener listener : listeners) {
+            listener.onInvalidated(comPort);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public int size() {
+        return byPort.size();
+    }
+
+    private void persist(PortInfo info) {
+        try {
+            String device = getDeviceName();
+            Sim sim = simRepository.findFirstByCcid(info.getIccid())
+                    .orElseGet(() -> simRepository.findAllByDeviceNameAndComName(device, info.getComPort())
+                            .stream()
+                            .findFirst()
+                            .orElseGet(() -> Sim.builder().status("new").build()));
+
+            sim.setCcid(info.getIccid());
+            sim.setDeviceName(device);
+            sim.setComName(info.getComPort());
+            sim.setImei(valueOrNull(info.getImei()));
+            if (valueOrNull(info.getPhoneNumber()) != null) {
+                sim.setPhoneNumber(info.getPhoneNumber());
+            }
+            if (valueOrNull(info.getCarrier()) != null) {
+                sim.setSimProvider(info.getCarrier());
+            }
+            sim.setLastUpdated(Instant.now());
+            Sim saved = simRepository.save(sim);
+            for (Listener listener : listeners) {
+                listener.onSimSaved(saved);
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Cannot persist SIM {} on {}: {}", info.getIccid(), info.getComPort(), e.getMessage());
+        }
+    }
+
+    public String getDeviceName() {
+        return deviceConfig.getName();
+    }
+
+    private static String valueOrNull(String value) {
+        return value == null || value.isEmpty() || "N/A".equals(value) ? null : value;
+    }
+
+    private static PortInfo copyOf(PortInfo source) {
+        PortInfo copy = new PortInfo();
+        copy.setComPort(source.getComPort());
+        copy.setPhoneNumber(source.getPhoneNumber());
+        copy.setCarrier(source.getCarrier());
+        copy.setImei(source.getImei());
+        copy.setIccid(source.getIccid());
+        copy.setSignalStrength(source.getSignalStrength());
+        copy.setAvailable(source.isAvailable());
+        copy.setStatus(source.getStatus());
+        return copy;
+    }
+}
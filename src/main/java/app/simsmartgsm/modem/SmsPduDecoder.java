@@ -0,0 +1,253 @@
+package app.simsmartgsm.modem;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Decode SMS-DELIVER PDU (3GPP TS 23.040) từ +CMT / AT+CMGR / AT+CMGL (PDU mode)
+ * - GSM 7-bit, 8-bit, UCS2
+ * - UDH concatenation 8-bit (IEI 00) và 16-bit (IEI 08) reference
+ */
+public final class SmsPduDecoder {
+
+    /**
+     * Kết quả decode 1 PDU (1 part nếu là tin ghép)
+     */
+    public static final class DeliveredSms {
+        private final String sender;
+        private final Instant timestamp;
+        private final String text;
+        private final int reference;
+        private final int totalParts;
+        private final int partNumber;
+
+        DeliveredSms(String sender, Instant timestamp, String text, int reference, int totalParts, int partNumber) {
+            this.sender = sender;
+            this.timestamp = timestamp;
+            this.text = text;
+            this.reference = reference;
+            this.totalParts = totalParts;
+            this.partNumber = partNumber;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getReference() {
+            return reference;
+        }
+
+        /**
+         * 1 nếu không phải tin ghép
+         */
+        public int getTotalParts() {
+            return totalParts;
+        }
+
+        public int getPartNumber() {
+            return partNumber;
+        }
+
+        public boolean isConcatenated() {
+            return totalParts > 1;
+        }
+    }
+
+    private static final int ALPHABET_GSM7 = 0;
+    private static final int ALPHABET_8BIT = 1;
+    private static final int ALPHABET_UCS2 = 2;
+
+    private SmsPduDecoder() {
+    }
+
+    /**
+     * @param hex PDU có SCA ở đầu (như modem trả về)
+     * @throws IllegalArgumentException nếu PDU không phải SMS-DELIVER hợp lệ
+     */
+    public static DeliveredSms decode(String hex) {
+        byte[] pdu = fromHex(hex.trim());
+        try {
+            int pos = 0;
+            // SMSC
+            pos += 1 + (pdu[pos] & 0xFF);
+
+            int firstOctet = pdu[pos++] & 0xFF;
+            if ((firstOctet & 0x03) != 0) {
+                throw new IllegalArgumentException("Not an SMS-DELIVER PDU");
+            }
+            boolean hasUdh = (firstOctet & 0x40) != 0;
+
+            // Originating address
+            int addressDigits = pdu[pos++] & 0xFF;
+            int addressType = pdu[pos++] & 0xFF;
+            int addressOctets = (addressDigits + 1) / 2;
+            String sender = decodeAddress(pdu, pos, addressDigits, addressType);
+            pos += addressOctets;
+
+            // PID
+            pos++;
+            int alphabet = alphabet(pdu[pos++] & 0xFF);
+            Instant timestamp = decodeTimestamp(pdu, pos);
+            pos += 7;
+
+            int udl = pdu[pos++] & 0xFF;
+            int udStart = pos;
+
+            int reference = 0;
+            int total = 1;
+            int part = 1;
+            int udhOctets = 0;
+            if (hasUdh) {
+                int udhl = pdu[udStart] & 0xFF;
+                udhOctets = udhl + 1;
+                int ie = udStart + 1;
+                while (ie < udStart + udhOctets) {
+                    int iei = pdu[ie] & 0xFF;
+                    int length = pdu[ie + 1] & 0xFF;
+                    if (iei == 0x00 && length == 3) {
+                        reference = pdu[ie + 2] & 0xFF;
+                        total = pdu[ie + 3] & 0xFF;
+                        part = pdu[ie + 4] & 0xFF;
+                    } else if (iei == 0x08 && length == 4) {
+                        reference = ((pdu[ie + 2] & 0xFF) << 8) | (pdu[ie + 3] & 0xFF);
+                        total = pdu[ie + 4] & 0xFF;
+                        part = pdu[ie + 5] & 0xFF;
+                    }
+                    ie += 2 + length;
+                }
+            }
+
+            String text;
+            if (alphabet == ALPHABET_GSM7) {
+                int headerSeptets = (udhOctets * 8 + 6) / 7;
+                text = unpackGsm7(pdu, udStart, headerSeptets, udl - headerSeptets);
+            } else {
+                int length = Math.min(udl, pdu.length - udStart) - udhOctets;
+                text = alphabet == ALPHABET_UCS2
+                        ? new String(pdu, udStart + udhOctets, length, StandardCharsets.UTF_16BE)
+                        : new String(pdu, udStart + udhOctets, length, StandardCharsets.ISO_8859_1);
+            }
+            return new DeliveredSms(sender, timestamp, text, reference, Math.max(total, 1), part);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated PDU", e);
+        }
+    }
+
+    private static int alphabet(int dcs) {
+        int group = dcs & 0xF0;
+        if ((dcs & 0xC0) == 0x00) {
+            int value = (dcs >> 2) & 0x03;
+            return value == 3 ? ALPHABET_8BIT : value;
+        }
+        if (group == 0xF0) {
+            return (dcs & 0x04) != 0 ? ALPHABET_8BIT : ALPHABET_GSM7;
+        }
+        if (group == 0xE0) {
+            return ALPHABET_UCS2;
+        }
+        return ALPHABET_GSM7;
+    }
+
+    private static String decodeAddress(byte[] pdu, int pos, int digits, int type) {
+        // Alphanumeric sender (vd: "VIETTEL", "Google")
+        if ((type & 0x70) == 0x50) {
+            return unpackGsm7(pdu, pos, 0, digits * 4 / 7);
+        }
+        StringBuilder sb = new StringBuilder(digits + 1);
+        if ((type & 0x70) == 0x10) {
+            sb.append('+');
+        }
+        for (int i = 0; i < digits; i++) {
+            int octet = pdu[pos + i / 2] & 0xFF;
+            int digit = (i % 2 == 0) ? octet & 0x0F : octet >> 4;
+            sb.append(digit < 10 ? (char) ('0' + digit) : digit == 0x0A ? '*' : digit == 0x0B ? '#' : 'x');
+        }
+        return sb.toString();
+    }
+
+    private static Instant decodeTimestamp(byte[] pdu, int pos) {
+        int[] v = new int[6];
+        for (int i = 0; i < 6; i++) {
+            v[i] = swappedBcd(pdu[pos + i]);
+        }
+        int tzOctet = pdu[pos + 6] & 0xFF;
+        boolean negative = (tzOctet & 0x08) != 0;
+        int quarters = swappedBcd((byte) (tzOctet & 0xF7));
+        try {
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds((negative ? -1 : 1) * quarters * 15 * 60);
+            return LocalDateTime.of(2000 + v[0], v[1], v[2], v[3], v[4], v[5]).toInstant(offset);
+        } catch (Exception e) {
+            // SCTS lỗi (một số SMSC) -> dùng thời điểm nhận
+            return Instant.now();
+        }
+    }
+
+    private static int swappedBcd(byte value) {
+        return (value & 0x0F) * 10 + ((value >> 4) & 0x0F);
+    }
+
+    static String unpackGsm7(byte[] pdu, int start, int skipSeptets, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        boolean escape = false;
+        for (int i = 0; i < count; i++) {
+            int bit = (skipSeptets + i) * 7;
+            int index = start + bit / 8;
+            int shift = bit % 8;
+            if (index >= pdu.length) {
+                break;
+            }
+            int septet = (pdu[index] & 0xFF) >> shift;
+            if (shift > 1 && index + 1 < pdu.length) {
+                septet |= (pdu[index + 1] & 0xFF) << (8 - shift);
+            }
+            septet &= 0x7F;
+
+            if (escape) {
+                escape = false;
+                int ext = indexOf(SmsPduEncoder.GSM7_EXTENSION_CODES, septet);
+                sb.append(ext >= 0 ? SmsPduEncoder.GSM7_EXTENSION_CHARS.charAt(ext) : ' ');
+            } else if (septet == SmsPduEncoder.ESCAPE) {
+                escape = true;
+            } else {
+                sb.append(SmsPduEncoder.GSM7_BASIC.charAt(septet));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid PDU hex length");
+        }
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid PDU hex");
+            }
+            out[i] = (byte) ((high << 4) | low);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,241 @@
+package app.simsmartgsm.modem;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encode SMS-SUBMIT PDU (3GPP TS 23.040) cho AT+CMGF=0 / AT+CMGS=&lt;length&gt;
+ * - GSM 7-bit (default alphabet + extension table) nếu nội dung cho phép, ngược lại UCS2
+ * - Tin dài tách thành nhiều part có UDH concatenation (8-bit reference)
+ *   GSM 7-bit: 160 / 153 septet, UCS2: 70 / 67 ký tự
+ */
+public final class SmsPduEncoder {
+
+    /**
+     * 1 part đã encode: gửi "AT+CMGS=" + tpduLength, sau prompt gửi hex
+     */
+    public static final class Pdu {
+        private final String hex;
+        private final int tpduLength;
+
+        Pdu(String hex, int tpduLength) {
+            this.hex = hex;
+            this.tpduLength = tpduLength;
+        }
+
+        public String getHex() {
+            return hex;
+        }
+
+        public int getTpduLength() {
+            return tpduLength;
+        }
+    }
+
+    static final String GSM7_BASIC =
+            "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞ\u001BÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+                    + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    static final String GSM7_EXTENSION_CHARS = "\f^{}\\[~]|€";
+    static final int[] GSM7_EXTENSION_CODES = {0x0A, 0x14, 0x28, 0x29, 0x2F, 0x3C, 0x3D, 0x3E, 0x40, 0x65};
+    static final int ESCAPE = 0x1B;
+
+    private static final int GSM7_SINGLE = 160;
+    private static final int GSM7_MULTI = 153;
+    private static final int UCS2_SINGLE = 70;
+    private static final int UCS2_MULTI = 67;
+    private static final int MAX_PARTS = 255;
+
+    private static final AtomicInteger REFERENCE = new AtomicInteger();
+
+    private SmsPduEncoder() {
+    }
+
+    /**
+     * Encode tin nhắn thành 1 hoặc nhiều PDU
+     */
+    public static List<Pdu> encode(String number, String text) {
+        int[] septets = toGsm7(text);
+        List<String> parts;
+        if (septets != null) {
+            parts = splitGsm7(text, septets);
+        } else {
+            parts = splitUcs2(text);
+        }
+        if (parts.size() > MAX_PARTS) {
+            throw new IllegalArgumentException("Message too long: " + parts.size() + " parts");
+        }
+
+        int reference = REFERENCE.incrementAndGet() & 0xFF;
+        List<Pdu> result = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            byte[] udh = parts.size() > 1
+                    ? new byte[]{0x05, 0x00, 0x03, (byte) reference, (byte) parts.size(), (byte) (i + 1)}
+                    : null;
+            result.add(buildPdu(number, parts.get(i), septets != null, udh));
+        }
+        return result;
+    }
+
+    /**
+     * Số part cần để gửi nội dung (không encode)
+     */
+    public static int countParts(String text) {
+        int[] septets = toGsm7(text);
+        return septets != null ? splitGsm7(text, septets).size() : splitUcs2(text).size();
+    }
+
+    private static Pdu buildPdu(String number, String text, boolean gsm7, byte[] udh) {
+        ByteArrayOutputStream tpdu = new ByteArrayOutputStream(176);
+        // First octet: SMS-SUBMIT, UDHI nếu có UDH
+        tpdu.write(udh != null ? 0x41 : 0x01);
+        // Message reference (modem tự gán)
+        tpdu.write(0x00);
+        writeAddress(tpdu, number);
+        // PID
+        tpdu.write(0x00);
+        // DCS
+        tpdu.write(gsm7 ? 0x00 : 0x08);
+
+        if (gsm7) {
+            int[] septets = toGsm7(text);
+            int udhLength = udh != null ? udh.length : 0;
+            int headerSeptets = (udhLength * 8 + 6) / 7;
+            tpdu.write(headerSeptets + septets.length);
+            tpdu.writeBytes(packSeptets(septets, udh, headerSeptets));
+        } else {
+            byte[] ucs2 = toUcs2(text);
+            int udhLength = udh != null ? udh.length : 0;
+            tpdu.write(udhLength + ucs2.length);
+            if (udh != null) {
+                tpdu.writeBytes(udh);
+            }
+            tpdu.writeBytes(ucs2);
+        }
+
+        byte[] bytes = tpdu.toByteArray();
+        // "00": dùng SMSC mặc định trong SIM, không tính vào length của AT+CMGS
+        StringBuilder hex = new StringBuilder(2 + bytes.length * 2).append("00");
+        for (byte b : bytes) {
+            hex.append(Character.toUpperCase(Character.forDigit((b >> 4) & 0x0F, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(b & 0x0F, 16)));
+        }
+        return new Pdu(hex.toString(), bytes.length);
+    }
+
+    /**
+     * Destination address: số chữ số, type (0x91 quốc tế / 0x81 nội địa), BCD đảo nibble
+     */
+    private static void writeAddress(ByteArrayOutputStream out, String number) {
+        String digits = number.trim();
+        boolean international = digits.startsWith("+");
+        digits = digits.replaceAll("[^0-9]", "");
+        if (digits.isEmpty()) {
+            throw new IllegalArgumentException("Invalid phone number: " + number);
+        }
+        out.write(digits.length());
+        out.write(international ? 0x91 : 0x81);
+        for (int i = 0; i < digits.length(); i += 2) {
+            int low = digits.charAt(i) - '0';
+            int high = i + 1 < digits.length() ? digits.charAt(i + 1) - '0' : 0x0F;
+            out.write((high << 4) | low);
+        }
+    }
+
+    /**
+     * Pack septet liên tiếp (LSB trước), sau UDH + fill bits
+     */
+    static byte[] packSeptets(int[] septets, byte[] udh, int headerSeptets) {
+        int totalSeptets = headerSeptets + septets.length;
+        byte[] out = new byte[(totalSeptets * 7 + 7) / 8];
+        if (udh != null) {
+            System.arraycopy(udh, 0, out, 0, udh.length);
+        }
+        for (int i = 0; i < septets.length; i++) {
+            int bit = (headerSeptets + i) * 7;
+            int index = bit / 8;
+            int shift = bit % 8;
+            out[index] |= (byte) (septets[i] << shift);
+            if (shift > 1) {
+                out[index + 1] |= (byte) (septets[i] >> (8 - shift));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return septet (escape đã mở rộng), null nếu có ký tự ngoài GSM 7-bit
+     */
+    static int[] toGsm7(String text) {
+        int[] result = new int[text.length() * 2];
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int code = c == '\u001B' ? -1 : GSM7_BASIC.indexOf(c);
+            if (code >= 0) {
+                result[count++] = code;
+                continue;
+            }
+            int ext = GSM7_EXTENSION_CHARS.indexOf(c);
+            if (ext < 0) {
+                return null;
+            }
+            result[count++] = ESCAPE;
+            result[count++] = GSM7_EXTENSION_CODES[ext];
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static List<String> splitGsm7(String text, int[] septets) {
+        List<String> parts = new ArrayList<>();
+        if (septets.length <= GSM7_SINGLE) {
+            parts.add(text);
+            return parts;
+        }
+        // Tách theo ký tự để không cắt đôi escape sequence
+        int start = 0;
+        int used = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int width = GSM7_BASIC.indexOf(text.charAt(i)) >= 0 && text.charAt(i) != '\u001B' ? 1 : 2;
+            if (used + width > GSM7_MULTI) {
+                parts.add(text.substring(start, i));
+                start = i;
+                used = 0;
+            }
+            used += width;
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    private static List<String> splitUcs2(String text) {
+        List<String> parts = new ArrayList<>();
+        if (text.length() <= UCS2_SINGLE) {
+            parts.add(text);
+            return parts;
+        }
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(start + UCS2_MULTI, text.length());
+            // Không cắt đôi surrogate pair (emoji)
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            parts.add(text.substring(start, end));
+            start = end;
+        }
+        return parts;
+    }
+
+    private static byte[] toUcs2(String text) {
+        byte[] out = new byte[text.length() * 2];
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            out[i * 2] = (byte) (c >> 8);
+            out[i * 2 + 1] = (byte) c;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,179 @@
+package app.simsmartgsm.modem;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * UrcDispatcher - chuyển các dòng URC thành event có kiểu cho MỘT port
+ * - Call URC (RING, +CLIP, +CLCC, ^DSCI, NO CARRIER...) -> CallEvent
+ * - +CMT: &lt;alpha&gt;,&lt;length&gt; (PDU mode): dòng kế tiếp là PDU -> SMS deliver listener
+ * - URC khác (+CMTI, ...) -> listener đăng ký theo prefix
+ * Chạy trên thread đọc port, chỉ tạo object khi dòng thực sự là URC cần xử lý
+ */
+@Slf4j
+public class UrcDispatcher {
+
+    private final String portName;
+    private volatile Consumer<CallEvent> callListener;
+    private final List<PrefixListener> prefixListeners = new CopyOnWriteArrayList<>();
+    private volatile Consumer<String> smsDeliverListener;
+    // Đã nhận header +CMT, dòng kế tiếp là PDU (chỉ truy cập trên thread đọc port)
+    private boolean awaitingSmsPdu;
+
+    public UrcDispatcher(String portName) {
+        this.portName = portName;
+    }
+
+    public void onCallEvent(Consumer<CallEvent> listener) {
+        this.callListener = listener;
+    }
+
+    /**
+     * Đăng ký listener cho SMS gửi thẳng qua +CMT (AT+CNMI=2,2), nhận PDU hex
+     */
+    public void onSmsDeliver(Consumer<String> listener) {
+        this.smsDeliverListener = listener;
+    }
+
+    /**
+     * Đăng ký listener cho URC bắt đầu bằng prefix (vd: "+CMTI:")
+     */
+    public void onUrc(String prefix, Consumer<String> listener) {
+        prefixListeners.add(new PrefixListener(prefix, listener));
+    }
+
+    /**
+     * Nhận một dòng từ AtFramer (view, không giữ lại)
+     */
+    public void dispatch(CharSequence line) {
+        if (line.length() == 0) {
+            return;
+        }
+        try {
+            if (awaitingSmsPdu) {
+                awaitingSmsPdu = false;
+                Consumer<String> listener = smsDeliverListener;
+                if (listener != null) {
+                    listener.accept(line.toString());
+                }
+                return;
+            }
+            char first = line.charAt(0);
+            if (first == '+' || first == '^') {
+                dispatchPrefixed(line);
+            } else {
+                dispatchPlain(line);
+            }
+        } catch (Exception e) {
+            log.error("Error dispatching URC on {}: {}", portName, line, e);
+        }
+    }
+
+    private void dispatchPlain(CharSequence line) {
+        if (AtFramer.contentEquals(line, "RING")) {
+            fireCall(new CallEvent(portName, CallEvent.Type.RING, -1, null, null));
+        } else if (AtFramer.contentEquals(line, "NO CARRIER") || AtFramer.contentEquals(line, "BUSY")
+                || AtFramer.contentEquals(line, "NO ANSWER")) {
+            fireCall(new CallEvent(portName, CallEvent.Type.DISCONNECTED, -1, null, line.toString()));
+        }
+    }
+
+    private void dispatchPrefixed(CharSequence line) {
+        if (AtFramer.startsWith(line, "+CLCC:")) {
+            // +CLCC: <idx>,<dir>,<stat>,<mode>,<mpty>[,<number>,<type>]
+            fireStatus(line, 6, 5);
+        } else if (AtFramer.startsWith(line, "^DSCI:")) {
+            // ^DSCI: <id>,<dir>,<stat>,<type>,<number>,<num_type>
+            fireStatus(line, 6, 4);
+        } else if (AtFramer.startsWith(line, "+CRING:")) {
+            fireCall(new CallEvent(portName, CallEvent.Type.RING, -1, null, null));
+        } else if (AtFramer.startsWith(line, "+CMT:")) {
+            awaitingSmsPdu = true;
+        } else if (AtFramer.startsWith(line, "+CLIP:")) {
+            fireCall(new CallEvent(portName, CallEvent.Type.CALLER_ID, -1, quotedField(line, 6, 0), null));
+        }
+
+        for (PrefixListener listener : prefixListeners) {
+            if (AtFramer.startsWith(line, listener.prefix)) {
+                listener.consumer.accept(line.toString());
+            }
+        }
+    }
+
+    private void fireStatus(CharSequence line, int offset, int numberField) {
+        int stat = intField(line, offset, 2);
+        if (stat < 0) {
+            return;
+        }
+        fireCall(new CallEvent(portName, CallEvent.Type.STATUS, stat, quotedField(line, offset, numberField), null));
+    }
+
+    private void fireCall(CallEvent event) {
+        Consumer<CallEvent> listener = callListener;
+        if (listener != null) {
+            log.debug("📲 Call event: {}", event);
+            listener.accept(event);
+        }
+    }
+
+    /**
+     * Vị trí bắt đầu field thứ index (phân cách bởi dấu phẩy), -1 nếu không có
+     */
+    private static int fieldStart(CharSequence line, int offset, int index) {
+        int pos = offset;
+        for (int field = 0; field < index; field++) {
+            while (pos < line.length() && line.charAt(pos) != ',') {
+                pos++;
+            }
+            if (pos >= line.length()) {
+                return -1;
+            }
+            pos++;
+        }
+        while (pos < line.length() && line.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    static int intField(CharSequence line, int offset, int index) {
+        int pos = fieldStart(line, offset, index);
+        if (pos < 0) {
+            return -1;
+        }
+        int value = -1;
+        while (pos < line.length()) {
+            char c = line.charAt(pos++);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = (value < 0 ? 0 : value * 10) + (c - '0');
+        }
+        return value;
+    }
+
+    static String quotedField(CharSequence line, int offset, int index) {
+        int pos = fieldStart(line, offset, index);
+        if (pos < 0 || pos >= line.length() || line.charAt(pos) != '"') {
+            return null;
+        }
+        int end = pos + 1;
+        while (end < line.length() && line.charAt(end) != '"') {
+            end++;
+        }
+        return end > pos + 1 ? line.subSequence(pos + 1, end).toString() : null;
+    }
+
+    private static class PrefixListener {
+        private final String prefix;
+        private final Consumer<String> consumer;
+
+        PrefixListener(String prefix, Consumer<String> consumer) {
+            this.prefix = prefix;
+            this.consumer = consumer;
+        }
+    }
+}
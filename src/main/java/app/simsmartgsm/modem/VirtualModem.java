@@ -0,0 +1,729 @@
+package app.simsmartgsm.modem;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Modem GSM giả lập (kiểu Quectel EC2x) để load test serial stack khi không có phần cứng
+ * - Trả lời AT như modem thật: echo ATE0/ATE1, batch "AT+CGSN;+COPS?", identity (IMEI, ICCID, số SIM)
+ * - Cuộc gọi: ATD -> +CLCC alerting / active, ATH, NO CARRIER khi đầu kia cúp, RING/+CLIP cho cuộc gọi đến
+ * - Cuộc gọi active kết thúc -> tạo file ghi âm trên "RAM:", tải bằng AT+QFLST / AT+QFDWL (binary + checksum)
+ * - SMS PDU: AT+CMGS với prompt "> ", +CMTI khi deliverSms, AT+CMGL / CMGR / CMGD
+ * - Response đi qua 1 scheduler dùng chung, có latency + jitter, thứ tự bytes của mỗi modem được giữ nguyên
+ * - script(prefix, responder) để thay response của 1 command (lỗi, timeout...) trong test
+ */
+@Slf4j
+public class VirtualModem implements ModemPort {
+
+    /**
+     * Thông số giả lập (thời gian, kích thước ghi âm, tốc độ truyền)
+     */
+    @Getter
+    @Builder
+    public static class Profile {
+        @Builder.Default
+        private final long latencyMs = 20;
+        @Builder.Default
+        private final long jitterMs = 10;
+        // ATD -> alerting -> active
+        @Builder.Default
+        private final long alertDelayMs = 500;
+        @Builder.Default
+        private final long answerDelayMs = 3000;
+        // Đầu kia tự cúp sau khi active, 0 = chỉ kết thúc bằng ATH
+        @Builder.Default
+        private final long remoteHangupMs = 0;
+        @Builder.Default
+        private final long ringIntervalMs = 3000;
+        // Ghi âm: bytes mỗi giây gọi (WAV 8kHz 16-bit mono), tối thiểu 1 chunk
+        @Builder.Default
+        private final int recordingBytesPerSecond = 16000;
+        @Builder.Default
+        private final int transferChunkBytes = 4096;
+        // Tốc độ AT+QFDWL, mặc định ~115200 baud; 0 = không giới hạn
+        @Builder.Default
+        private final int transferBytesPerSecond = 11520;
+
+        public static Profile defaults() {
+            return Profile.builder().build();
+        }
+    }
+
+    /**
+     * Response tuỳ chỉnh cho command (đã bỏ "AT"), trả null để dùng xử lý mặc định
+     * Danh sách trả về phải có final result (OK / ERROR...), danh sách rỗng = không trả lời (timeout)
+     */
+    public interface Responder {
+        List<String> respond(String command);
+    }
+
+    private static final byte CTRL_Z = 0x1A;
+    private static final byte ESC = 0x1B;
+    private static final int MAX_INPUT = 4096;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "virtual-modem-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final String name;
+    private final Profile profile;
+    private final String imei;
+    private final String iccid;
+    private final String phoneNumber;
+    private final String operator;
+
+    // ========== TRẠNG THÁI (guard bởi this) ==========
+
+    private volatile DataListener listener;
+    private volatile boolean open;
+    private boolean echo = true;
+    private boolean clccReporting;
+    private final ByteArrayOutputStream input = new ByteArrayOutputStream();
+    // AT+CMGS đang đợi PDU (sau prompt)
+    private boolean inPrompt;
+    // Command tự gửi response (prompt, binary transfer), chạy sau các dòng của batch
+    private Runnable selfResponse;
+    private final Map<String, Responder> scripts = new LinkedHashMap<>();
+
+    // Cuộc gọi hiện tại (tối đa 1)
+    private String callNumber;
+    private int callDirection;
+    private int callStat = -1;
+    private long callActiveAt;
+    private final List<ScheduledFuture<?>> callTimers = new ArrayList<>();
+    private int recordingCounter;
+
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+    private final TreeMap<Integer, byte[]> smsStorage = new TreeMap<>();
+    private int messageReference;
+
+    // ========== OUTBOX (bytes gửi về host theo thứ tự) ==========
+
+    private final Deque<Emission> outbox = new ArrayDeque<>();
+    private boolean drainScheduled;
+    private long lastDueNanos;
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    private record Emission(long dueNanos, byte[] bytes) {
+    }
+
+    public VirtualModem(String name, int index, Profile profile) {
+        this.name = name;
+        this.profile = profile;
+        Random random = new Random(name.hashCode() * 31L + index);
+        this.imei = "86" + digits(random, 13);
+        this.iccid = "8984" + digits(random, 15);
+        this.phoneNumber = String.format("+849%08d", index);
+        this.operator = "Viettel";
+    }
+
+    // ========== MODEM PORT ==========
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized boolean open(DataListener listener) {
+        this.listener = listener;
+        this.open = true;
+        input.reset();
+        inPrompt = false;
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+        listener = null;
+        outbox.clear();
+        endCall(false);
+    }
+
+    /**
+     * Host ghi command: xử lý ngay trên thread gọi, response được lên lịch qua outbox
+     */
+    @Override
+    public synchronized boolean write(byte[] bytes) {
+        if (!open) {
+            return false;
+        }
+        for (byte b : bytes) {
+            if (inPrompt) {
+                onPromptByte(b);
+            } else if (b == '\r' || b == '\n') {
+                if (input.size() > 0) {
+                    String line = input.toString(StandardCharsets.US_ASCII);
+                    input.reset();
+                    onCommandLine(line);
+                }
+            } else if (input.size() < MAX_INPUT) {
+                input.write(b);
+            }
+        }
+        return true;
+    }
+
+    // ========== ĐIỀU KHIỂN TỪ TEST / LOAD HARNESS ==========
+
+    /**
+     * Thay response cho các command bắt đầu bằng prefix (không phân biệt hoa thường, vd: "+CSQ")
+     */
+    public synchronized void script(String prefix, Responder responder) {
+        scripts.put(prefix.toUpperCase(Locale.ROOT), responder);
+    }
+
+    /**
+     * Cuộc gọi đến: RING + CLIP lặp lại tới khi ATA / ATH
+     */
+    public synchronized void ring(String number) {
+        if (callStat >= 0) {
+            return;
+        }
+        callNumber = number;
+        callDirection = 1;
+        setCallStat(CallEvent.STAT_INCOMING);
+        ringOnce();
+    }
+
+    /**
+     * Đầu kia cúp máy
+     */
+    public synchronized void remoteHangup() {
+        if (callStat >= 0) {
+            endCall(true);
+        }
+    }
+
+    /**
+     * SMS đến (PDU SMS-DELIVER kèm SMSC): lưu vào bộ nhớ SIM và báo +CMTI
+     */
+    public synchronized int deliverSms(String pduHex) {
+        int index = smsStorage.isEmpty() ? 0 : smsStorage.lastKey() + 1;
+        smsStorage.put(index, pduHex.getBytes(StandardCharsets.US_ASCII));
+        emitLines("+CMTI: \"SM\"," + index);
+        return index;
+    }
+
+    /**
+     * Đặt sẵn file trên storage của modem (vd: file ghi âm cố định cho test)
+     */
+    public synchronized void putFile(String fileName, byte[] data) {
+        files.put(fileName, data);
+    }
+
+    public String getImei() {
+        return imei;
+    }
+
+    public String getIccid() {
+        return iccid;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public synchronized int getCallStat() {
+        return callStat;
+    }
+
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    // ========== COMMAND ==========
+
+    private void onCommandLine(String line) {
+        if (echo) {
+            emit(line + "\r\n");
+        }
+        String trimmed = line.trim();
+        if (trimmed.length() < 2 || !trimmed.regionMatches(true, 0, "AT", 0, 2)) {
+            emitFinal("ERROR");
+            return;
+        }
+        commandCount.incrementAndGet();
+
+        // Batch: "AT+CGSN;+COPS?;+CSQ" (ATD...; không phải batch)
+        String body = trimmed.substring(2);
+        List<String> commands = new ArrayList<>();
+        if (body.regionMatches(true, 0, "D", 0, 1)) {
+            commands.add(body);
+        } else {
+            for (String part : body.split(";")) {
+                if (!part.isBlank() || commands.isEmpty()) {
+                    commands.add(part.trim());
+                }
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (String command : commands) {
+            List<String> result = execute(command);
+            if (result == null) {
+                // Command tự trả lời (prompt / binary transfer) hoặc không trả lời
+                emitLines(lines);
+                Runnable response = selfResponse;
+                selfResponse = null;
+                if (response != null) {
+                    response.run();
+                }
+                return;
+            }
+            if (result.isEmpty()) {
+                continue;
+            }
+            String last = result.get(result.size() - 1);
+            if (!isFinal(last)) {
+                lines.addAll(result);
+                continue;
+            }
+            lines.addAll(result.subList(0, result.size() - 1));
+            if (!last.equals("OK")) {
+                lines.add(last);
+                emitLines(lines);
+                return;
+            }
+        }
+        lines.add("OK");
+        emitLines(lines);
+    }
+
+    /**
+     * @return response lines (có hoặc không có final result, thiếu = OK),
+     *         null nếu command tự gửi response
+     */
+    private List<String> execute(String command) {
+        String upper = command.toUpperCase(Locale.ROOT);
+        for (Map.Entry<String, Responder> entry : scripts.entrySet()) {
+            if (upper.startsWith(entry.getKey())) {
+                List<String> scripted = entry.getValue().respond(command);
+                if (scripted != null) {
+                    if (scripted.isEmpty()) {
+                        return null;
+                    }
+                    return scripted;
+                }
+            }
+        }
+
+        if (upper.isEmpty()) {
+            return List.of();
+        }
+        if (upper.equals("E0") || upper.equals("E1")) {
+            echo = upper.equals("E1");
+            return List.of();
+        }
+        if (upper.startsWith("D")) {
+            return dial(command.substring(1));
+        }
+        if (upper.equals("A")) {
+            return answer();
+        }
+        if (upper.equals("H") || upper.equals("H0") || upper.equals("+CHUP")) {
+            endCall(false);
+            return List.of();
+        }
+
+        switch (upper) {
+            case "+CGSN", "+GSN", "+CGSN=1" -> {
+                return List.of(imei);
+            }
+            case "+QCCID" -> {
+                return List.of("+QCCID: " + iccid);
+            }
+            case "+CCID", "+ICCID" -> {
+                return List.of(upper.substring(1) + ": " + iccid);
+            }
+            case "+COPS?" -> {
+                return List.of("+COPS: 0,0,\"" + operator + "\",7");
+            }
+            case "+CSQ" -> {
+                return List.of("+CSQ: " + (18 + ThreadLocalRandom.current().nextInt(10)) + ",99");
+            }
+            case "+CNUM" -> {
+                return List.of("+CNUM: \"\",\"" + phoneNumber + "\",145");
+            }
+            case "+CPIN?" -> {
+                return List.of("+CPIN: READY");
+            }
+            case "+CREG?" -> {
+                return List.of("+CREG: 0,1");
+            }
+            case "+CLCC" -> {
+                return callStat >= 0 ? List.of(clccLine()) : List.of();
+            }
+            case "+CLCC=1", "+CLCC=0" -> {
+                clccReporting = upper.endsWith("1");
+                return List.of();
+            }
+            case "^DSCI=1", "^DSCI=0" -> {
+                // Quectel không có ^DSCI
+                return List.of("ERROR");
+            }
+            default -> {
+            }
+        }
+
+        if (upper.startsWith("+QFLST")) {
+            List<String> lines = new ArrayList<>();
+            files.forEach((file, data) -> lines.add("+QFLST: \"" + file + "\"," + data.length));
+            return lines;
+        }
+        if (upper.startsWith("+QFDWL=")) {
+            return download(unquote(command.substring(7)));
+        }
+        if (upper.startsWith("+QFDEL=")) {
+            String file = unquote(command.substring(7));
+            if (file.equals("*")) {
+                files.clear();
+            } else if (files.remove(file) == null) {
+                return List.of("+CME ERROR: 405");
+            }
+            return List.of();
+        }
+        if (upper.startsWith("+CMGS=")) {
+            inPrompt = true;
+            selfResponse = () -> emit("\r\n> ");
+            return null;
+        }
+        if (upper.startsWith("+CMGL")) {
+            List<String> lines = new ArrayList<>();
+            smsStorage.forEach((index, pdu) -> {
+                lines.add("+CMGL: " + index + ",0,," + tpduLength(pdu));
+                lines.add(new String(pdu, StandardCharsets.US_ASCII));
+            });
+            return lines;
+        }
+        if (upper.startsWith("+CMGR=")) {
+            byte[] pdu = smsStorage.get(parseIndex(upper.substring(6)));
+            if (pdu == null) {
+                return List.of("+CMS ERROR: 321");
+            }
+            return List.of("+CMGR: 0,," + tpduLength(pdu), new String(pdu, StandardCharsets.US_ASCII));
+        }
+        if (upper.startsWith("+CMGD=")) {
+            String[] args = upper.substring(6).split(",");
+            if (args.length > 1 && !args[1].trim().equals("0")) {
+                smsStorage.clear();
+            } else {
+                smsStorage.remove(parseIndex(args[0]));
+            }
+            return List.of();
+        }
+
+        // Command cấu hình khác (CMGF, CNMI, QURCCFG...) -> OK
+        return List.of();
+    }
+
+    // ========== CALL ==========
+
+    private List<String> dial(String number) {
+        if (callStat >= 0) {
+            return List.of("ERROR");
+        }
+        callNumber = number.endsWith(";") ? number.substring(0, number.length() - 1) : number;
+        callDirection = 0;
+        setCallStat(CallEvent.STAT_DIALING);
+        callTimers.add(schedule(profile.getAlertDelayMs(), () -> {
+            if (callStat == CallEvent.STAT_DIALING) {
+                setCallStat(CallEvent.STAT_ALERTING);
+            }
+        }));
+        callTimers.add(schedule(profile.getAnswerDelayMs(), () -> {
+            if (callStat == CallEvent.STAT_DIALING || callStat == CallEvent.STAT_ALERTING) {
+                activate();
+            }
+        }));
+        return List.of();
+    }
+
+    private List<String> answer() {
+        if (callStat != CallEvent.STAT_INCOMING) {
+            return List.of("NO CARRIER");
+        }
+        activate();
+        return List.of();
+    }
+
+    private void activate() {
+        callActiveAt = System.currentTimeMillis();
+        setCallStat(CallEvent.STAT_ACTIVE);
+        if (profile.getRemoteHangupMs() > 0) {
+            callTimers.add(schedule(profile.getRemoteHangupMs(), () -> {
+                if (callStat == CallEvent.STAT_ACTIVE) {
+                    endCall(true);
+                }
+            }));
+        }
+    }
+
+    private void ringOnce() {
+        emitLines("RING");
+        emitLines("+CLIP: \"" + callNumber + "\",145,,,,0");
+        callTimers.add(schedule(profile.getRingIntervalMs(), () -> {
+            if (callStat == CallEvent.STAT_INCOMING) {
+                ringOnce();
+            }
+        }));
+    }
+
+    /**
+     * @param remote đầu kia cúp (báo NO CARRIER), false = ATH / đóng port
+     */
+    private void endCall(boolean remote) {
+        callTimers.forEach(timer -> timer.cancel(false));
+        callTimers.clear();
+        if (callStat < 0) {
+            return;
+        }
+        if (callStat == CallEvent.STAT_ACTIVE) {
+            createRecording(System.currentTimeMillis() - callActiveAt);
+        }
+        setCallStat(CallEvent.STAT_RELEASED);
+        callStat = -1;
+        callNumber = null;
+        if (remote) {
+            emitLines("NO CARRIER");
+        }
+    }
+
+    private void setCallStat(int stat) {
+        callStat = stat;
+        if (clccReporting && open) {
+            emitLines(clccLine());
+        }
+    }
+
+    private String clccLine() {
+        int type = callNumber != null && callNumber.startsWith("+") ? 145 : 129;
+        return "+CLCC: 1," + callDirection + "," + callStat + ",0,0,\"" + callNumber + "\"," + type;
+    }
+
+    // ========== RECORDING ==========
+
+    private void createRecording(long durationMs) {
+        int size = (int) Math.max(profile.getTransferChunkBytes(),
+                Math.min(Integer.MAX_VALUE / 2, durationMs * profile.getRecordingBytesPerSecond() / 1000));
+        byte[] data = new byte[size];
+        new Random(name.hashCode() + recordingCounter).nextBytes(data);
+        recordingCounter++;
+        files.put("RAM:record_" + recordingCounter + ".wav", data);
+    }
+
+    /**
+     * CONNECT, payload theo chunk (giới hạn tốc độ), rồi "+QFDWL: size,checksum" và OK
+     */
+    private List<String> download(String fileName) {
+        byte[] data = files.get(fileName);
+        if (data == null) {
+            return List.of("+CME ERROR: 405");
+        }
+        selfResponse = () -> transfer(data);
+        return null;
+    }
+
+    private void transfer(byte[] data) {
+        emit("\r\nCONNECT\r\n");
+        int chunk = Math.max(1, profile.getTransferChunkBytes());
+        long chunkNanos = profile.getTransferBytesPerSecond() > 0
+                ? TimeUnit.SECONDS.toNanos(chunk) / profile.getTransferBytesPerSecond()
+                : 0;
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            int length = Math.min(chunk, data.length - offset);
+            byte[] part = new byte[length];
+            System.arraycopy(data, offset, part, 0, length);
+            enqueue(part, chunkNanos);
+        }
+        emit("\r\n+QFDWL: " + data.length + "," + Integer.toHexString(QfdwlTransferParser.checksum(data)) + "\r\n");
+        emitFinal("OK");
+    }
+
+    // ========== SMS ==========
+
+    private void onPromptByte(byte b) {
+        if (b == CTRL_Z) {
+            inPrompt = false;
+            input.reset();
+            messageReference = (messageReference + 1) & 0xFF;
+            emitLines(List.of("+CMGS: " + messageReference, "OK"));
+        } else if (b == ESC) {
+            inPrompt = false;
+            input.reset();
+            emitFinal("OK");
+        } else if (input.size() < MAX_INPUT) {
+            input.write(b);
+        }
+    }
+
+    /**
+     * Length của AT+CMGR / CMGL: số octet TPDU, không tính phần SMSC
+     */
+    private static int tpduLength(byte[] pduHex) {
+        int octets = pduHex.length / 2;
+        if (octets == 0) {
+            return 0;
+        }
+        int smscLength = Integer.parseInt(new String(pduHex, 0, 2, StandardCharsets.US_ASCII), 16);
+        return Math.max(0, octets - smscLength - 1);
+    }
+
+    // ========== OUTPUT ==========
+
+    private void emitLines(String line) {
+        emitLines(List.of(line));
+    }
+
+    private void emitLines(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append("\r\n").append(line).append("\r\n");
+        }
+        emit(text.toString());
+    }
+
+    private void emitFinal(String result) {
+        emitLines(result);
+    }
+
+    private void emit(String text) {
+        enqueue(text.getBytes(StandardCharsets.US_ASCII), 0);
+    }
+
+    /**
+     * Lên lịch gửi bytes sau latency + jitter, không sớm hơn bytes trước đó (+ gapNanos)
+     */
+    private void enqueue(byte[] bytes, long gapNanos) {
+        long now = System.nanoTime();
+        long delay = TimeUnit.MILLISECONDS.toNanos(profile.getLatencyMs());
+        if (profile.getJitterMs() > 0) {
+            delay += ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(profile.getJitterMs()) + 1);
+        }
+        long due = Math.max(now + delay, lastDueNanos + gapNanos);
+        lastDueNanos = due;
+        outbox.addLast(new Emission(due, bytes));
+        if (!drainScheduled) {
+            drainScheduled = true;
+            SCHEDULER.schedule(this::drain, due - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Chỉ 1 drain chạy tại 1 thời điểm cho mỗi modem: listener nhận bytes tuần tự như thread đọc serial
+     */
+    private void drain() {
+        List<byte[]> ready = new ArrayList<>();
+        DataListener target;
+        synchronized (this) {
+            long now = System.nanoTime();
+            while (!outbox.isEmpty() && outbox.peekFirst().dueNanos() <= now) {
+                ready.add(outbox.pollFirst().bytes());
+            }
+            target = listener;
+        }
+        for (byte[] bytes : ready) {
+            if (target == null) {
+                break;
+            }
+            try {
+                target.onData(bytes, bytes.length);
+            } catch (Exception e) {
+                log.error("Error delivering virtual modem data on {}: {}", name, e.getMessage());
+            }
+        }
+        synchronized (this) {
+            Emission next = outbox.peekFirst();
+            if (next == null) {
+                drainScheduled = false;
+            } else {
+                SCHEDULER.schedule(this::drain, Math.max(0, next.dueNanos() - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private ScheduledFuture<?> schedule(long delayMs, Runnable action) {
+        return SCHEDULER.schedule(() -> {
+            synchronized (this) {
+                if (open) {
+                    action.run();
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ========== HELPERS ==========
+
+    private static boolean isFinal(String line) {
+        return line.equals("OK") || line.equals("ERROR") || line.equals("NO CARRIER")
+                || line.startsWith("+CME ERROR") || line.startsWith("+CMS ERROR");
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        int comma = trimmed.indexOf("\",");
+        if (comma > 0) {
+            trimmed = trimmed.substring(0, comma + 1);
+        }
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+
+    private static int parseIndex(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String digits(Random random, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(random.nextInt(10));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package app.simsmartgsm.modem;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * N modem ảo VCOM1..VCOMn thay cho serial thật (modem.backend=virtual), dùng cho load test
+ * - Modem giữ trạng thái (file ghi âm, SMS) qua các lần mở lại port
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "modem.backend", havingValue = "virtual")
+public class VirtualPortProvider implements PortProvider {
+
+    public static final String PORT_PREFIX = "VCOM";
+
+    private final Map<String, VirtualModem> modems;
+
+    @Autowired
+    public VirtualPortProvider(@Value("${modem.virtual.count:8}") int count,
+                               @Value("${modem.virtual.latency-ms:20}") long latencyMs,
+                               @Value("${modem.virtual.jitter-ms:10}") long jitterMs,
+                               @Value("${modem.virtual.answer-delay-ms:3000}") long answerDelayMs,
+                               @Value("${modem.virtual.remote-hangup-ms:0}") long remoteHangupMs) {
+        this(count, VirtualModem.Profile.builder()
+                .latencyMs(latencyMs)
+                .jitterMs(jitterMs)
+                .answerDelayMs(answerDelayMs)
+                .remoteHangupMs(remoteHangupMs)
+                .build());
+    }
+
+    public VirtualPortProvider(int count, VirtualModem.Profile profile) {
+        Map<String, VirtualModem> created = new LinkedHashMap<>();
+        for (int i = 1; i <= count; i++) {
+            String name = PORT_PREFIX + i;
+            created.put(name, new VirtualModem(name, i, profile));
+        }
+        this.modems = Collections.unmodifiableMap(created);
+        log.info("🧪 Virtual modem backend: {} port(s), latency {}ms ± {}ms",
+                count, profile.getLatencyMs(), profile.getJitterMs());
+    }
+
+    @Override
+    public List<String> listPorts() {
+        return new ArrayList<>(modems.keySet());
+    }
+
+    @Override
+    public ModemPort create(String portName) {
+        VirtualModem modem = modems.get(portName);
+        if (modem == null) {
+            throw new IllegalArgumentException("Unknown virtual port: " + portName);
+        }
+        return modem;
+    }
+
+    /**
+     * Modem ảo của port (để test / harness điều khiển: ring, deliverSms, script...)
+     */
+    public VirtualModem getModem(String portName) {
+        return modems.get(portName);
+    }
+}
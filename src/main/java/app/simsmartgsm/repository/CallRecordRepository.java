@@ -8,13 +8,14 @@ import org.springframework.stereotype.Repository;
 
 @Repository
 public interface CallRecordRepository extends MongoRepository<CallRecord, String> {
-    Page<CallRecord> findBySimPhoneContainingIgnoreCase(String simPhone, Pageable pageable);
+    // Prefix (regex neo ^, dùng được index simPhone_startTime)
+    Page<CallRecord> findBySimPhoneStartingWith(String simPhone, Pageable pageable);
 
     // Mới thêm cho ModemCallController
     Page<CallRecord> findByComPort(String comPort, Pageable pageable);
 
     Page<CallRecord> findByServiceCode(String serviceCode, Pageable pageable);
 
-    Page<CallRecord> findBySimPhoneContainingIgnoreCaseAndComPort(
+    Page<CallRecord> findBySimPhoneStartingWithAndComPort(
             String simPhone, String comPort, Pageable pageable);
 }
@@ -14,6 +14,8 @@ public interface SimRepository extends MongoRepository<Sim, String> {
 
     Optional<Sim> findByComName(String phoneNumber);
 
+    Optional<Sim> findFirstByCcid(String ccid);
+
     List<Sim> findAllByDeviceNameAndComName(String deviceName, String comName);
 
     List<Sim> findByDeviceName(String deviceName);
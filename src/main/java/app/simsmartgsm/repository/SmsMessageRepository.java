@@ -5,15 +5,19 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface SmsMessageRepository extends MongoRepository<SmsMessage, Long> {
 
     boolean existsByOrderId(String orderId);
 
-    Page<SmsMessage> findByToNumberContainingIgnoreCase(String toNumber, Pageable pageable);
+    List<SmsMessage> findByDeviceNameAndTypeAndStatus(String deviceName, String type, String status);
+
+    // Prefix (regex neo ^, dùng được index toNumber_timestamp)
+    Page<SmsMessage> findByToNumberStartingWith(String toNumber, Pageable pageable);
 
-    Page<SmsMessage> findByTypeIgnoreCase(String type, Pageable pageable);
+    Page<SmsMessage> findByType(String type, Pageable pageable);
 
-    Page<SmsMessage> findByToNumberContainingIgnoreCaseAndTypeIgnoreCase(
-            String toNumber, String type, Pageable pageable);
+    Page<SmsMessage> findByToNumberStartingWithAndType(String toNumber, String type, Pageable pageable);
 }
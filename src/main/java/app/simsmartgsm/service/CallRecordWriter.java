@@ -0,0 +1,199 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.CallRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lưu CallRecord kiểu write-behind, không để kết thúc cuộc gọi phụ thuộc Mongo
+ * - submit() chỉ đưa vào buffer, thread riêng gom batch -> bulkWrite (upsert theo id, replay không tạo trùng)
+ * - Mongo lỗi / buffer đầy: ghi nối (append-only) vào journal JSON-lines trên đĩa
+ *   (buffer đầy: ghi trên thread overflow, thread gọi submit không bao giờ đợi)
+ * - Job định kỳ replay journal khi Mongo sống lại
+ */
+@Component
+@Slf4j
+public class CallRecordWriter {
+
+    private static final int REPLAY_BATCH = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final RetentionService retentionService;
+    private final Path journal;
+    private final Path replaying;
+
+    private final Object journalLock = new Object();
+    private final ExecutorService overflowWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "call-records-overflow");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WriteBehindBuffer<CallRecord> buffer;
+    // Mongo đang lỗi -> ghi thẳng journal, không đợi timeout mỗi batch
+    private volatile boolean mongoDown;
+
+    public CallRecordWriter(MongoTemplate mongoTemplate, ObjectMapper objectMapper, RetentionService retentionService,
+                            @Value("${call-record.journal-dir:data}") String journalDir) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.retentionService = retentionService;
+        this.journal = Paths.get(journalDir, "call-records.journal");
+        this.replaying = Paths.get(journalDir, "call-records.journal.replaying");
+    }
+
+    @PostConstruct
+    void init() {
+        buffer = new WriteBehindBuffer<>("call-records", 5_000, 200, 500, 0, this::flush);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        buffer.close();
+        overflowWriter.shutdown();
+    }
+
+    /**
+     * Không block: gán id nếu chưa có rồi đưa vào buffer
+     */
+    public void submit(CallRecord record) {
+        if (record.getId() == null) {
+            record.setId(UUID.randomUUID().toString());
+        }
+        Instant now = Instant.now();
+        if (record.getCreatedAt() == null) {
+            record.setCreatedAt(now);
+        }
+        record.setUpdatedAt(now);
+        if (record.getExpireAt() == null) {
+            record.setExpireAt(retentionService.callRecordExpiry(now));
+        }
+        if (!buffer.add(record)) {
+            overflowWriter.execute(() -> spill(List.of(record)));
+        }
+    }
+
+    public int getPending() {
+        return buffer.size();
+    }
+
+    public boolean isMongoDown() {
+        return mongoDown;
+    }
+
+    private void flush(List<CallRecord> batch) {
+        if (mongoDown) {
+            spill(batch);
+            return;
+        }
+        try {
+            bulkUpsert(batch);
+            log.info("💾 Saved {} call record(s)", batch.size());
+        } catch (Exception e) {
+            mongoDown = true;
+            log.warn("⚠️ Mongo unavailable, spilling {} call record(s) to {}: {}",
+                    batch.size(), journal, e.getMessage());
+            spill(batch);
+        }
+    }
+
+    private void bulkUpsert(List<CallRecord> batch) {
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CallRecord.class);
+        for (CallRecord record : batch) {
+            ops.replaceOne(Query.query(Criteria.where("_id").is(record.getId())), record,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        ops.execute();
+    }
+
+    private void spill(List<CallRecord> records) {
+        synchronized (journalLock) {
+            try {
+                Files.createDirectories(journal.getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (CallRecord record : records) {
+                        writer.write(objectMapper.writeValueAsString(record));
+                        writer.newLine();
+                    }
+                }
+            } catch (IOException e) {
+                log.error("❌ Cannot write call record journal {}, {} record(s) lost: {}",
+                        journal, records.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replay journal: đổi tên file trước (ghi mới vẫn append vào journal), xoá khi đã lưu hết
+     */
+    @Scheduled(fixedDelayString = "${call-record.replay-interval-ms:30000}")
+    public void replayJournal() {
+        try {
+            synchronized (journalLock) {
+                if (!Files.exists(replaying)) {
+                    if (!Files.exists(journal) || Files.size(journal) == 0) {
+                        mongoDown = false;
+                        return;
+                    }
+                    Files.move(journal, replaying, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+
+            List<String> lines = Files.readAllLines(replaying, StandardCharsets.UTF_8);
+            List<CallRecord> batch = new ArrayList<>(REPLAY_BATCH);
+            int replayed = 0;
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(objectMapper.readValue(line, CallRecord.class));
+                } catch (IOException e) {
+                    log.warn("Skipping corrupt call record journal line: {}", e.getMessage());
+                    continue;
+                }
+                if (batch.size() == REPLAY_BATCH) {
+                    bulkUpsert(batch);
+                    replayed += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                bulkUpsert(batch);
+                replayed += batch.size();
+            }
+            Files.delete(replaying);
+            mongoDown = false;
+            log.info("✅ Replayed {} call record(s) from journal", replayed);
+        } catch (Exception e) {
+            // Giữ file .replaying, lần sau replay lại (upsert nên không trùng)
+            log.debug("Call record journal replay deferred: {}", e.getMessage());
+        }
+    }
+}
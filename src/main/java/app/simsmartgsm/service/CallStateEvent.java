@@ -0,0 +1,26 @@
+package app.simsmartgsm.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event khi cuộc gọi đổi trạng thái (DIALING -> RINGING -> ACTIVE -> ENDED...)
+ */
+@Name("app.simsmartgsm.CallState")
+@Label("Call State")
+@Category({"SimSmart GSM", "Call"})
+@StackTrace(false)
+class CallStateEvent extends Event {
+
+    @Label("Port")
+    String port;
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+}
@@ -0,0 +1,180 @@
+package app.simsmartgsm.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcast trạng thái cuộc gọi qua WebSocket: gom theo port + chỉ gửi field thay đổi
+ * - publish() chỉ ghi state mới nhất vào map (không block thread serial / scheduler)
+ * - Mỗi window (mặc định 100ms) 1 thread riêng so với state đã gửi, gửi phần thay đổi:
+ *   /topic/call-status: {seq, updates: [{comPort, seq, changes}]} (1 message cho mọi port)
+ *   /topic/call-status/{port}: {comPort, seq, changes}
+ * - seq tăng liên tục; client thấy hụt seq (hoặc mới kết nối) thì gọi snapshot() qua REST
+ */
+@Component
+@Slf4j
+public class CallStatusBroadcaster {
+
+    public static final String TOPIC = "/topic/call-status";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long windowMs;
+
+    // Port -> state mới nhất chưa gửi
+    private final Map<String, Map<String, Object>> pending = new ConcurrentHashMap<>();
+    // Chỉ truy cập trên thread flush (và snapshot có synchronized)
+    private final Map<String, Map<String, Object>> sent = new HashMap<>();
+    private final Map<String, Long> portSeq = new HashMap<>();
+    private long seq;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "call-status-broadcaster");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CallStatusBroadcaster(SimpMessagingTemplate messagingTemplate,
+                                 @Value("${call-status.coalesce-window-ms:100}") long windowMs) {
+        this.messagingTemplate = messagingTemplate;
+        this.windowMs = windowMs;
+    }
+
+    @PostConstruct
+    void start() {
+        flusher.scheduleWithFixedDelay(this::flush, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        flusher.shutdown();
+    }
+
+    /**
+     * Ghi đè state đang chờ của port, các state trung gian trong cùng window bị gộp
+     */
+    public void publish(String comPort, Map<String, Object> state) {
+        pending.put(comPort, state);
+    }
+
+    /**
+     * Bỏ port khỏi snapshot (cuộc gọi đã dọn)
+     */
+    public void remove(String comPort) {
+        pending.remove(comPort);
+        flusher.execute(() -> {
+            synchronized (this) {
+                if (sent.remove(comPort) != null) {
+                    long portSequence = portSeq.merge(comPort, 1L, Long::sum);
+                    seq++;
+                    Map<String, Object> update = update(comPort, portSequence, null);
+                    send(List.of(update));
+                }
+            }
+        });
+    }
+
+    /**
+     * State đầy đủ của mọi port + seq hiện tại, client áp delta có seq lớn hơn
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("seq", seq);
+        Map<String, Object> ports = new HashMap<>();
+        sent.forEach((port, state) -> {
+            Map<String, Object> entry = new HashMap<>(state);
+            entry.put("seq", portSeq.getOrDefault(port, 0L));
+            ports.put(port, entry);
+        });
+        result.put("ports", ports);
+        return result;
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            List<Map<String, Object>> updates = new ArrayList<>();
+            synchronized (this) {
+                for (String port : new ArrayList<>(pending.keySet())) {
+                    Map<String, Object> state = pending.remove(port);
+                    if (state == null) {
+                        continue;
+                    }
+                    Map<String, Object> previous = sent.getOrDefault(port, Map.of());
+                    Map<String, Object> changes = diff(previous, state);
+                    if (changes.isEmpty()) {
+                        continue;
+                    }
+                    sent.put(port, new HashMap<>(state));
+                    updates.add(update(port, portSeq.merge(port, 1L, Long::sum), changes));
+                }
+                if (updates.isEmpty()) {
+                    return;
+                }
+                seq++;
+                send(updates);
+            }
+        } catch (Exception e) {
+            log.error("Error broadcasting call status", e);
+        }
+    }
+
+    private void send(List<Map<String, Object>> updates) {
+        Map<String, Object> batch = new HashMap<>();
+        batch.put("seq", seq);
+        batch.put("updates", updates);
+        messagingTemplate.convertAndSend(TOPIC, batch);
+        for (Map<String, Object> update : updates) {
+            messagingTemplate.convertAndSend(TOPIC + "/" + update.get("comPort"), update);
+        }
+    }
+
+    /**
+     * @param changes null = port bị xoá
+     */
+    private static Map<String, Object> update(String port, long portSequence, Map<String, Object> changes) {
+        Map<String, Object> update = new HashMap<>();
+        update.put("comPort", port);
+        update.put("seq", portSequence);
+        if (changes != null) {
+            update.put("changes", changes);
+        } else {
+            update.put("removed", true);
+        }
+        return update;
+    }
+
+    /**
+     * Field mới / đổi giá trị; field bị bỏ gửi null
+     */
+    static Map<String, Object> diff(Map<String, Object> previous, Map<String, Object> current) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        current.forEach((key, value) -> {
+            if (!previous.containsKey(key) || !Objects.equals(previous.get(key), value)) {
+                changes.put(key, value);
+            }
+        });
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                changes.put(key, null);
+            }
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,232 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.CallRecord;
+import app.simsmartgsm.entity.SmsMessage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lịch sử call_records / sms_messages phân trang theo cursor (keyset), không dùng skip/offset
+ * - Sort (thời gian giảm dần, _id giảm dần), cursor = (thời gian, _id) của item cuối trang trước
+ * - Mỗi trang là 1 index range scan, chi phí không tăng theo số trang đã đi qua
+ * - Tìm số điện thoại theo prefix đã chuẩn hoá (range query trên index, không regex)
+ * - Số nội địa ("0912") được đổi sang dạng quốc tế theo quốc gia của các SIM trên máy ("+84912")
+ * - _id cũ là ObjectId, mới là UUID string: cursor so sánh đúng kiểu (ObjectId xếp trước string khi sort giảm)
+ */
+@Service
+@RequiredArgsConstructor
+public class HistoryQueryService {
+
+    public static final int MAX_LIMIT = 200;
+
+    // BSON type string (sort giảm dần: ObjectId > string)
+    private static final int BSON_STRING = 2;
+
+    // Mã gọi quốc tế theo Sim.countryCode (ISO alpha-2) / Country.countryCode (ISO alpha-3)
+    private static final Map<String, String> CALLING_CODES = Map.ofEntries(
+            Map.entry("VN", "84"), Map.entry("VNM", "84"),
+            Map.entry("JP", "81"), Map.entry("JPN", "81"),
+            Map.entry("KR", "82"), Map.entry("KOR", "82"),
+            Map.entry("CN", "86"), Map.entry("CHN", "86"),
+            Map.entry("TH", "66"), Map.entry("THA", "66"),
+            Map.entry("ID", "62"), Map.entry("IDN", "62"),
+            Map.entry("PH", "63"), Map.entry("PHL", "63"),
+            Map.entry("MY", "60"), Map.entry("MYS", "60"),
+            Map.entry("SG", "65"), Map.entry("SGP", "65"),
+            Map.entry("KH", "855"), Map.entry("KHM", "855"),
+            Map.entry("LA", "856"), Map.entry("LAO", "856"),
+            Map.entry("TW", "886"), Map.entry("TWN", "886"),
+            Map.entry("GB", "44"), Map.entry("GBR", "44"),
+            Map.entry("US", "1"), Map.entry("USA", "1"));
+
+    private final MongoTemplate mongoTemplate;
+    private final RoutingTable routingTable;
+
+    // Dùng khi chưa có SIM nào trên máy (giống default của Sim.countryCode)
+    @Value("${history.default-country:JP}")
+    private String defaultCountry;
+
+    /**
+     * 1 trang kết quả + cursor trang sau (null nếu hết)
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CursorPage<T> {
+        private final List<T> items;
+        private final String nextCursor;
+    }
+
+    public CursorPage<CallRecord> callRecords(String comPort, String deviceId, String simPhonePrefix,
+                                              String cursor, int limit) {
+        List<Criteria> filters = new ArrayList<>();
+        if (comPort != null && !comPort.isBlank()) {
+            filters.add(Criteria.where("comPort").is(comPort));
+        }
+        if (deviceId != null && !deviceId.isBlank()) {
+            filters.add(Criteria.where("deviceId").is(deviceId));
+        }
+        if (simPhonePrefix != null && !normalizePhone(simPhonePrefix).replace("+", "").isEmpty()) {
+            filters.add(phonePrefix("simPhone", simPhonePrefix));
+        }
+        return page(CallRecord.class, filters, "startTime", cursor, limit,
+                CallRecord::getStartTime, CallRecord::getId);
+    }
+
+    public CursorPage<SmsMessage> smsMessages(String toNumberPrefix, String comPort, String type,
+                                              String cursor, int limit) {
+        List<Criteria> filters = new ArrayList<>();
+        if (toNumberPrefix != null && !normalizePhone(toNumberPrefix).replace("+", "").isEmpty()) {
+            filters.add(phonePrefix("toNumber", toNumberPrefix));
+        }
+        if (comPort != null && !comPort.isBlank()) {
+            filters.add(Criteria.where("comPort").is(comPort));
+        }
+        if (type != null && !type.isBlank()) {
+            filters.add(Criteria.where("type").is(type.toUpperCase()));
+        }
+        return page(SmsMessage.class, filters, "timestamp", cursor, limit,
+                SmsMessage::getTimestamp, SmsMessage::getId);
+    }
+
+    private <T> CursorPage<T> page(Class<T> type, List<Criteria> filters, String timeField, String cursor,
+                                   int limit, Function<T, Instant> timeOf, Function<T, String> idOf) {
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        if (cursor != null && !cursor.isBlank()) {
+            filters.add(after(timeField, cursor));
+        }
+        Query query = new Query();
+        if (!filters.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(filters));
+        }
+        query.with(Sort.by(Sort.Direction.DESC, timeField).and(Sort.by(Sort.Direction.DESC, "_id")));
+        // Lấy dư 1 để biết còn trang sau
+        query.limit(size + 1);
+
+        List<T> items = mongoTemplate.find(query, type);
+        String next = null;
+        if (items.size() > size) {
+            items = new ArrayList<>(items.subList(0, size));
+            T last = items.get(size - 1);
+            next = encodeCursor(timeOf.apply(last), idOf.apply(last));
+        }
+        return new CursorPage<>(items, next);
+    }
+
+    /**
+     * Các item đứng sau cursor theo thứ tự (time desc, _id desc); time null xếp cuối
+     */
+    private static Criteria after(String timeField, String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        int sep = decoded.indexOf(':');
+        if (sep < 0) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        String time = decoded.substring(0, sep);
+        String id = decoded.substring(sep + 1);
+        if (time.isEmpty()) {
+            return new Criteria().andOperator(Criteria.where(timeField).is(null), idAfter(id));
+        }
+        Instant instant;
+        try {
+            instant = Instant.ofEpochMilli(Long.parseLong(time));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new Criteria().orOperator(
+                Criteria.where(timeField).lt(instant),
+                new Criteria().andOperator(Criteria.where(timeField).is(instant), idAfter(id)),
+                Criteria.where(timeField).is(null));
+    }
+
+    /**
+     * _id đứng sau cursor khi sort giảm dần: ObjectId (bản ghi cũ) đứng trước mọi _id string
+     */
+    private static Criteria idAfter(String id) {
+        if (ObjectId.isValid(id)) {
+            return new Criteria().orOperator(Criteria.where("_id").lt(new ObjectId(id)),
+                    Criteria.where("_id").type(BSON_STRING));
+        }
+        return new Criteria().andOperator(Criteria.where("_id").type(BSON_STRING), Criteria.where("_id").lt(id));
+    }
+
+    static String encodeCursor(Instant time, String id) {
+        String raw = (time != null ? Long.toString(time.toEpochMilli()) : "") + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * "+84 912-345" -> bắt đầu bằng "+84912345"
+     * "0912" -> "0912" (bản ghi lưu dạng nội địa) hoặc "+&lt;mã quốc gia SIM&gt;912"; "84912" -> "84912" hoặc "+84912"
+     */
+    private Criteria phonePrefix(String field, String input) {
+        String prefix = normalizePhone(input);
+        if (prefix.startsWith("+")) {
+            return range(field, prefix);
+        }
+        List<Criteria> ranges = new ArrayList<>();
+        ranges.add(range(field, prefix));
+        if (prefix.startsWith("0")) {
+            String national = prefix.substring(1);
+            for (String callingCode : callingCodes()) {
+                ranges.add(range(field, "+" + callingCode + national));
+            }
+        } else {
+            ranges.add(range(field, "+" + prefix));
+        }
+        return new Criteria().orOperator(ranges);
+    }
+
+    private Set<String> callingCodes() {
+        Set<String> countries = routingTable.simCountryCodes();
+        if (countries.isEmpty()) {
+            countries = Set.of(defaultCountry);
+        }
+        Set<String> codes = new LinkedHashSet<>();
+        for (String country : countries) {
+            String code = CALLING_CODES.get(country.trim().toUpperCase(Locale.ROOT));
+            if (code != null) {
+                codes.add(code);
+            }
+        }
+        return codes;
+    }
+
+    private static Criteria range(String field, String prefix) {
+        return Criteria.where(field).gte(prefix).lt(prefix + Character.MAX_VALUE);
+    }
+
+    static String normalizePhone(String input) {
+        StringBuilder sb = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (Character.isDigit(c) || (c == '+' && sb.length() == 0)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
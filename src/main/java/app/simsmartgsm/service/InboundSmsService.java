@@ -0,0 +1,518 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.config.DeviceConfig;
+import app.simsmartgsm.entity.SmsMessage;
+import app.simsmartgsm.entity.SmsSession;
+import app.simsmartgsm.modem.AtResponse;
+import app.simsmartgsm.modem.ModemRegistry;
+import app.simsmartgsm.modem.PortScanService.PortInfo;
+import app.simsmartgsm.modem.SerialPortHandler;
+import app.simsmartgsm.modem.SimIdentityCache;
+import app.simsmartgsm.modem.SmsPduDecoder;
+import app.simsmartgsm.modem.SmsPduDecoder.DeliveredSms;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Nhận SMS theo URC, không polling SIM storage
+ * - Mỗi port mở: AT+CMGF=0, AT+CNMI=2,1 -> modem báo +CMTI: "SM",&lt;index&gt;
+ * - +CMTI: AT+CMGR=&lt;index&gt; -> decode PDU -> đưa vào buffer
+ * - +CMT (CNMI=2,2): PDU đi kèm URC, decode luôn
+ * - Tin ghép (UDH) được gom đủ part rồi mới tạo SmsMessage
+ * - Số nhận / quốc gia / session active tra qua RoutingTable (memory), gắn serviceCode / OTP qua ServiceMatcher
+ * - Ghi Mongo theo batch qua WriteBehindBuffer (insertMany), push FE qua /topic/sms
+ * - AT+CMGD chỉ gửi sau khi batch chứa tin đã lưu (Mongo hoặc journal), tin ghép xoá mọi part khi đã lưu
+ * - Mongo lỗi / buffer đầy: ghi journal JSON-lines như CallRecordWriter, job định kỳ replay (upsert theo id)
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class InboundSmsService {
+
+    public static final String TYPE_INBOX = "INBOX";
+    public static final String STATUS_RECEIVED = "RECEIVED";
+
+    private static final long COMMAND_TIMEOUT_MS = 5000;
+    // Part của tin ghép chưa đủ sau thời gian này -> lưu phần đã có
+    private static final long PARTIAL_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final int REPLAY_BATCH = 500;
+
+    private final ModemRegistry modemRegistry;
+    private final SimIdentityCache identityCache;
+    private final DeviceConfig deviceConfig;
+    private final MongoTemplate mongoTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ServiceMatcher serviceMatcher;
+    private final LanguageDetectionService languageDetectionService;
+    private final RetentionService retentionService;
+    private final RoutingTable routingTable;
+    private final ObjectMapper objectMapper;
+
+    @Value("${sms-inbox.journal-dir:data}")
+    private String journalDir;
+
+    private final Map<String, PartialMessage> partials = new ConcurrentHashMap<>();
+    // "port|index" đã đọc từ SIM nhưng chưa lưu xong: CMGL / CMTI đọc lại thì bỏ qua
+    private final Set<String> pendingSlots = ConcurrentHashMap.newKeySet();
+    private final Object journalLock = new Object();
+    // Buffer đầy: ghi trên thread riêng, thread đọc modem không bao giờ đợi
+    private final ExecutorService overflowWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sms-inbox-overflow");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WriteBehindBuffer<Inbound> writeBuffer;
+    private Path journal;
+    private Path replaying;
+    // Mongo đang lỗi -> ghi thẳng journal, không đợi timeout mỗi batch
+    private volatile boolean mongoDown;
+
+    @PostConstruct
+    void init() {
+        journal = Paths.get(journalDir, "sms-inbox.journal");
+        replaying = Paths.get(journalDir, "sms-inbox.journal.replaying");
+        writeBuffer = new WriteBehindBuffer<>("sms-inbox", 10_000, 500, 200, 0, this::flush);
+
+        modemRegistry.addListener(new ModemRegistry.Listener() {
+            @Override
+            public void onOpened(SerialPortHandler handler) {
+                enableInbound(handler);
+            }
+
+            @Override
+            public void onRetired(String portName) {
+                // Part chưa lưu vẫn còn trong SIM, đọc lại bằng AT+CMGL khi port mở lại
+                partials.entrySet().removeIf(entry -> {
+                    if (!entry.getKey().startsWith(portName + "|")) {
+                        return false;
+                    }
+                    entry.getValue().slots().forEach(slot -> pendingSlots.remove(slot.key()));
+                    return true;
+                });
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        writeBuffer.close();
+        overflowWriter.shutdown();
+    }
+
+    /**
+     * Bật báo tin mới và đọc các tin còn trong SIM từ trước
+     */
+    private void enableInbound(SerialPortHandler handler) {
+        String port = handler.getPortName();
+        handler.onUrc("+CMTI:", line -> onNewMessageIndication(handler, line));
+        handler.onSmsDeliver(pdu -> onPdu(port, pdu, -1, handler));
+
+        handler.sendCommandAsync("AT+CMGF=0", COMMAND_TIMEOUT_MS)
+                .thenCompose(response -> handler.sendCommandAsync("AT+CNMI=2,1,0,0,0", COMMAND_TIMEOUT_MS))
+                .thenCompose(response -> {
+                    if (!response.isOk()) {
+                        log.debug("Port {} không hỗ trợ AT+CNMI: {}", port, response.getFinalResult());
+                    }
+                    // Tin nhận lúc app không chạy: AT+CMGL=4 (ALL, PDU mode)
+                    return handler.sendCommandAsync("AT+CMGL=4", COMMAND_TIMEOUT_MS * 2);
+                })
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        log.debug("Inbound SMS setup on {} failed: {}", port, error.getMessage());
+                    } else if (response.isOk()) {
+                        readStoredMessages(handler, response);
+                    }
+                });
+    }
+
+    /**
+     * +CMTI: "SM",3 -> đọc rồi xoá index 3
+     */
+    private void onNewMessageIndication(SerialPortHandler handler, String line) {
+        int comma = line.lastIndexOf(',');
+        if (comma < 0) {
+            return;
+        }
+        int index;
+        try {
+            index = Integer.parseInt(line.substring(comma + 1).trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid +CMTI on {}: {}", handler.getPortName(), line);
+            return;
+        }
+        handler.sendCommandAsync("AT+CMGR=" + index, COMMAND_TIMEOUT_MS).whenComplete((response, error) -> {
+            if (error != null || !response.isOk()) {
+                log.warn("Cannot read SMS {} on {}: {}", index, handler.getPortName(),
+                        error != null ? error.getMessage() : response.getFinalResult());
+                return;
+            }
+            List<String> lines = response.getLines();
+            for (int i = 0; i < lines.size() - 1; i++) {
+                if (lines.get(i).startsWith("+CMGR:")) {
+                    onPdu(handler.getPortName(), lines.get(i + 1), index, handler);
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * +CMGL: &lt;index&gt;,&lt;stat&gt;,,&lt;length&gt; + dòng PDU
+     */
+    private void readStoredMessages(SerialPortHandler handler, AtResponse response) {
+        List<String> lines = response.getLines();
+        int count = 0;
+        for (int i = 0; i < lines.size() - 1; i++) {
+            String line = lines.get(i);
+            if (!line.startsWith("+CMGL:")) {
+                continue;
+            }
+            int comma = line.indexOf(',');
+            try {
+                int index = Integer.parseInt(line.substring(6, comma < 0 ? line.length() : comma).trim());
+                onPdu(handler.getPortName(), lines.get(++i), index, handler);
+                count++;
+            } catch (NumberFormatException e) {
+                log.warn("Invalid +CMGL on {}: {}", handler.getPortName(), line);
+            }
+        }
+        if (count > 0) {
+            log.info("📥 Read {} stored SMS on {}", count, handler.getPortName());
+        }
+    }
+
+    /**
+     * Decode PDU, gom part; tin chỉ bị xoá khỏi SIM sau khi đã lưu (xem flush)
+     * @param index vị trí trong SIM, -1 nếu nhận qua +CMT
+     */
+    private void onPdu(String comPort, String pdu, int index, SerialPortHandler handler) {
+        SimSlot slot = index >= 0 ? new SimSlot(comPort, index) : null;
+        if (slot != null && !pendingSlots.add(slot.key())) {
+            log.debug("SMS {} on {} is already being stored", index, comPort);
+            return;
+        }
+
+        DeliveredSms sms;
+        try {
+            sms = SmsPduDecoder.decode(pdu);
+        } catch (IllegalArgumentException e) {
+            log.warn("Cannot decode SMS PDU on {}: {} ({})", comPort, pdu, e.getMessage());
+            if (slot != null) {
+                pendingSlots.remove(slot.key());
+            }
+            return;
+        }
+
+        if (!sms.isConcatenated()) {
+            accept(comPort, sms.getSender(), sms.getTimestamp(), sms.getText(), slot != null ? List.of(slot) : List.of());
+        } else {
+            String key = comPort + "|" + sms.getSender() + "|" + sms.getReference() + "|" + sms.getTotalParts();
+            PartialMessage partial = partials.computeIfAbsent(key, k -> new PartialMessage(sms));
+            String text = partial.add(sms, slot);
+            if (text != null && partials.remove(key, partial)) {
+                accept(comPort, sms.getSender(), partial.timestamp, text, partial.slots());
+            }
+        }
+    }
+
+    private void accept(String comPort, String sender, Instant timestamp, String text, List<SimSlot> slots) {
+        PortInfo info = identityCache.get(comPort);
+        String simPhone = info != null && !"N/A".equals(info.getPhoneNumber()) ? info.getPhoneNumber() : null;
+        // Tra routing table (memory): Sim / session active của số nhận, SIM không trả số qua AT+CNUM thì lấy theo port
+        RoutingTable.Route route = simPhone != null ? routingTable.lookup(simPhone) : routingTable.lookupByPort(comPort);
+        if (simPhone == null && route != null) {
+            simPhone = route.getPhoneNumber();
+        }
+        String countryCode = route != null && route.getSim() != null ? route.getSim().getCountryCode() : null;
+        SmsMessage message = SmsMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .deviceName(deviceConfig.getName())
+                .comPort(comPort)
+                .simPhone(simPhone)
+                .fromNumber(sender)
+                .toNumber(simPhone != null ? simPhone : comPort)
+                .content(text)
+                .type(TYPE_INBOX)
+                .status(STATUS_RECEIVED)
+                .timestamp(timestamp)
+                .expireAt(retentionService.smsExpiry(Instant.now()))
+                .build();
+        serviceMatcher.classify(message, countryCode);
+
+        log.info("📩 SMS on {} from {}: {}", comPort, sender, text);
+        Inbound inbound = new Inbound(message, slots);
+        if (!writeBuffer.add(inbound)) {
+            overflowWriter.execute(() -> flush(List.of(inbound)));
+        }
+        broadcast(message, route != null ? route.getSession() : null);
+    }
+
+    /**
+     * Lưu batch (Mongo, lỗi thì journal) rồi mới xoá các tin khỏi SIM
+     * Không lưu được ở đâu cả: giữ tin trong SIM, đọc lại khi port mở lại
+     */
+    private void flush(List<Inbound> batch) {
+        List<SmsMessage> messages = new ArrayList<>(batch.size());
+        for (Inbound inbound : batch) {
+            messages.add(inbound.message());
+        }
+        // Detect ngôn ngữ trên thread ghi DB, không chặn thread đọc modem
+        languageDetectionService.tag(messages);
+
+        boolean stored;
+        if (mongoDown) {
+            stored = spill(messages);
+        } else {
+            try {
+                mongoTemplate.insert(messages, SmsMessage.class);
+                stored = true;
+            } catch (Exception e) {
+                mongoDown = true;
+                log.warn("⚠️ Mongo unavailable, spilling {} SMS to {}: {}", messages.size(), journal, e.getMessage());
+                stored = spill(messages);
+            }
+        }
+
+        for (Inbound inbound : batch) {
+            for (SimSlot slot : inbound.slots()) {
+                if (stored) {
+                    deleteFromSim(slot);
+                } else {
+                    pendingSlots.remove(slot.key());
+                }
+            }
+        }
+    }
+
+    private void deleteFromSim(SimSlot slot) {
+        SerialPortHandler handler = modemRegistry.get(slot.comPort());
+        if (handler == null) {
+            // Port đã rút: tin còn trong SIM, lần mở sau đọc lại
+            pendingSlots.remove(slot.key());
+            return;
+        }
+        handler.sendCommandAsync("AT+CMGD=" + slot.index(), COMMAND_TIMEOUT_MS).whenComplete((response, error) -> {
+            pendingSlots.remove(slot.key());
+            if (error != null || !response.isOk()) {
+                log.warn("Cannot delete SMS {} on {}: {}", slot.index(), slot.comPort(),
+                        error != null ? error.getMessage() : response.getFinalResult());
+            }
+        });
+    }
+
+    /**
+     * @return false nếu không ghi được journal (tin được giữ lại trong SIM)
+     */
+    private boolean spill(List<SmsMessage> messages) {
+        synchronized (journalLock) {
+            try {
+                Files.createDirectories(journal.getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (SmsMessage message : messages) {
+                        writer.write(objectMapper.writeValueAsString(message));
+                        writer.newLine();
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                log.error("❌ Cannot write SMS journal {}, keeping {} SMS on SIM: {}",
+                        journal, messages.size(), e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Replay journal: đổi tên file trước (ghi mới vẫn append vào journal), xoá khi đã lưu hết
+     */
+    @Scheduled(fixedDelayString = "${sms-inbox.replay-interval-ms:30000}")
+    public void replayJournal() {
+        try {
+            synchronized (journalLock) {
+                if (!Files.exists(replaying)) {
+                    if (!Files.exists(journal) || Files.size(journal) == 0) {
+                        mongoDown = false;
+                        return;
+                    }
+                    Files.move(journal, replaying, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+
+            List<String> lines = Files.readAllLines(replaying, StandardCharsets.UTF_8);
+            List<SmsMessage> batch = new ArrayList<>(REPLAY_BATCH);
+            int replayed = 0;
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(objectMapper.readValue(line, SmsMessage.class));
+                } catch (IOException e) {
+                    log.warn("Skipping corrupt SMS journal line: {}", e.getMessage());
+                    continue;
+                }
+                if (batch.size() == REPLAY_BATCH) {
+                    bulkUpsert(batch);
+                    replayed += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                bulkUpsert(batch);
+                replayed += batch.size();
+            }
+            Files.delete(replaying);
+            mongoDown = false;
+            log.info("✅ Replayed {} SMS from journal", replayed);
+        } catch (Exception e) {
+            // Giữ file .replaying, lần sau replay lại (upsert nên không trùng)
+            log.debug("SMS journal replay deferred: {}", e.getMessage());
+        }
+    }
+
+    private void bulkUpsert(List<SmsMessage> batch) {
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SmsMessage.class);
+        for (SmsMessage message : batch) {
+            ops.replaceOne(Query.query(Criteria.where("_id").is(message.getId())), message,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        ops.execute();
+    }
+
+    private void broadcast(SmsMessage message, SmsSession session) {
+        try {
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("id", message.getId());
+            payload.put("comPort", message.getComPort());
+            payload.put("simPhone", message.getSimPhone());
+            payload.put("fromNumber", message.getFromNumber());
+            payload.put("content", message.getContent());
+            payload.put("serviceCode", message.getServiceCode());
+            payload.put("otpCode", message.getOtpCode());
+            if (session != null) {
+                payload.put("sessionId", session.getId());
+                payload.put("campaignId", session.getCampaignId());
+            }
+            payload.put("timestamp", message.getTimestamp());
+            messagingTemplate.convertAndSend("/topic/sms", payload);
+        } catch (Exception e) {
+            log.error("Error broadcasting SMS", e);
+        }
+    }
+
+    /**
+     * Lưu phần đã có của tin ghép quá hạn (part cuối bị mất)
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void flushExpiredPartials() {
+        long now = System.currentTimeMillis();
+        partials.forEach((key, partial) -> {
+            if (now - partial.createdAt > PARTIAL_TIMEOUT_MS && partials.remove(key, partial)) {
+                String comPort = key.substring(0, key.indexOf('|'));
+                log.warn("⚠️ Incomplete SMS on {} from {} ({} part(s) missing)",
+                        comPort, partial.sender, partial.missing());
+                accept(comPort, partial.sender, partial.timestamp, partial.join(), partial.slots());
+            }
+        });
+    }
+
+    /**
+     * Vị trí tin trong SIM của 1 port
+     */
+    private record SimSlot(String comPort, int index) {
+        String key() {
+            return comPort + "|" + index;
+        }
+    }
+
+    /**
+     * 1 SmsMessage trong buffer + các vị trí trong SIM cần xoá sau khi lưu
+     */
+    private record Inbound(SmsMessage message, List<SimSlot> slots) {
+    }
+
+    /**
+     * Các part đã nhận của 1 tin ghép
+     */
+    private static final class PartialMessage {
+        private final String sender;
+        private final Instant timestamp;
+        private final String[] parts;
+        private final List<SimSlot> slots = new ArrayList<>();
+        private final long createdAt = System.currentTimeMillis();
+        private int received;
+
+        PartialMessage(DeliveredSms first) {
+            this.sender = first.getSender();
+            this.timestamp = first.getTimestamp();
+            this.parts = new String[first.getTotalParts()];
+        }
+
+        /**
+         * @return nội dung đầy đủ khi đã nhận đủ part, null nếu chưa
+         */
+        synchronized String add(DeliveredSms sms, SimSlot simSlot) {
+            // Part trùng vẫn nằm trong SIM: xoá cùng tin đã ghép
+            if (simSlot != null) {
+                slots.add(simSlot);
+            }
+            int slot = sms.getPartNumber() - 1;
+            if (slot < 0 || slot >= parts.length || parts[slot] != null) {
+                return null;
+            }
+            parts[slot] = sms.getText();
+            received++;
+            return received == parts.length ? join() : null;
+        }
+
+        synchronized List<SimSlot> slots() {
+            return List.copyOf(slots);
+        }
+
+        synchronized int missing() {
+            return parts.length - received;
+        }
+
+        synchronized String join() {
+            StringBuilder sb = new StringBuilder();
+            for (String part : parts) {
+                if (part != null) {
+                    sb.append(part);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
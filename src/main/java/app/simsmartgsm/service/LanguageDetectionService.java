@@ -0,0 +1,193 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.SmsMessage;
+import com.github.pemistahl.lingua.api.IsoCode639_1;
+import com.github.pemistahl.lingua.api.Language;
+import com.github.pemistahl.lingua.api.LanguageDetector;
+import com.github.pemistahl.lingua.api.LanguageDetectorBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Nhận diện ngôn ngữ nội dung SMS bằng Lingua
+ * - Chỉ build detector cho các ngôn ngữ cấu hình (mặc định vi,ja,en,zh), không load toàn bộ model
+ * - Build lazy ở lần detect đầu tiên (thread ghi DB), không nằm trên đường startup
+ * - Cache LRU theo nội dung đã chuẩn hoá: tin template chỉ khác mã số dùng chung 1 kết quả
+ * - Lỗi build / detect (thiếu RAM load model, cấu hình sai...): tắt detector, language để null, không chặn insert
+ */
+@Service
+@Slf4j
+public class LanguageDetectionService {
+
+    private static final int MAX_KEY_LENGTH = 200;
+
+    private final boolean enabled;
+    private final List<IsoCode639_1> languages;
+    private final boolean lowAccuracy;
+    private final Map<String, String> cache;
+
+    private volatile LanguageDetector detector;
+    private volatile boolean unavailable;
+
+    public LanguageDetectionService(@Value("${language-detection.enabled:true}") boolean enabled,
+                                    @Value("${language-detection.languages:vi,ja,en,zh}") List<String> isoCodes,
+                                    @Value("${language-detection.low-accuracy:false}") boolean lowAccuracy,
+                                    @Value("${language-detection.cache-size:5000}") int cacheSize) {
+        this.enabled = enabled;
+        this.lowAccuracy = lowAccuracy;
+        this.languages = new ArrayList<>();
+        for (String code : isoCodes) {
+            try {
+                languages.add(IsoCode639_1.valueOf(code.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                log.warn("⚠️ Unknown language code '{}' ignored", code);
+            }
+        }
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        LanguageDetector current = detector;
+        if (current != null) {
+            current.unloadLanguageModels();
+        }
+    }
+
+    /**
+     * @return mã ISO 639-1 (vd: "vi"), null nếu không xác định được / tắt
+     */
+    public String detect(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        LanguageDetector current = detector();
+        if (current == null) {
+            return null;
+        }
+        String key = cacheKey(text);
+        synchronized (cache) {
+            String cached = cache.get(key);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            }
+        }
+        Language language;
+        try {
+            language = current.detectLanguageOf(text);
+        } catch (Exception | Error e) {
+            markUnavailable(e);
+            return null;
+        }
+        String code = language == Language.UNKNOWN ? "" : language.getIsoCode639_1().name().toLowerCase(Locale.ROOT);
+        synchronized (cache) {
+            cache.put(key, code);
+        }
+        return code.isEmpty() ? null : code;
+    }
+
+    /**
+     * Gắn language cho cả batch (gọi trước khi insert), không bao giờ ném lỗi
+     */
+    public void tag(List<SmsMessage> messages) {
+        for (SmsMessage message : messages) {
+            if (message.getLanguage() == null) {
+                try {
+                    message.setLanguage(detect(message.getContent()));
+                } catch (Exception e) {
+                    log.warn("Language detection failed for SMS {}: {}", message.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private void markUnavailable(Throwable e) {
+        unavailable = true;
+        detector = null;
+        log.error("❌ Language detection disabled: {}", e.toString());
+    }
+
+    private LanguageDetector detector() {
+        LanguageDetector current = detector;
+        if (unavailable || !enabled) {
+            return null;
+        }
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (detector == null && !unavailable) {
+                if (languages.size() < 2) {
+                    // Lingua cần tối thiểu 2 ngôn ngữ
+                    log.warn("⚠️ Language detection disabled: need at least 2 languages, got {}", languages);
+                    unavailable = true;
+                    return null;
+                }
+                long start = System.currentTimeMillis();
+                try {
+                    LanguageDetectorBuilder builder = LanguageDetectorBuilder
+                            .fromIsoCodes639_1(languages.toArray(new IsoCode639_1[0]));
+                    if (lowAccuracy) {
+                        builder = builder.withLowAccuracyMode();
+                    }
+                    detector = builder.build();
+                } catch (Exception | Error e) {
+                    markUnavailable(e);
+                    return null;
+                }
+                log.info("🌐 Language detector ready for {} (low accuracy: {}) in {} ms",
+                        languages, lowAccuracy, System.currentTimeMillis() - start);
+            }
+            return detector;
+        }
+    }
+
+    /**
+     * Bỏ khác biệt về mã số / khoảng trắng để tin cùng template trùng key
+     */
+    static String cacheKey(String text) {
+        StringBuilder sb = new StringBuilder(Math.min(text.length(), MAX_KEY_LENGTH));
+        boolean inDigits = false;
+        boolean inSpace = false;
+        for (int i = 0; i < text.length() && sb.length() < MAX_KEY_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (Character.isDigit(c)) {
+                if (!inDigits) {
+                    sb.append('#');
+                }
+                inDigits = true;
+                inSpace = false;
+            } else if (Character.isWhitespace(c)) {
+                if (!inSpace) {
+                    sb.append(' ');
+                }
+                inSpace = true;
+                inDigits = false;
+            } else {
+                sb.append(Character.toLowerCase(c));
+                inDigits = false;
+                inSpace = false;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -2,12 +2,13 @@ package app.simsmartgsm.service;
 
 import app.simsmartgsm.config.DeviceConfig;
 import app.simsmartgsm.entity.CallRecord;
+import app.simsmartgsm.modem.CallEvent;
+import app.simsmartgsm.modem.ModemRegistry;
 import app.simsmartgsm.modem.SerialPortHandler;
-import app.simsmartgsm.repository.CallRecordRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -25,15 +26,22 @@ import java.util.concurrent.*;
 public class ModemCallService {
 
     private final ModemRecordingService recordingService;
-    private final CallRecordRepository callRecordRepository;
+    private final CallRecordWriter callRecordWriter;
     private final DeviceConfig deviceConfig;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final CallStatusBroadcaster callStatusBroadcaster;
+    private final ModemRegistry modemRegistry;
 
-    private final ConcurrentHashMap<String, SerialPortHandler> activePorts = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, CallSession> activeCalls = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, ScheduledFuture<?>> pollingTasks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CallPoller> pollingTasks = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(10);
 
+    // Poll AT+CLCC: nhanh khi modem không có URC, chậm khi chỉ là fallback
+    private static final long POLL_INTERVAL_MS = 500;
+    private static final long FALLBACK_POLL_INTERVAL_MS = 5000;
+
+    // AT+QFDWL chỉ trả OK sau khi truyền xong file (115200 baud ~ 11KB/s)
+    private static final long DOWNLOAD_TIMEOUT_MS = 120_000;
+
     /**
      * Call Session để track trạng thái cuộc gọi
      */
@@ -51,6 +59,8 @@ public class ModemCallService {
         private String recordingFileName;
         private int maxDurationSeconds;
         private ScheduledFuture<?> hangupTask;
+        // Giữ port trong ModemRegistry tới khi download recording xong
+        private ModemRegistry.Lease lease;
 
         public int getDurationSeconds() {
             if (connectTime == null)
@@ -83,6 +93,28 @@ public class ModemCallService {
         FAILED // Lỗi
     }
 
+    /**
+     * Đăng ký URC call event cho mọi port do ModemRegistry mở
+     */
+    @PostConstruct
+    void registerPortListener() {
+        modemRegistry.addListener(new ModemRegistry.Listener() {
+            @Override
+            public void onOpened(SerialPortHandler handler) {
+                String port = handler.getPortName();
+                // URC cho call state (WAV download đi qua AT+QFDWL binary transfer)
+                handler.onCallEvent(event -> handleCallEvent(port, event));
+                // Bật URC trạng thái cuộc gọi, polling chỉ còn là fallback
+                handler.enableCallReporting();
+            }
+
+            @Override
+            public void onRetired(String portName) {
+                cleanup(portName);
+            }
+        });
+    }
+
     /**
      * Bắt đầu cuộc gọi - TỰ ĐỘNG XỬ LÝ TOÀN BỘ FLOW
      * Gọi đi → Ghi âm → Auto hangup → Download recording
@@ -96,18 +128,17 @@ public class ModemCallService {
      */
     public boolean startCall(String comPort, String phoneNumber, boolean enableRecording, int maxDurationSeconds) {
         try {
-            // Lấy hoặc tạo serial port handler
-            SerialPortHandler portHandler = getOrCreatePort(comPort);
-
-            if (!portHandler.isOpen()) {
-                if (!portHandler.open()) {
-                    log.error("Cannot open port: {}", comPort);
-                    return false;
-                }
+            // Lấy handler dùng chung từ ModemRegistry, giữ lease suốt cuộc gọi
+            ModemRegistry.Lease lease = modemRegistry.lease(comPort, "call");
+            if (lease == null) {
+                log.error("Cannot open port: {}", comPort);
+                return false;
             }
+            SerialPortHandler portHandler = lease.getHandler();
 
             // Tạo call session
             CallSession session = new CallSession();
+            session.setLease(lease);
             session.setComPort(comPort);
             session.setTargetNumber(phoneNumber);
             session.setCallState(CallState.DIALING);
@@ -117,14 +148,17 @@ public class ModemCallService {
 
             // Nếu enable recording, bắt đầu tracking
             if (enableRecording) {
-                String recordFileName = "call_" + System.currentTimeMillis();
+                String recordFileName = recordingFileName(comPort);
                 session.setRecordingFileName(recordFileName);
                 session.setRecordingState(RecordingState.RECORDING);
                 recordingService.startWavDownload(comPort, recordFileName);
                 log.info("🎙️ Recording enabled for call. File: {}", recordFileName);
             }
 
-            activeCalls.put(comPort, session);
+            CallSession previous = activeCalls.put(comPort, session);
+            if (previous != null) {
+                releaseLease(previous);
+            }
 
             // Gửi AT command để gọi điện
             String dialCommand = "ATD" + phoneNumber + ";";
@@ -133,7 +167,7 @@ public class ModemCallService {
             log.info("📞 Making call from {} to {} (recording: {}, max duration: {}s)",
                     comPort, phoneNumber, enableRecording, maxDurationSeconds);
 
-            // Bắt đầu polling call state
+            // Polling AT+CLCC (chậm nếu modem tự báo trạng thái qua URC)
             startCallStatePolling(comPort);
 
             return true;
@@ -149,7 +183,7 @@ public class ModemCallService {
      */
     public boolean answerCall(String comPort) {
         try {
-            SerialPortHandler handler = activePorts.get(comPort);
+            SerialPortHandler handler = modemRegistry.get(comPort);
             if (handler == null || !handler.isOpen()) {
                 return false;
             }
@@ -176,7 +210,7 @@ public class ModemCallService {
      */
     public boolean endCall(String comPort) {
         try {
-            SerialPortHandler handler = activePorts.get(comPort);
+            SerialPortHandler handler = modemRegistry.get(comPort);
             if (handler != null && handler.isOpen()) {
                 handler.sendCommand("ATH");
                 log.info("📴 Hung up call on port: {}", comPort);
@@ -201,7 +235,7 @@ public class ModemCallService {
                 return false;
             }
 
-            String recordFileName = "call_" + System.currentTimeMillis();
+            String recordFileName = recordingFileName(comPort);
             session.setRecordingFileName(recordFileName);
             session.setRecordingState(RecordingState.RECORDING);
             recordingService.startWavDownload(comPort, recordFileName);
@@ -286,60 +320,58 @@ public class ModemCallService {
     // ========== PRIVATE METHODS ==========
 
     /**
-     * Lấy hoặc tạo port handler
+     * Xử lý call event do modem tự báo (RING, +CLCC, ^DSCI, NO CARRIER...)
      */
-    private SerialPortHandler getOrCreatePort(String comPort) {
-        return activePorts.computeIfAbsent(comPort, port -> {
-            SerialPortHandler handler = new SerialPortHandler(port);
-
-            // Đăng ký callback để xử lý data
-            handler.onDataReceived((textData, rawBytes) -> {
-                handleSerialData(port, textData, rawBytes);
-            });
+    private void handleCallEvent(String comPort, CallEvent event) {
+        CallSession session = activeCalls.get(comPort);
+        if (session == null)
+            return;
 
-            return handler;
-        });
+        switch (event.getType()) {
+            case RING -> updateCallState(session, CallState.INCOMING);
+            case STATUS -> applyCallState(comPort, session, mapClccStat(event.getStat()));
+            case DISCONNECTED -> applyCallState(comPort, session, CallState.ENDED);
+            default -> {
+            }
+        }
     }
 
     /**
-     * Xử lý data từ serial port
+     * Áp dụng state mới vào call session (dùng chung cho URC và polling)
      */
-    private void handleSerialData(String comPort, String textData, byte[] rawBytes) {
-        log.debug("📥 Data from {}: {}", comPort, textData.trim());
-
-        // Chuyển cho ModemRecordingService xử lý WAV download
-        recordingService.handleSerialData(comPort, rawBytes, textData);
-
-        CallSession session = activeCalls.get(comPort);
-        if (session == null)
+    private void applyCallState(String comPort, CallSession session, CallState newState) {
+        if (newState == CallState.ENDED) {
+            if (session.getCallState() != CallState.ENDED) {
+                updateCallState(session, CallState.ENDED);
+                completeCall(comPort, "COMPLETED");
+            }
             return;
+        }
+
+        updateCallState(session, newState);
 
-        // Parse call states từ modem responses (passive listening - backup)
-        if (textData.contains("RING")) {
-            updateCallState(session, CallState.INCOMING);
-        } else if (textData.contains("NO CARRIER") || textData.contains("BUSY") || textData.contains("NO ANSWER")) {
-            updateCallState(session, CallState.ENDED);
-            completeCall(comPort, "COMPLETED");
+        // Nếu connected lần đầu, schedule auto hangup
+        if (newState == CallState.ACTIVE && session.getConnectTime() == null) {
+            session.setConnectTime(Instant.now());
+            scheduleAutoHangup(session);
         }
     }
 
     /**
      * Bắt đầu polling call state bằng AT+CLCC
+     * Poll nhanh khi modem không hỗ trợ URC, chậm (fallback) khi đã bật AT+CLCC=1 / AT^DSCI=1
      */
     private void startCallStatePolling(String comPort) {
         // Cancel existing polling task nếu có
         stopCallStatePolling(comPort);
 
-        // Poll mỗi 500ms
-        ScheduledFuture<?> pollingTask = scheduler.scheduleAtFixedRate(() -> {
-            try {
-                pollCallState(comPort);
-            } catch (Exception e) {
-                log.error("Error polling call state for {}", comPort, e);
-            }
-        }, 0, 500, TimeUnit.MILLISECONDS);
-
-        pollingTasks.put(comPort, pollingTask);
+        CallSession session = activeCalls.get(comPort);
+        if (session == null) {
+            return;
+        }
+        CallPoller poller = new CallPoller(comPort, session);
+        pollingTasks.put(comPort, poller);
+        poller.schedule(0);
         log.debug("Started call state polling for {}", comPort);
     }
 
@@ -347,58 +379,94 @@ public class ModemCallService {
      * Dừng polling call state
      */
     private void stopCallStatePolling(String comPort) {
-        ScheduledFuture<?> task = pollingTasks.remove(comPort);
-        if (task != null) {
-            task.cancel(false);
+        CallPoller poller = pollingTasks.remove(comPort);
+        if (poller != null) {
+            poller.cancel();
             log.debug("Stopped call state polling for {}", comPort);
         }
     }
 
     /**
-     * Poll call state bằng AT+CLCC
+     * 1 chuỗi poll AT+CLCC gắn với 1 cuộc gọi
+     * - Chỉ áp kết quả / schedule lần kế khi vẫn là poller hiện tại của port và session còn active,
+     *   CLCC cũ đang bay không thể chen vào cuộc gọi mới trên cùng port
      */
-    private void pollCallState(String comPort) {
-        SerialPortHandler handler = activePorts.get(comPort);
-        CallSession session = activeCalls.get(comPort);
+    private final class CallPoller implements Runnable {
+        private final String comPort;
+        private final CallSession session;
+        private volatile ScheduledFuture<?> task;
+
+        private CallPoller(String comPort, CallSession session) {
+            this.comPort = comPort;
+            this.session = session;
+        }
 
-        if (handler == null || session == null || !handler.isOpen()) {
-            stopCallStatePolling(comPort);
-            return;
+        private boolean isCurrent() {
+            return pollingTasks.get(comPort) == this && activeCalls.get(comPort) == session;
         }
 
-        // Query call status
-        String response = handler.sendCommandAndWaitResponse("AT+CLCC", 1000);
+        private void schedule(long delayMs) {
+            task = scheduler.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+        }
 
-        if (response.isEmpty()) {
-            return;
+        private void cancel() {
+            ScheduledFuture<?> current = task;
+            if (current != null) {
+                current.cancel(false);
+            }
         }
 
-        log.debug("AT+CLCC response for {}: {}", comPort, response.trim());
+        @Override
+        public void run() {
+            if (!isCurrent()) {
+                return;
+            }
+            pollCallState(this);
+        }
+    }
 
-        // Parse response
-        CallState newState = parseClccResponse(response);
+    /**
+     * Poll call state bằng AT+CLCC (async, không block scheduler thread)
+     */
+    private void pollCallState(CallPoller poller) {
+        String comPort = poller.comPort;
+        SerialPortHandler handler = modemRegistry.get(comPort);
 
-        if (newState == null) {
-            // Không có cuộc gọi active -> call đã kết thúc
-            if (session.getCallState() != CallState.ENDED) {
-                updateCallState(session, CallState.ENDED);
-                completeCall(comPort, "COMPLETED");
+        if (handler == null || !handler.isOpen()) {
+            pollingTasks.remove(comPort, poller);
+            return;
+        }
+
+        // Query call status
+        handler.sendCommandAsync("AT+CLCC", 1000).whenComplete((response, error) -> {
+            // Cuộc gọi đã kết thúc / port đã có poller mới: bỏ kết quả cũ, dừng chuỗi này
+            if (!poller.isCurrent()) {
+                return;
             }
-        } else {
-            updateCallState(session, newState);
+            try {
+                if (error == null) {
+                    String text = response.getText();
+                    log.debug("AT+CLCC response for {}: {}", comPort, text.trim());
 
-            // Nếu connected lần đầu, schedule auto hangup
-            if (newState == CallState.ACTIVE && session.getConnectTime() == null) {
-                session.setConnectTime(Instant.now());
-                scheduleAutoHangup(session);
+                    // Không có +CLCC -> call đã kết thúc
+                    CallState newState = parseClccResponse(text);
+                    applyCallState(comPort, poller.session, newState != null ? newState : CallState.ENDED);
+                }
+            } catch (Exception e) {
+                log.error("Error polling call state for {}", comPort, e);
             }
-        }
+
+            // Chỉ schedule lần kế tiếp nếu polling chưa bị dừng
+            if (poller.isCurrent()) {
+                poller.schedule(handler.isCallReportingEnabled() ? FALLBACK_POLL_INTERVAL_MS : POLL_INTERVAL_MS);
+            }
+        });
     }
 
     /**
      * Parse AT+CLCC response để lấy call state
      */
-    private CallState parseClccResponse(String response) {
+    static CallState parseClccResponse(String response) {
         if (!response.contains("+CLCC:")) {
             return null;
         }
@@ -409,16 +477,7 @@ public class ModemCallService {
                 if (line.contains("+CLCC:")) {
                     String[] parts = line.substring(line.indexOf("+CLCC:") + 6).trim().split(",");
                     if (parts.length >= 3) {
-                        int stat = Integer.parseInt(parts[2].trim());
-
-                        // Map stat to CallState
-                        return switch (stat) {
-                            case 0 -> CallState.ACTIVE; // active
-                            case 2 -> CallState.DIALING; // dialing (MO call)
-                            case 3 -> CallState.RINGING; // alerting (remote party ringing)
-                            case 4 -> CallState.INCOMING; // incoming call
-                            default -> CallState.DIALING;
-                        };
+                        return mapClccStat(Integer.parseInt(parts[2].trim()));
                     }
                 }
             }
@@ -429,6 +488,20 @@ public class ModemCallService {
         return null;
     }
 
+    /**
+     * Map stat của +CLCC / ^DSCI sang CallState
+     */
+    private static CallState mapClccStat(int stat) {
+        return switch (stat) {
+            case CallEvent.STAT_ACTIVE -> CallState.ACTIVE; // active
+            case CallEvent.STAT_DIALING -> CallState.DIALING; // dialing (MO call)
+            case CallEvent.STAT_ALERTING -> CallState.RINGING; // alerting (remote party ringing)
+            case CallEvent.STAT_INCOMING, CallEvent.STAT_WAITING -> CallState.INCOMING; // incoming call
+            case CallEvent.STAT_RELEASED -> CallState.ENDED; // released (^DSCI)
+            default -> CallState.DIALING;
+        };
+    }
+
     /**
      * Update call state và log + broadcast to FE
      */
@@ -441,32 +514,32 @@ public class ModemCallService {
 
         log.info("📞 Call state: {} → {} on port {}", oldState, newState, session.getComPort());
 
+        CallStateEvent event = new CallStateEvent();
+        if (event.shouldCommit()) {
+            event.port = session.getComPort();
+            event.from = String.valueOf(oldState);
+            event.to = newState.name();
+            event.commit();
+        }
+
         // Broadcast status to FE via WebSocket
         broadcastCallStatus(session);
     }
 
     /**
-     * Broadcast call status to frontend via WebSocket
+     * Broadcast call status to frontend via WebSocket (gom + delta qua CallStatusBroadcaster, không block)
      */
     private void broadcastCallStatus(CallSession session) {
-        try {
-            Map<String, Object> status = new HashMap<>();
-            status.put("comPort", session.getComPort());
-            status.put("callState", session.getCallState());
-            status.put("recordingState", session.getRecordingState());
-            status.put("targetNumber", session.getTargetNumber());
-            status.put("durationSeconds", session.getDurationSeconds());
-            status.put("startTime", session.getStartTime());
-            status.put("connectTime", session.getConnectTime());
-            status.put("recordingFileName", session.getRecordingFileName());
-
-            // Send to WebSocket topic
-            messagingTemplate.convertAndSend("/topic/call-status", status);
-
-            log.debug("📡 Broadcasted call status: {} - {}", session.getComPort(), session.getCallState());
-        } catch (Exception e) {
-            log.error("Error broadcasting call status", e);
-        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("comPort", session.getComPort());
+        status.put("callState", session.getCallState());
+        status.put("recordingState", session.getRecordingState());
+        status.put("targetNumber", session.getTargetNumber());
+        status.put("durationSeconds", session.getDurationSeconds());
+        status.put("startTime", session.getStartTime());
+        status.put("connectTime", session.getConnectTime());
+        status.put("recordingFileName", session.getRecordingFileName());
+        callStatusBroadcaster.publish(session.getComPort(), status);
     }
 
     /**
@@ -510,19 +583,29 @@ public class ModemCallService {
         // Stop polling
         stopCallStatePolling(comPort);
 
-        // Nếu có recording, tự động download từ modem
+        // Nếu có recording, tự động download từ modem (lease trả lại khi download xong)
         if (session.getRecordingFileName() != null && session.getRecordingState() == RecordingState.RECORDING) {
             session.setRecordingState(RecordingState.DOWNLOADING);
             broadcastCallStatus(session);
-            downloadRecordingFromModem(comPort, session.getRecordingFileName());
+            downloadRecordingFromModem(comPort, session.getRecordingFileName())
+                    .whenComplete((ignored, error) -> releaseLease(session));
+        } else {
+            releaseLease(session);
         }
 
         // Save to database
         saveCallRecord(session, endReason);
     }
 
+    private void releaseLease(CallSession session) {
+        ModemRegistry.Lease lease = session.getLease();
+        if (lease != null) {
+            lease.close();
+        }
+    }
+
     /**
-     * Save call record to database
+     * Đưa call record vào write-behind buffer, không đợi Mongo
      */
     private void saveCallRecord(CallSession session, String endReason) {
         try {
@@ -546,8 +629,8 @@ public class ModemCallService {
                         recordingService.getRecordingPath(session.getRecordingFileName()));
             }
 
-            callRecordRepository.save(record);
-            log.info("💾 Saved call record: {} → {} ({}s)",
+            callRecordWriter.submit(record);
+            log.info("💾 Queued call record: {} → {} ({}s)",
                     session.getSimPhone(), session.getTargetNumber(), session.getDurationSeconds());
         } catch (Exception e) {
             log.error("Error saving call record", e);
@@ -557,55 +640,79 @@ public class ModemCallService {
     /**
      * Tự động download recording từ modem storage
      */
-    private void downloadRecordingFromModem(String comPort, String fileName) {
+    private CompletableFuture<Void> downloadRecordingFromModem(String comPort, String fileName) {
+        // Hoàn thành khi download kết thúc (thành công hoặc lỗi)
+        CompletableFuture<Void> done = new CompletableFuture<>();
         try {
-            SerialPortHandler handler = activePorts.get(comPort);
+            SerialPortHandler handler = modemRegistry.get(comPort);
             if (handler == null || !handler.isOpen()) {
                 log.warn("Cannot download recording: port {} not available", comPort);
-                return;
+                done.complete(null);
+                return done;
             }
 
             log.info("🎙️ Downloading recording from modem: {}", fileName);
 
-            // List files trong modem storage
-            String listResponse = handler.sendCommandAndWaitResponse("AT+QFLST=\"*\"", 2000);
-            log.debug("Modem file list: {}", listResponse);
+            // List files trong modem storage (async - có thể đang chạy trên thread đọc port)
+            handler.sendCommandAsync("AT+QFLST=\"*\"", 2000).whenComplete((response, error) -> {
+                if (error != null) {
+                    log.error("Error listing recording files on {}: {}", comPort, error.getMessage());
+                    markRecordingState(comPort, RecordingState.FAILED);
+                    done.complete(null);
+                    return;
+                }
 
-            // Tìm file recording mới nhất
-            String recordingFileOnModem = findLatestRecordingFile(listResponse);
+                String listResponse = response.getText();
+                log.debug("Modem file list: {}", listResponse);
 
-            if (recordingFileOnModem == null) {
-                log.warn("No recording file found on modem for {}", fileName);
+                // Tìm file recording mới nhất
+                String recordingFileOnModem = findLatestRecordingFile(listResponse);
 
-                CallSession session = activeCalls.get(comPort);
-                if (session != null) {
-                    session.setRecordingState(RecordingState.COMPLETED);
+                if (recordingFileOnModem == null) {
+                    log.warn("No recording file found on modem for {}", fileName);
+                    markRecordingState(comPort, RecordingState.COMPLETED);
+                    done.complete(null);
+                    return;
                 }
-                return;
-            }
 
-            log.info("Found recording file on modem: {}", recordingFileOnModem);
+                long fileSize = findRecordingFileSize(listResponse, recordingFileOnModem);
+                log.info("Found recording file on modem: {} ({} bytes)", recordingFileOnModem, fileSize);
 
-            // Download file từ modem
-            String downloadCommand = "AT+QFDWL=\"" + recordingFileOnModem + "\"";
-            handler.sendCommand(downloadCommand);
+                // Download file từ modem, bytes sau CONNECT đi thẳng vào parser
+                String downloadCommand = "AT+QFDWL=\"" + recordingFileOnModem + "\"";
+                handler.sendBinaryCommandAsync(downloadCommand,
+                        recordingService.beginTransfer(comPort, fileSize), DOWNLOAD_TIMEOUT_MS)
+                        .whenComplete((result, downloadError) -> done.complete(null));
 
-            log.info("✅ Recording download initiated for {}", fileName);
+                log.info("✅ Recording download initiated for {}", fileName);
+            });
 
         } catch (Exception e) {
             log.error("Error downloading recording from modem", e);
+            markRecordingState(comPort, RecordingState.FAILED);
+            done.complete(null);
+        }
+        return done;
+    }
 
-            CallSession session = activeCalls.get(comPort);
-            if (session != null) {
-                session.setRecordingState(RecordingState.FAILED);
-            }
+    /**
+     * Tên file ghi âm theo port: nhiều cuộc gọi bắt đầu cùng 1 ms không ghi đè file của nhau
+     */
+    private static String recordingFileName(String comPort) {
+        return "call_" + comPort + "_" + System.currentTimeMillis();
+    }
+
+    private void markRecordingState(String comPort, RecordingState state) {
+        CallSession session = activeCalls.get(comPort);
+        if (session != null) {
+            session.setRecordingState(state);
         }
     }
 
     /**
      * Tìm file recording mới nhất từ danh sách files trên modem
      */
-    private String findLatestRecordingFile(String fileListResponse) {
+    static String findLatestRecordingFile(String fileListResponse) {
         String[] lines = fileListResponse.split("\n");
         String latestFile = null;
 
@@ -629,6 +736,28 @@ public class ModemCallService {
         return latestFile;
     }
 
+    /**
+     * Lấy size của file trong AT+QFLST response: +QFLST: "RAM:record.wav",12345
+     * Trả về -1 nếu không có
+     */
+    static long findRecordingFileSize(String fileListResponse, String fileName) {
+        String marker = "\"" + fileName + "\",";
+        int index = fileListResponse.lastIndexOf(marker);
+        if (index < 0) {
+            return -1;
+        }
+        int start = index + marker.length();
+        int end = start;
+        while (end < fileListResponse.length() && Character.isDigit(fileListResponse.charAt(end))) {
+            end++;
+        }
+        try {
+            return end > start ? Long.parseLong(fileListResponse.substring(start, end)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * Cleanup port
      */
@@ -636,24 +765,20 @@ public class ModemCallService {
         completeCall(comPort, "CLEANUP");
         stopCallStatePolling(comPort);
 
-        SerialPortHandler handler = activePorts.remove(comPort);
-        if (handler != null) {
-            handler.close();
-            recordingService.cleanupPort(comPort);
-            log.info("🧹 Cleaned up port: {}", comPort);
-        }
+        // Port do ModemRegistry sở hữu, chỉ dọn state của call service
+        recordingService.cleanupPort(comPort);
+        callStatusBroadcaster.remove(comPort);
+        log.info("🧹 Cleaned up port: {}", comPort);
     }
 
     /**
      * Cleanup all ports
      */
     public void cleanupAll() {
-        activePorts.forEach((port, handler) -> {
+        activeCalls.keySet().forEach(port -> {
             completeCall(port, "CLEANUP");
-            handler.close();
             recordingService.cleanupPort(port);
         });
-        activePorts.clear();
         scheduler.shutdownNow();
         log.info("🧹 Cleaned up all ports");
     }
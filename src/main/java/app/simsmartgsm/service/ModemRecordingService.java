@@ -1,11 +1,12 @@
 package app.simsmartgsm.service;
 
+import app.simsmartgsm.modem.QfdwlTransferParser;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.*;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -15,9 +16,9 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service để xử lý ghi âm từ MODEM (tương tự code C#)
- * - Nhận WAV bytes từ modem qua serial port
- * - Detect RIFF header
- * - Lưu file khi nhận được +QFDWL: (download complete)
+ * - Nhận WAV bytes từ modem qua AT+QFDWL (QfdwlTransferParser, binary-safe)
+ * - Stream bytes thẳng xuống file tạm (không giữ toàn bộ file trên heap)
+ * - Rename sang file .wav khi trailer +QFDWL: khớp size + checksum
  */
 @Service
 @Slf4j
@@ -26,7 +27,7 @@ public class ModemRecordingService {
 
     // Tương tự C# line 74-76
     private final ConcurrentHashMap<String, String> portWriteFile = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, ByteArrayOutputStream> portFileBytes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RecordingFileWriter> portFileWriters = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Boolean> wavDownloading = new ConcurrentHashMap<>();
 
     @Value("${recording.save.path:recordings}")
@@ -48,86 +49,116 @@ public class ModemRecordingService {
     }
 
     /**
-     * Bắt đầu tracking WAV download cho một COM port
+     * Đặt tên file cho recording của cuộc gọi trên COM port
      * Tương tự C# line 366-367
      */
     public void startWavDownload(String comPort, String fileName) {
-        wavDownloading.put(comPort, true);
         portWriteFile.put(comPort, fileName);
-        portFileBytes.put(comPort, new ByteArrayOutputStream());
         log.info("Started WAV download for port: {}, fileName: {}", comPort, fileName);
     }
 
     /**
-     * Xử lý data nhận được từ serial port
-     * Tương tự C# HandleReceivedLine (line 358-406)
+     * Tạo parser cho AT+QFDWL, bytes được ghi thẳng xuống file của port
+     * @param expectedSize size file từ AT+QFLST, <= 0 nếu chưa biết
      */
-    public void handleSerialData(String comPort, byte[] data, String textData) {
-        // Detect RIFF header (WAV file header) - giống C# line 366
-        if (textData.contains("RIFF")) {
-            if (!wavDownloading.getOrDefault(comPort, false)) {
-                String fileName = generateFileName();
-                startWavDownload(comPort, fileName);
-            }
+    public QfdwlTransferParser beginTransfer(String comPort, long expectedSize) {
+        String fileName = portWriteFile.remove(comPort);
+        if (fileName == null) {
+            fileName = generateFileName(comPort);
+        }
+
+        RecordingFileWriter writer = new RecordingFileWriter(Paths.get(recordingSavePath, fileName + ".wav"));
+        RecordingFileWriter previous = portFileWriters.put(comPort, writer);
+        if (previous != null) {
+            previous.abort();
         }
+        wavDownloading.put(comPort, true);
+        log.info("Receiving WAV for port: {}, fileName: {}, size: {}", comPort, fileName,
+                expectedSize > 0 ? expectedSize : "unknown");
+
+        RecordingTransferEvent event = new RecordingTransferEvent();
+        event.begin();
 
-        // Nếu đang download WAV file - giống C# line 369-406
-        if (Boolean.TRUE.equals(wavDownloading.get(comPort))) {
-            // Nếu chưa phải kết thúc (+QFDWL:)
-            if (!textData.contains("+QFDWL:")) {
-                // Append bytes vào buffer - giống C# line 373-387
-                ByteArrayOutputStream buffer = portFileBytes.get(comPort);
-                if (buffer != null) {
-                    try {
-                        buffer.write(data);
-                    } catch (IOException e) {
-                        log.error("Error writing WAV data for port: {}", comPort, e);
-                    }
+        return new QfdwlTransferParser(comPort, expectedSize, new QfdwlTransferParser.Sink() {
+            private long received;
+
+            @Override
+            public void onData(byte[] data, int offset, int length) throws IOException {
+                writer.write(data, offset, length);
+                received += length;
+            }
+
+            @Override
+            public void onComplete(long size, boolean checksumValid) {
+                if (checksumValid) {
+                    String error = completeWavDownload(comPort, writer) ? null : "save failed";
+                    commitTransferEvent(event, comPort, writer, expectedSize, received, error);
+                } else {
+                    failWavDownload(comPort, writer, "checksum mismatch");
+                    commitTransferEvent(event, comPort, writer, expectedSize, received, "checksum mismatch");
                 }
-            } else {
-                // Download complete - giống C# line 392-405
-                completeWavDownload(comPort);
             }
-        }
+
+            @Override
+            public void onError(String reason) {
+                failWavDownload(comPort, writer, reason);
+                commitTransferEvent(event, comPort, writer, expectedSize, received, reason);
+            }
+        });
     }
 
     /**
      * Hoàn thành WAV download và lưu file
      * Tương tự C# line 392-405
+     * @return false nếu không lưu được file
      */
-    private void completeWavDownload(String comPort) {
+    private boolean completeWavDownload(String comPort, RecordingFileWriter writer) {
+        portFileWriters.remove(comPort, writer);
         wavDownloading.put(comPort, false);
 
-        String fileName = portWriteFile.get(comPort);
-        ByteArrayOutputStream buffer = portFileBytes.get(comPort);
-
-        if (fileName != null && buffer != null) {
-            try {
-                // Lưu file WAV - giống C# line 398-399
-                Path filePath = Paths.get(recordingSavePath, fileName + ".wav");
-                Files.write(filePath, buffer.toByteArray());
+        try {
+            // fsync + rename file tạm - giống C# line 398-399
+            long size = writer.complete();
 
-                log.info("Saved WAV file: {}", filePath);
+            log.info("Saved WAV file: {} ({} bytes)", writer.getTarget(), size);
 
-                // TODO: Upload to server nếu cần - giống C# line 401
-                // uploadToServer(buffer.toByteArray());
+            // TODO: Upload to server nếu cần - giống C# line 401
+            // uploadToServer(writer.getTarget());
+            return true;
 
-                // Cleanup
-                portWriteFile.remove(comPort);
-                portFileBytes.remove(comPort);
+        } catch (IOException e) {
+            log.error("Error saving WAV file for port: {}", comPort, e);
+            writer.abort();
+            return false;
+        }
+    }
 
-            } catch (IOException e) {
-                log.error("Error saving WAV file for port: {}", comPort, e);
-            }
+    private static void commitTransferEvent(RecordingTransferEvent event, String comPort, RecordingFileWriter writer,
+            long expectedSize, long received, String error) {
+        if (event.shouldCommit()) {
+            event.port = comPort;
+            event.file = writer.getTarget().getFileName().toString();
+            event.expectedBytes = expectedSize;
+            event.bytes = received;
+            event.success = error == null;
+            event.error = error;
+            event.commit();
         }
     }
 
+    private void failWavDownload(String comPort, RecordingFileWriter writer, String reason) {
+        portFileWriters.remove(comPort, writer);
+        wavDownloading.put(comPort, false);
+        writer.abort();
+        log.error("WAV download failed for port: {} ({}): {}", comPort, writer.getTarget(), reason);
+    }
+
     /**
      * Generate file name với timestamp
      */
-    private String generateFileName() {
+    private String generateFileName(String comPort) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
-        return "call_" + LocalDateTime.now().format(formatter);
+        return "call_" + comPort + "_" + LocalDateTime.now().format(formatter);
     }
 
     /**
@@ -159,13 +190,9 @@ public class ModemRecordingService {
         wavDownloading.remove(comPort);
         portWriteFile.remove(comPort);
 
-        ByteArrayOutputStream buffer = portFileBytes.remove(comPort);
-        if (buffer != null) {
-            try {
-                buffer.close();
-            } catch (IOException e) {
-                log.error("Error closing buffer for port: {}", comPort, e);
-            }
+        RecordingFileWriter writer = portFileWriters.remove(comPort);
+        if (writer != null) {
+            writer.abort();
         }
     }
 
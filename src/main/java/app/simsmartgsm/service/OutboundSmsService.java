@@ -0,0 +1,277 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.config.DeviceConfig;
+import app.simsmartgsm.entity.SmsMessage;
+import app.simsmartgsm.modem.AtResponse;
+import app.simsmartgsm.modem.ModemRegistry;
+import app.simsmartgsm.modem.PortScanService.PortInfo;
+import app.simsmartgsm.modem.SerialPortHandler;
+import app.simsmartgsm.modem.SimIdentityCache;
+import app.simsmartgsm.modem.SmsPduEncoder;
+import app.simsmartgsm.repository.SmsMessageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hàng đợi gửi SMS, mỗi modem 1 worker thread
+ * - Tin nhắn được lưu (status QUEUED) trước khi gửi, app restart sẽ gửi tiếp
+ * - PDU mode (AT+CMGF=0) set 1 lần cho mỗi lần mở port, không gửi lại AT/CMGF mỗi tin
+ * - Nội dung dài / tiếng Việt: multipart + UCS2 (SmsPduEncoder)
+ * - Không sleep: part kế tiếp gửi ngay khi modem trả OK cho part trước
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class OutboundSmsService {
+
+    public static final String TYPE_OUTBOX = "OUTBOX";
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_SENT = "SENT";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // AT+CMGS đợi network trả +CMGS, có thể lâu khi sóng yếu
+    private static final long SEND_TIMEOUT_MS = 60_000;
+    private static final long MODE_TIMEOUT_MS = 2000;
+    // Tính tốc độ gửi trên N tin gần nhất
+    private static final int RATE_WINDOW = 50;
+
+    private final ModemRegistry modemRegistry;
+    private final SmsMessageRepository smsMessageRepository;
+    private final SimIdentityCache identityCache;
+    private final DeviceConfig deviceConfig;
+    private final RetentionService retentionService;
+
+    private final Map<String, ModemWorker> workers = new ConcurrentHashMap<>();
+
+    // Ghi Mongo trên 1 thread riêng theo thứ tự, worker không đợi DB
+    private final ExecutorService store = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sms-outbox-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Đưa SMS vào hàng đợi của modem
+     * @return SmsMessage đã tạo (status QUEUED)
+     */
+    public SmsMessage enqueue(String comPort, String toNumber, String content) {
+        PortInfo info = identityCache.get(comPort);
+        SmsMessage message = SmsMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .deviceName(deviceConfig.getName())
+                .comPort(comPort)
+                .simPhone(info != null ? info.getPhoneNumber() : null)
+                .toNumber(toNumber)
+                .content(content)
+                .type(TYPE_OUTBOX)
+                .status(STATUS_QUEUED)
+                .timestamp(Instant.now())
+                .expireAt(retentionService.smsExpiry(Instant.now()))
+                .build();
+
+        persist(message);
+        worker(comPort).queue.add(message);
+        log.info("📨 Queued SMS {} on {} to {} ({} part(s))",
+                message.getId(), comPort, toNumber, SmsPduEncoder.countParts(content));
+        return message;
+    }
+
+    /**
+     * Thống kê theo modem: queued, sent, failed, messagesPerSecond
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new HashMap<>();
+        workers.forEach((port, worker) -> stats.put(port, worker.stats()));
+        return stats;
+    }
+
+    /**
+     * Gửi lại tin QUEUED còn lại từ lần chạy trước
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        store.execute(() -> {
+            try {
+                List<SmsMessage> pending = smsMessageRepository.findByDeviceNameAndTypeAndStatus(
+                        deviceConfig.getName(), TYPE_OUTBOX, STATUS_QUEUED);
+                for (SmsMessage message : pending) {
+                    if (message.getComPort() != null) {
+                        worker(message.getComPort()).queue.add(message);
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    log.info("📨 Resumed {} queued SMS", pending.size());
+                }
+            } catch (Exception e) {
+                log.warn("⚠️ Cannot load queued SMS: {}", e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.values().forEach(worker -> worker.thread.interrupt());
+        store.shutdown();
+    }
+
+    private ModemWorker worker(String comPort) {
+        return workers.computeIfAbsent(comPort, port -> {
+            ModemWorker worker = new ModemWorker(port);
+            worker.thread.start();
+            return worker;
+        });
+    }
+
+    private void persist(SmsMessage message) {
+        store.execute(() -> {
+            try {
+                smsMessageRepository.save(message);
+            } catch (Exception e) {
+                log.warn("⚠️ Cannot save SMS {}: {}", message.getId(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Worker gửi tuần tự các tin của 1 modem
+     */
+    private final class ModemWorker implements Runnable {
+        private final String comPort;
+        private final BlockingQueue<SmsMessage> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final Deque<Long> recentSends = new ArrayDeque<>(RATE_WINDOW);
+
+        // Handler đã được set AT+CMGF=0 (port mở lại -> handler mới -> set lại)
+        private SerialPortHandler pduModeHandler;
+
+        ModemWorker(String comPort) {
+            this.comPort = comPort;
+            this.thread = new Thread(this, "sms-sender-" + comPort);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    SmsMessage first = queue.take();
+                    // Giữ lease trong lúc còn tin trong hàng đợi, scan không chen vào
+                    try (ModemRegistry.Lease lease = modemRegistry.lease(comPort, "sms")) {
+                        SmsMessage message = first;
+                        while (message != null) {
+                            send(lease, message);
+                            message = queue.poll();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("SMS worker error on {}", comPort, e);
+                }
+            }
+        }
+
+        private void send(ModemRegistry.Lease lease, SmsMessage message) throws InterruptedException {
+            String result;
+            try {
+                if (lease == null) {
+                    throw new IllegalStateException("Cannot open port " + comPort);
+                }
+                result = sendParts(lease.getHandler(), message);
+                message.setStatus(STATUS_SENT);
+                sent.incrementAndGet();
+                recordSend();
+                log.info("📤 SMS {} sent on {} to {}", message.getId(), comPort, message.getToNumber());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                result = e instanceof ExecutionException && e.getCause() != null
+                        ? e.getCause().getMessage()
+                        : e.getMessage();
+                message.setStatus(STATUS_FAILED);
+                failed.incrementAndGet();
+                log.error("❌ SMS {} failed on {}: {}", message.getId(), comPort, result);
+            }
+            message.setModemResponse(result);
+            persist(message);
+        }
+
+        /**
+         * Gửi từng part bằng AT+CMGS=&lt;length&gt;, PDU hex được gửi khi modem trả "> "
+         * @return response của part cuối (+CMGS: &lt;mr&gt;)
+         */
+        private String sendParts(SerialPortHandler handler, SmsMessage message) throws Exception {
+            ensurePduMode(handler);
+            String last = null;
+            for (SmsPduEncoder.Pdu pdu : SmsPduEncoder.encode(message.getToNumber(), message.getContent())) {
+                AtResponse response = handler.sendCommandAsync("AT+CMGS=" + pdu.getTpduLength(),
+                        pdu.getHex().getBytes(StandardCharsets.US_ASCII), SEND_TIMEOUT_MS).get();
+                if (!response.isOk()) {
+                    throw new IllegalStateException(response.getText());
+                }
+                last = response.getText();
+            }
+            return last;
+        }
+
+        private void ensurePduMode(SerialPortHandler handler) throws Exception {
+            if (pduModeHandler == handler) {
+                return;
+            }
+            AtResponse response = handler.sendCommandAsync("AT+CMGF=0", MODE_TIMEOUT_MS).get();
+            if (!response.isOk()) {
+                throw new IllegalStateException("AT+CMGF=0 rejected: " + response.getFinalResult());
+            }
+            pduModeHandler = handler;
+        }
+
+        private void recordSend() {
+            synchronized (recentSends) {
+                if (recentSends.size() == RATE_WINDOW) {
+                    recentSends.removeFirst();
+                }
+                recentSends.addLast(System.nanoTime());
+            }
+        }
+
+        Map<String, Object> stats() {
+            double rate = 0;
+            synchronized (recentSends) {
+                // Tính tới thời điểm hiện tại để rate giảm dần khi modem rảnh
+                if (!recentSends.isEmpty()) {
+                    double seconds = (System.nanoTime() - recentSends.getFirst()) / 1e9;
+                    rate = seconds > 0 ? recentSends.size() / seconds : 0;
+                }
+            }
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("queued", queue.size());
+            stats.put("sent", sent.get());
+            stats.put("failed", failed.get());
+            stats.put("messagesPerSecond", Math.round(rate * 100) / 100.0);
+            return stats;
+        }
+    }
+}
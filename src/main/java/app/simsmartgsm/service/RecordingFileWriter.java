@@ -0,0 +1,135 @@
+package app.simsmartgsm.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Ghi file recording thẳng xuống disk trong lúc download từ modem
+ * - Ghi vào file tạm <name>.wav.part qua FileChannel
+ * - Gom bytes trong direct buffer (dùng lại qua pool) trước khi write
+ * - fsync + rename atomic sang <name>.wav khi hoàn tất
+ * Heap dùng cho mỗi download chỉ vài KB, không phụ thuộc độ dài cuộc gọi
+ */
+@Slf4j
+public class RecordingFileWriter {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final BlockingQueue<ByteBuffer> BUFFER_POOL = new ArrayBlockingQueue<>(64);
+
+    private final Path target;
+    private final Path temp;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long bytesWritten;
+
+    public RecordingFileWriter(Path target) {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    /**
+     * Ghi thêm bytes (file tạm được mở ở lần ghi đầu tiên)
+     */
+    public synchronized void write(byte[] data, int offset, int length) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+        if (channel == null) {
+            open();
+        }
+        while (length > 0) {
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            bytesWritten += chunk;
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+        }
+    }
+
+    /**
+     * Hoàn tất: flush, fsync, rename file tạm sang file đích
+     * @return số bytes đã ghi
+     */
+    public synchronized long complete() throws IOException {
+        if (channel == null) {
+            open();
+        }
+        try {
+            flushBuffer();
+            channel.force(true);
+        } finally {
+            release();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * Huỷ download: đóng channel và xoá file tạm
+     */
+    public synchronized void abort() {
+        release();
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.warn("Cannot delete temp recording {}: {}", temp, e.getMessage());
+        }
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer pooled = BUFFER_POOL.poll();
+        buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void release() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing recording channel {}: {}", temp, e.getMessage());
+            }
+            channel = null;
+        }
+        if (buffer != null) {
+            buffer.clear();
+            BUFFER_POOL.offer(buffer);
+            buffer = null;
+        }
+    }
+}
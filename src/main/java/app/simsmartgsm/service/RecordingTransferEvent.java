@@ -0,0 +1,38 @@
+package app.simsmartgsm.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event cho 1 lần download file ghi âm (AT+QFDWL): duration từ lúc bắt đầu tới khi lưu xong / lỗi
+ */
+@Name("app.simsmartgsm.RecordingTransfer")
+@Label("Recording Transfer")
+@Category({"SimSmart GSM", "Call"})
+@StackTrace(false)
+class RecordingTransferEvent extends Event {
+
+    @Label("Port")
+    String port;
+
+    @Label("File")
+    String file;
+
+    @Label("Expected Bytes")
+    @DataAmount
+    long expectedBytes;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,198 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.CallRecord;
+import app.simsmartgsm.entity.SmsMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retention cho call_records / sms_messages
+ * - expireAt gán khi tạo document, TTL index trên expireAt (expireAfter 0s) để Mongo tự xoá
+ * - Archiver (tuỳ chọn): trước khi TTL xoá, chuyển document sắp hết hạn ra file .jsonl.gz theo ngày
+ *   (archive/&lt;collection&gt;/yyyy/MM/dd.jsonl.gz) và gom file WAV vào dd-recordings.zip, rồi xoá khỏi Mongo
+ * - Retention &lt;= 0 ngày: giữ vĩnh viễn (không gán expireAt)
+ */
+@Service
+@Slf4j
+public class RetentionService {
+
+    private static final int ARCHIVE_BATCH = 500;
+    private static final int MAX_BATCHES_PER_RUN = 50;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ModemRecordingService recordingService;
+
+    @Value("${retention.call-records-days:90}")
+    private int callRecordDays;
+
+    @Value("${retention.sms-days:90}")
+    private int smsDays;
+
+    @Value("${retention.archive-enabled:false}")
+    private boolean archiveEnabled;
+
+    @Value("${retention.archive-dir:archive}")
+    private String archiveDir;
+
+    // Archive trước thời điểm hết hạn 1 khoảng (> chu kỳ chạy) để TTL không xoá trước
+    @Value("${retention.archive-lead-hours:24}")
+    private long archiveLeadHours;
+
+    public RetentionService(MongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                            ModemRecordingService recordingService) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.recordingService = recordingService;
+    }
+
+    /**
+     * @return null nếu giữ vĩnh viễn
+     */
+    public Instant callRecordExpiry(Instant from) {
+        return expiry(from, callRecordDays);
+    }
+
+    public Instant smsExpiry(Instant from) {
+        return expiry(from, smsDays);
+    }
+
+    private static Instant expiry(Instant from, int days) {
+        if (days <= 0) {
+            return null;
+        }
+        return (from != null ? from : Instant.now()).plus(Duration.ofDays(days));
+    }
+
+    @Scheduled(initialDelayString = "${retention.archive-initial-delay-ms:300000}",
+            fixedDelayString = "${retention.archive-interval-ms:3600000}")
+    public void archiveExpiring() {
+        if (!archiveEnabled) {
+            return;
+        }
+        try {
+            int calls = archive(CallRecord.class, "call_records",
+                    r -> r.getStartTime() != null ? r.getStartTime() : r.getCreatedAt(), CallRecord::getId, true);
+            int sms = archive(SmsMessage.class, "sms_messages", SmsMessage::getTimestamp, SmsMessage::getId, false);
+            if (calls + sms > 0) {
+                log.info("📦 Archived {} call record(s), {} SMS to {}", calls, sms, archiveDir);
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Archive run failed: {}", e.getMessage());
+        }
+    }
+
+    private <T> int archive(Class<T> type, String name, Function<T, Instant> dateOf, Function<T, String> idOf,
+                            boolean withRecordings) throws IOException {
+        Instant cutoff = Instant.now().plus(Duration.ofHours(archiveLeadHours));
+        int total = 0;
+        for (int round = 0; round < MAX_BATCHES_PER_RUN; round++) {
+            Query query = Query.query(Criteria.where("expireAt").lte(cutoff))
+                    .with(Sort.by("expireAt"))
+                    .limit(ARCHIVE_BATCH);
+            List<T> batch = mongoTemplate.find(query, type);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            Map<LocalDate, List<T>> byDay = new LinkedHashMap<>();
+            for (T document : batch) {
+                Instant date = dateOf.apply(document);
+                LocalDate day = (date != null ? date : Instant.now()).atZone(ZoneId.systemDefault()).toLocalDate();
+                byDay.computeIfAbsent(day, d -> new ArrayList<>()).add(document);
+            }
+            for (Map.Entry<LocalDate, List<T>> entry : byDay.entrySet()) {
+                appendJsonLines(partition(name, entry.getKey(), ".jsonl.gz"), entry.getValue());
+                if (withRecordings) {
+                    archiveRecordings(partition(name, entry.getKey(), "-recordings.zip"), entry.getValue());
+                }
+            }
+
+            // Chỉ xoá sau khi đã ghi archive xong
+            List<String> ids = batch.stream().map(idOf).toList();
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), type);
+            total += batch.size();
+            if (batch.size() < ARCHIVE_BATCH) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private Path partition(String name, LocalDate day, String suffix) {
+        return Paths.get(archiveDir, name, String.format("%04d", day.getYear()),
+                String.format("%02d", day.getMonthValue()), String.format("%02d", day.getDayOfMonth()) + suffix);
+    }
+
+    /**
+     * Mỗi lần ghi là 1 gzip member mới nối vào cuối file (gunzip / GZIPInputStream đọc liền mạch)
+     */
+    private <T> void appendJsonLines(Path file, List<T> documents) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            for (T document : documents) {
+                out.write(objectMapper.writeValueAsBytes(document));
+                out.write('\n');
+            }
+        }
+    }
+
+    private <T> void archiveRecordings(Path zip, List<T> documents) throws IOException {
+        List<Path> recordings = new ArrayList<>();
+        for (T document : documents) {
+            CallRecord record = (CallRecord) document;
+            String path = record.getRecordingFilePath();
+            if (path == null && record.getRecordingFileName() != null) {
+                path = recordingService.getRecordingPath(record.getRecordingFileName());
+            }
+            if (path != null && Files.isRegularFile(Paths.get(path))) {
+                recordings.add(Paths.get(path));
+            }
+        }
+        if (recordings.isEmpty()) {
+            return;
+        }
+
+        Files.createDirectories(zip.getParent());
+        URI uri = URI.create("jar:" + zip.toAbsolutePath().toUri());
+        try (FileSystem zipFs = FileSystems.newFileSystem(uri, Map.of("create", "true"))) {
+            for (Path recording : recordings) {
+                Files.copy(recording, zipFs.getPath(recording.getFileName().toString()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        for (Path recording : recordings) {
+            Files.deleteIfExists(recording);
+        }
+        log.debug("Archived {} recording(s) into {}", recordings.size(), zip);
+    }
+}
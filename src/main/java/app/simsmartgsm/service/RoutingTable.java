@@ -0,0 +1,295 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.Sim;
+import app.simsmartgsm.entity.SmsSession;
+import app.simsmartgsm.modem.SimIdentityCache;
+import app.simsmartgsm.repository.SimRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bảng định tuyến trong memory: số điện thoại (chuẩn hoá) -> Sim, port, session đang active
+ * - Build khi app ready từ collection sims của device này; session lấy qua SmsSessionExpiryService
+ * - Cập nhật theo sự kiện: scan lưu Sim / rút port (SimIdentityCache), session track / gia hạn / hết hạn
+ * - Định kỳ so version với Mongo (max lastUpdated của sims, số session active), lệch mới load lại
+ *   (Sim do chính app lưu cũng đẩy version lên, không load lại sau mỗi lần scan)
+ * - Load lại build map mới rồi thay thế, SIM đã bị xoá khỏi collection không còn route
+ * - SMS đến chỉ cần tra map, không round trip DB
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RoutingTable {
+
+    // So khớp theo số thuê bao quốc gia: "+84912345678" và "0912345678" cùng key "912345678"
+    private static final int KEY_DIGITS = 9;
+
+    private final SimRepository simRepository;
+    private final SimIdentityCache identityCache;
+    private final SmsSessionExpiryService sessionService;
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 1 dòng định tuyến (immutable, thay cả object khi cập nhật)
+     */
+    @Getter
+    @Builder(toBuilder = true)
+    @AllArgsConstructor
+    public static class Route {
+        private final String phoneNumber;
+        private final String comPort;
+        private final Sim sim;
+        private final SmsSession session;
+    }
+
+    // Thay nguyên map khi load lại, cập nhật theo sự kiện đi qua các hàm synchronized
+    private volatile Map<String, Route> byPhone = new ConcurrentHashMap<>();
+    private volatile Map<String, String> phoneByPort = new ConcurrentHashMap<>();
+    private final Map<String, String> phoneBySession = new ConcurrentHashMap<>();
+
+    private volatile Instant simVersion;
+
+    @PostConstruct
+    void init() {
+        identityCache.addListener(new SimIdentityCache.Listener() {
+            @Override
+            public void onSimSaved(Sim sim) {
+                putSim(sim);
+                advanceVersion(sim.getLastUpdated());
+            }
+
+            @Override
+            public void onInvalidated(String comPort) {
+                removePort(comPort);
+            }
+        });
+
+        sessionService.addListener(new SmsSessionExpiryService.SessionListener() {
+            @Override
+            public void onTracked(SmsSession session) {
+                putSession(session);
+            }
+
+            @Override
+            public void onExtended(String sessionId, LocalDateTime expiredAt) {
+                extendSession(sessionId, expiredAt);
+            }
+
+            @Override
+            public void onEnded(String sessionId) {
+                removeSession(sessionId);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread thread = new Thread(this::reloadSims, "routing-table-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Tra cứu theo số điện thoại (bất kỳ định dạng)
+     */
+    public Route lookup(String phoneNumber) {
+        String key = normalize(phoneNumber);
+        return key != null ? byPhone.get(key) : null;
+    }
+
+    public Route lookupByPort(String comPort) {
+        String key = comPort != null ? phoneByPort.get(comPort) : null;
+        return key != null ? byPhone.get(key) : null;
+    }
+
+    public int size() {
+        return byPhone.size();
+    }
+
+    /**
+     * Quốc gia (Sim.countryCode) của các SIM đang có route trên máy này
+     */
+    public Set<String> simCountryCodes() {
+        Set<String> codes = new TreeSet<>();
+        for (Route route : byPhone.values()) {
+            if (route.getSim() != null && route.getSim().getCountryCode() != null) {
+                codes.add(route.getSim().getCountryCode());
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Chỉ giữ chữ số, lấy 9 số cuối (bỏ mã quốc gia / số 0 đầu)
+     */
+    static String normalize(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() < 6) {
+            return null;
+        }
+        return digits.length() > KEY_DIGITS ? digits.substring(digits.length() - KEY_DIGITS) : digits.toString();
+    }
+
+    private synchronized void putSim(Sim sim) {
+        putSim(sim, byPhone, phoneByPort);
+    }
+
+    private static void putSim(Sim sim, Map<String, Route> byPhone, Map<String, String> phoneByPort) {
+        String key = normalize(sim.getPhoneNumber());
+        if (key == null) {
+            return;
+        }
+        if (sim.getComName() != null) {
+            String previous = phoneByPort.put(sim.getComName(), key);
+            if (previous != null && !previous.equals(key)) {
+                // Port đã đổi SIM
+                byPhone.computeIfPresent(previous, (k, route) -> route.toBuilder().comPort(null).build());
+            }
+        }
+        byPhone.compute(key, (k, route) -> (route != null ? route.toBuilder() : Route.builder())
+                .phoneNumber(sim.getPhoneNumber())
+                .comPort(sim.getComName())
+                .sim(sim)
+                .build());
+    }
+
+    private synchronized void advanceVersion(Instant lastUpdated) {
+        if (lastUpdated != null && (simVersion == null || lastUpdated.isAfter(simVersion))) {
+            simVersion = lastUpdated;
+        }
+    }
+
+    private synchronized void removePort(String comPort) {
+        String key = phoneByPort.remove(comPort);
+        if (key != null) {
+            byPhone.computeIfPresent(key, (k, route) -> route.toBuilder().comPort(null).build());
+        }
+    }
+
+    private synchronized void putSession(SmsSession session) {
+        String key = normalize(session.getPhoneNumber());
+        if (key == null) {
+            return;
+        }
+        phoneBySession.put(session.getId(), key);
+        byPhone.compute(key, (k, route) -> (route != null ? route.toBuilder()
+                : Route.builder().phoneNumber(session.getPhoneNumber()).comPort(session.getComPort()))
+                .session(session)
+                .build());
+    }
+
+    private synchronized void extendSession(String sessionId, LocalDateTime expiredAt) {
+        String key = phoneBySession.get(sessionId);
+        if (key != null) {
+            byPhone.computeIfPresent(key, (k, route) -> route.getSession() == null ? route
+                    : route.toBuilder().session(route.getSession().toBuilder().expiredAt(expiredAt).build())
+                    .build());
+        }
+    }
+
+    private synchronized void removeSession(String sessionId) {
+        String key = phoneBySession.remove(sessionId);
+        if (key == null) {
+            return;
+        }
+        byPhone.computeIfPresent(key, (k, route) -> {
+            if (route.getSession() == null || !sessionId.equals(route.getSession().getId())) {
+                return route;
+            }
+            // Chỉ có session, không có Sim local -> bỏ hẳn
+            return route.getSim() == null ? null : route.toBuilder().session(null).build();
+        });
+    }
+
+    private void reloadSims() {
+        try {
+            List<Sim> sims = simRepository.findByDeviceName(identityCache.getDeviceName());
+            Map<String, Route> freshByPhone = new ConcurrentHashMap<>();
+            Map<String, String> freshByPort = new ConcurrentHashMap<>();
+            Instant latest = null;
+            for (Sim sim : sims) {
+                putSim(sim, freshByPhone, freshByPort);
+                if (sim.getLastUpdated() != null && (latest == null || sim.getLastUpdated().isAfter(latest))) {
+                    latest = sim.getLastUpdated();
+                }
+            }
+            synchronized (this) {
+                // Session do SmsSessionExpiryService quản lý, giữ lại khi thay map
+                byPhone.forEach((key, route) -> {
+                    if (route.getSession() != null) {
+                        freshByPhone.compute(key, (k, fresh) -> (fresh != null ? fresh.toBuilder()
+                                : Route.builder().phoneNumber(route.getPhoneNumber()).comPort(route.getComPort()))
+                                .session(route.getSession())
+                                .build());
+                    }
+                });
+                byPhone = freshByPhone;
+                phoneByPort = freshByPort;
+                simVersion = latest;
+            }
+            log.info("🧭 Routing table: {} SIM(s), {} number(s)", sims.size(), freshByPhone.size());
+        } catch (Exception e) {
+            log.warn("⚠️ Cannot load routing table: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * So version với Mongo: 1 query lastUpdated mới nhất + 1 count session active
+     */
+    @Scheduled(initialDelayString = "${routing.verify-interval-ms:60000}",
+            fixedDelayString = "${routing.verify-interval-ms:60000}")
+    public void verify() {
+        try {
+            Query latestQuery = Query.query(Criteria.where("deviceName").is(identityCache.getDeviceName()))
+                    .with(Sort.by(Sort.Direction.DESC, "lastUpdated"))
+                    .limit(1);
+            latestQuery.fields().include("lastUpdated");
+            Sim latest = mongoTemplate.findOne(latestQuery, Sim.class);
+            Instant version = latest != null ? latest.getLastUpdated() : null;
+            if (version != null && !version.equals(simVersion)) {
+                log.info("🧭 SIM version changed, reloading routing table");
+                reloadSims();
+            }
+
+            // Session mới đã được SmsSessionExpiryService poll theo startTime, count chỉ bắt session bị tắt ở nơi khác
+            long activeSessions = mongoTemplate.count(Query.query(Criteria.where("active").is(true)
+                    .and("expiredAt").gt(LocalDateTime.now())), SmsSession.class);
+            if (sessionService.isLoaded() && activeSessions != sessionService.getTrackedCount()) {
+                log.info("🧭 Active sessions {} != tracked {}, reloading", activeSessions,
+                        sessionService.getTrackedCount());
+                sessionService.reload();
+            }
+        } catch (Exception e) {
+            log.debug("Routing table verify skipped: {}", e.getMessage());
+        }
+    }
+}
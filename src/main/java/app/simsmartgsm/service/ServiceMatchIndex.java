@@ -0,0 +1,221 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton trên toàn bộ Service.matches (build 1 lần, read-only, dùng chung nhiều thread)
+ * - 1 lượt duyệt nội dung SMS: vừa tìm pattern, vừa gom chuỗi số làm ứng viên OTP
+ * - Chi phí theo độ dài SMS, không phụ thuộc số service trong catalog
+ */
+public final class ServiceMatchIndex {
+
+    private static final int MIN_OTP_DIGITS = 4;
+    private static final int MAX_OTP_DIGITS = 8;
+
+    /**
+     * Kết quả classify: service khớp + mã OTP gần pattern nhất (có thể null)
+     */
+    public static final class Match {
+        private final String serviceCode;
+        private final String serviceName;
+        private final String countryCode;
+        private final String pattern;
+        private final String otpCode;
+
+        Match(Target target, String otpCode) {
+            this.serviceCode = target.serviceCode;
+            this.serviceName = target.serviceName;
+            this.countryCode = target.countryCode;
+            this.pattern = target.pattern;
+            this.otpCode = otpCode;
+        }
+
+        public String getServiceCode() {
+            return serviceCode;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getCountryCode() {
+            return countryCode;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public String getOtpCode() {
+            return otpCode;
+        }
+    }
+
+    private static final class Target {
+        private final String serviceCode;
+        private final String serviceName;
+        private final String countryCode;
+        private final String pattern;
+
+        Target(Service service, String pattern) {
+            this.serviceCode = service.getCode();
+            this.serviceName = service.getText();
+            this.countryCode = service.getCountryCode();
+            this.pattern = pattern;
+        }
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> next = new HashMap<>(4);
+        private Node fail;
+        // Pattern kết thúc tại node này hoặc tại suffix của nó
+        private final List<Target> outputs = new ArrayList<>(1);
+    }
+
+    private final Node root = new Node();
+    private int patternCount;
+
+    private ServiceMatchIndex() {
+    }
+
+    public static ServiceMatchIndex build(List<Service> services) {
+        ServiceMatchIndex index = new ServiceMatchIndex();
+        for (Service service : services) {
+            if (!service.isActive() || service.getMatches() == null || service.getCode() == null) {
+                continue;
+            }
+            for (String raw : service.getMatches()) {
+                if (raw == null || raw.isBlank()) {
+                    continue;
+                }
+                String pattern = raw.trim().toLowerCase(Locale.ROOT);
+                index.insert(pattern, new Target(service, pattern));
+                index.patternCount++;
+            }
+        }
+        index.linkFailures();
+        return index;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * @param countryCode quốc gia của SIM nhận, ưu tiên service cùng quốc gia (null = không ưu tiên)
+     * @return null nếu không khớp service nào
+     */
+    public Match match(String text, String countryCode) {
+        if (text == null || patternCount == 0) {
+            return null;
+        }
+        Target best = null;
+        int bestEnd = -1;
+        List<int[]> digitRuns = new ArrayList<>(2);
+        int runStart = -1;
+
+        Node node = root;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+
+            // Ứng viên OTP: chuỗi số liên tiếp 4-8 chữ số
+            if (Character.isDigit(c) && i < length) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+            } else if (runStart >= 0) {
+                int digits = i - runStart;
+                if (digits >= MIN_OTP_DIGITS && digits <= MAX_OTP_DIGITS) {
+                    digitRuns.add(new int[]{runStart, i});
+                }
+                runStart = -1;
+            }
+            if (i == length) {
+                break;
+            }
+
+            char lower = Character.toLowerCase(c);
+            while (node != root && !node.next.containsKey(lower)) {
+                node = node.fail;
+            }
+            node = node.next.getOrDefault(lower, root);
+            for (Target target : node.outputs) {
+                if (best == null || better(target, best, countryCode)) {
+                    best = target;
+                    bestEnd = i;
+                }
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+        return new Match(best, nearestCode(text, digitRuns, bestEnd - best.pattern.length() + 1, bestEnd));
+    }
+
+    /**
+     * Pattern cùng quốc gia thắng, sau đó pattern dài hơn (cụ thể hơn)
+     */
+    private static boolean better(Target candidate, Target current, String countryCode) {
+        if (countryCode != null) {
+            boolean candidateLocal = countryCode.equalsIgnoreCase(candidate.countryCode);
+            boolean currentLocal = countryCode.equalsIgnoreCase(current.countryCode);
+            if (candidateLocal != currentLocal) {
+                return candidateLocal;
+            }
+        }
+        return candidate.pattern.length() > current.pattern.length();
+    }
+
+    private static String nearestCode(String text, List<int[]> runs, int patternStart, int patternEnd) {
+        String code = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int[] run : runs) {
+            int distance = run[0] > patternEnd ? run[0] - patternEnd : Math.max(0, patternStart - run[1]);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                code = text.substring(run[0], run[1]);
+            }
+        }
+        return code;
+    }
+
+    private void insert(String pattern, Target target) {
+        Node node = root;
+        for (int i = 0; i < pattern.length(); i++) {
+            node = node.next.computeIfAbsent(pattern.charAt(i), c -> new Node());
+        }
+        node.outputs.add(target);
+    }
+
+    private void linkFailures() {
+        Queue<Node> queue = new ArrayDeque<>();
+        for (Node child : root.next.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                Node child = entry.getValue();
+                Node fail = node.fail;
+                while (fail != root && !fail.next.containsKey(entry.getKey())) {
+                    fail = fail.fail;
+                }
+                Node target = fail.next.get(entry.getKey());
+                child.fail = target != null && target != child ? target : root;
+                child.outputs.addAll(child.fail.outputs);
+                queue.add(child);
+            }
+        }
+    }
+}
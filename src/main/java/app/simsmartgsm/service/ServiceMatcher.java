@@ -0,0 +1,92 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.Service;
+import app.simsmartgsm.entity.SmsMessage;
+import app.simsmartgsm.repository.ServiceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Phân loại SMS đến theo catalog Service (OTP / service)
+ * - Index Aho-Corasick build từ các Service active, đổi bằng 1 lần gán volatile
+ * - Reload định kỳ, chỉ build lại khi nội dung collection services thay đổi
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ServiceMatcher {
+
+    public static final String TYPE_OTP = "OTP";
+    public static final String TYPE_SERVICE = "SERVICE";
+
+    private final ServiceRepository serviceRepository;
+
+    private volatile ServiceMatchIndex index = ServiceMatchIndex.build(Collections.emptyList());
+    private volatile int fingerprint;
+
+    /**
+     * Load lần đầu ở background, không block startup khi Mongo chậm
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread thread = new Thread(this::refresh, "service-matcher-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Scheduled(initialDelayString = "${service-matcher.refresh-ms:60000}",
+            fixedDelayString = "${service-matcher.refresh-ms:60000}")
+    public synchronized void refresh() {
+        try {
+            List<Service> services = serviceRepository.findAll();
+            int current = fingerprint(services);
+            if (current == fingerprint && index.getPatternCount() > 0) {
+                return;
+            }
+            long start = System.nanoTime();
+            ServiceMatchIndex rebuilt = ServiceMatchIndex.build(services);
+            index = rebuilt;
+            fingerprint = current;
+            log.info("🔎 Service matcher rebuilt: {} service(s), {} pattern(s) in {} ms",
+                    services.size(), rebuilt.getPatternCount(), (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("⚠️ Cannot load services for matcher: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gắn serviceCode / serviceType / otpCode vào message nếu khớp
+     * @return true nếu khớp service nào đó
+     */
+    public boolean classify(SmsMessage message, String countryCode) {
+        ServiceMatchIndex.Match match = index.match(message.getContent(), countryCode);
+        if (match == null) {
+            return false;
+        }
+        message.setServiceCode(match.getServiceCode());
+        message.setOtpCode(match.getOtpCode());
+        message.setServiceType(match.getOtpCode() != null ? TYPE_OTP : TYPE_SERVICE);
+        return true;
+    }
+
+    public int getPatternCount() {
+        return index.getPatternCount();
+    }
+
+    private static int fingerprint(List<Service> services) {
+        int hash = 1;
+        for (Service service : services) {
+            hash = 31 * hash + Objects.hash(service.getId(), service.getCode(), service.getText(),
+                    service.getMatches(), service.getCountryCode(), service.isActive());
+        }
+        return hash;
+    }
+}
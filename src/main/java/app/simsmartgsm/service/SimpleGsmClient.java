@@ -8,6 +8,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * @deprecated mở SerialPort riêng, tranh port với scan/call.
+ * Dùng handler dùng chung từ {@link app.simsmartgsm.modem.ModemRegistry}
+ */
+@Deprecated
 @Slf4j
 public class SimpleGsmClient implements AutoCloseable {
     private final SerialPort port;
@@ -0,0 +1,239 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.SmsSession;
+import app.simsmartgsm.repository.SmsSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Hết hạn SmsSession bằng timing wheel trong memory, không query cả collection mỗi lượt
+ * - Load session active 1 lần khi app ready, sau đó đồng bộ qua track / extend / untrack (listener được báo theo)
+ * - Session do service khác tạo: poll theo mốc startTime lớn nhất đã thấy (vài giây 1 lần), chỉ lấy session mới
+ * - Mỗi giây advance wheel, các session hết hạn được tắt bằng 1 lệnh updateMulti
+ * - Update có điều kiện expiredAt &lt;= now: session đã được gia hạn ở nơi khác không bị tắt nhầm,
+ *   được đặt lại lên wheel theo expiredAt mới
+ */
+@Service
+@Slf4j
+public class SmsSessionExpiryService {
+
+    public static final String STATUS_EXPIRED = "EXPIRED";
+
+    /**
+     * Theo dõi vòng đời session (vd: routing table số điện thoại -> session)
+     */
+    public interface SessionListener {
+        void onTracked(SmsSession session);
+
+        void onExtended(String sessionId, LocalDateTime expiredAt);
+
+        /** Session hết hạn hoặc bị bỏ theo dõi */
+        void onEnded(String sessionId);
+    }
+
+    private final SmsSessionRepository smsSessionRepository;
+    private final MongoTemplate mongoTemplate;
+
+    private final TimingWheel<String> wheel = new TimingWheel<>(1000, System.currentTimeMillis());
+    // Hết hạn nhưng chưa ghi được xuống Mongo (DB lỗi) -> thử lại ở tick sau
+    private final Set<String> pendingExpired = ConcurrentHashMap.newKeySet();
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean loaded;
+    // startTime lớn nhất đã track: mốc để poll session mới
+    private volatile LocalDateTime watermark;
+
+    public SmsSessionExpiryService(SmsSessionRepository smsSessionRepository, MongoTemplate mongoTemplate) {
+        this.smsSessionRepository = smsSessionRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread thread = new Thread(this::reload, "sms-session-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Load lại toàn bộ session active (startup, hoặc khi phát hiện lệch với Mongo)
+     */
+    public synchronized void reload() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Set<String> stale = new HashSet<>(wheel.keys());
+            int count = 0;
+            for (SmsSession session : smsSessionRepository.findAllByExpiredAtAfter(now)) {
+                if (session.isActive()) {
+                    track(session);
+                    stale.remove(session.getId());
+                    count++;
+                }
+            }
+            // Bị tắt / xoá ở nơi khác
+            stale.forEach(this::untrack);
+            // Session đã quá hạn trong lúc app tắt
+            for (SmsSession session : smsSessionRepository.findAllByActiveTrueAndExpiredAtBefore(now)) {
+                pendingExpired.add(session.getId());
+            }
+            loaded = true;
+            log.info("⏱️ Tracking {} active SMS session(s), {} already expired", count, pendingExpired.size());
+        } catch (Exception e) {
+            log.warn("⚠️ Cannot load SMS sessions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gọi sau khi tạo / lưu session
+     */
+    public void track(SmsSession session) {
+        if (session.getId() == null || session.getExpiredAt() == null) {
+            return;
+        }
+        if (session.isActive()) {
+            advanceWatermark(session.getStartTime());
+            wheel.schedule(session.getId(), toMillis(session.getExpiredAt()));
+            fireEvent(listener -> listener.onTracked(session));
+        } else {
+            untrack(session.getId());
+        }
+    }
+
+    /**
+     * Gia hạn session: ghi Mongo rồi đặt lại deadline trên wheel
+     */
+    public void extend(String sessionId, LocalDateTime newExpiredAt) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(sessionId)),
+                new Update().set("expiredAt", newExpiredAt).set("active", true), SmsSession.class);
+        pendingExpired.remove(sessionId);
+        wheel.schedule(sessionId, toMillis(newExpiredAt));
+        fireEvent(listener -> listener.onExtended(sessionId, newExpiredAt));
+    }
+
+    public void untrack(String sessionId) {
+        wheel.cancel(sessionId);
+        pendingExpired.remove(sessionId);
+        fireEvent(listener -> listener.onEnded(sessionId));
+    }
+
+    public boolean isTracked(String sessionId) {
+        return wheel.contains(sessionId);
+    }
+
+    public int getTrackedCount() {
+        return wheel.size();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void addListener(SessionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Session mới được tạo ngoài app (startTime &gt;= mốc), chưa có trên wheel
+     */
+    @Scheduled(initialDelayString = "${sms-session.poll-interval-ms:5000}",
+            fixedDelayString = "${sms-session.poll-interval-ms:5000}")
+    public void pollNewSessions() {
+        if (!loaded) {
+            return;
+        }
+        try {
+            Criteria criteria = Criteria.where("active").is(true).and("expiredAt").gt(LocalDateTime.now());
+            LocalDateTime since = watermark;
+            if (since != null) {
+                criteria = criteria.and("startTime").gte(since);
+            }
+            int added = 0;
+            for (SmsSession session : mongoTemplate.find(Query.query(criteria), SmsSession.class)) {
+                if (!wheel.contains(session.getId())) {
+                    track(session);
+                    added++;
+                }
+            }
+            if (added > 0) {
+                log.info("⏱️ Tracking {} new SMS session(s)", added);
+            }
+        } catch (Exception e) {
+            log.debug("SMS session poll skipped: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void tick() {
+        List<String> expired = wheel.advance(System.currentTimeMillis());
+        if (expired.isEmpty() && pendingExpired.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(expired);
+        ids.addAll(pendingExpired);
+
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> extended = new HashSet<>();
+        try {
+            long modified = mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("_id").in(ids).and("active").is(true).and("expiredAt").lte(now)),
+                    new Update().set("active", false).set("status", STATUS_EXPIRED).set("endTime", now),
+                    SmsSession.class).getModifiedCount();
+            pendingExpired.removeAll(ids);
+            log.info("⌛ Expired {} SMS session(s)", modified);
+            if (modified < ids.size()) {
+                // Gia hạn ở nơi khác: đặt lại theo expiredAt mới thay vì bỏ theo dõi
+                for (SmsSession session : mongoTemplate.find(Query.query(Criteria.where("_id").in(ids)
+                        .and("active").is(true).and("expiredAt").gt(now)), SmsSession.class)) {
+                    extended.add(session.getId());
+                    wheel.schedule(session.getId(), toMillis(session.getExpiredAt()));
+                    fireEvent(listener -> listener.onExtended(session.getId(), session.getExpiredAt()));
+                }
+            }
+        } catch (Exception e) {
+            pendingExpired.addAll(expired);
+            log.warn("⚠️ Cannot expire {} SMS session(s), retrying: {}", ids.size(), e.getMessage());
+        }
+
+        for (String id : expired) {
+            if (!extended.contains(id)) {
+                fireEvent(listener -> listener.onEnded(id));
+            }
+        }
+    }
+
+    private synchronized void advanceWatermark(LocalDateTime startTime) {
+        if (startTime != null && (watermark == null || startTime.isAfter(watermark))) {
+            watermark = startTime;
+        }
+    }
+
+    private void fireEvent(Consumer<SessionListener> event) {
+        for (SessionListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (Exception e) {
+                log.error("Error in SMS session listener", e);
+            }
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,144 @@
+package app.simsmartgsm.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel (kiểu timer wheel của Linux kernel)
+ * - 5 tầng x 64 slot, tick mặc định 1s: tầng 0 phủ 64s, tầng 4 phủ ~34 năm
+ * - schedule / cancel O(1); advance chỉ duyệt slot của tick hiện tại, slot tầng trên được cascade xuống khi tới lượt
+ * - Deadline làm tròn lên theo tick: key hết hạn trong vòng 1 tick sau deadline
+ * - Mỗi key chỉ có 1 deadline, schedule lại = gia hạn
+ */
+public final class TimingWheel<K> {
+
+    private static final int LEVELS = 5;
+    private static final int BITS = 6;
+    private static final int SIZE = 1 << BITS;
+    private static final int MASK = SIZE - 1;
+    private static final long MAX_TICKS = (1L << (BITS * LEVELS)) - 1;
+
+    private static final class Entry<K> {
+        private final K key;
+        private final long expiresTick;
+        private boolean cancelled;
+
+        Entry(K key, long expiresTick) {
+            this.key = key;
+            this.expiresTick = expiresTick;
+        }
+    }
+
+    private final long tickMs;
+    private final List<List<Entry<K>>> slots = new ArrayList<>(LEVELS * SIZE);
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    // Tick kế tiếp cần xử lý
+    private long currentTick;
+
+    public TimingWheel(long tickMs, long startMs) {
+        this.tickMs = tickMs;
+        this.currentTick = startMs / tickMs;
+        for (int i = 0; i < LEVELS * SIZE; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Đặt / gia hạn deadline cho key (deadline đã qua -> hết hạn ở lần advance kế tiếp)
+     */
+    public synchronized void schedule(K key, long deadlineMs) {
+        Entry<K> previous = entries.get(key);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        Entry<K> entry = new Entry<>(key, (deadlineMs + tickMs - 1) / tickMs);
+        entries.put(key, entry);
+        place(entry);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.cancelled = true;
+        return true;
+    }
+
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized List<K> keys() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Chạy tới thời điểm nowMs
+     * @return các key đã hết hạn (đã bị gỡ khỏi wheel)
+     */
+    public synchronized List<K> advance(long nowMs) {
+        long nowTick = nowMs / tickMs;
+        List<K> expired = new ArrayList<>();
+        while (currentTick <= nowTick) {
+            int index = (int) (currentTick & MASK);
+            // Tầng 0 quay hết 1 vòng -> kéo slot kế tiếp của tầng trên xuống
+            if (index == 0) {
+                for (int level = 1; level < LEVELS; level++) {
+                    int slot = (int) ((currentTick >> (BITS * level)) & MASK);
+                    cascade(level, slot);
+                    if (slot != 0) {
+                        break;
+                    }
+                }
+            }
+            List<Entry<K>> bucket = slots.get(index);
+            if (!bucket.isEmpty()) {
+                for (Entry<K> entry : bucket) {
+                    if (!entry.cancelled && entries.remove(entry.key, entry)) {
+                        expired.add(entry.key);
+                    }
+                }
+                bucket.clear();
+            }
+            currentTick++;
+        }
+        return expired;
+    }
+
+    private void cascade(int level, int slot) {
+        List<Entry<K>> bucket = slots.get(level * SIZE + slot);
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Entry<K>> moved = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Entry<K> entry : moved) {
+            if (!entry.cancelled) {
+                place(entry);
+            }
+        }
+    }
+
+    private void place(Entry<K> entry) {
+        long delta = entry.expiresTick - currentTick;
+        if (delta < 0) {
+            slots.get((int) (currentTick & MASK)).add(entry);
+            return;
+        }
+        long expires = delta > MAX_TICKS ? currentTick + MAX_TICKS : entry.expiresTick;
+        long distance = expires - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && distance >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((expires >> (BITS * level)) & MASK);
+        slots.get(level * SIZE + slot).add(entry);
+    }
+}
@@ -0,0 +1,121 @@
+package app.simsmartgsm.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Buffer ghi DB kiểu write-behind, giới hạn kích thước
+ * - Caller chỉ add vào queue, 1 thread riêng gom batch rồi flush (insertMany / bulkWrite)
+ * - Flush khi đủ maxBatch hoặc sau flushIntervalMs kể từ item đầu của batch
+ * - Queue đầy: caller đợi tối đa offerTimeoutMs rồi báo false (không OOM khi DB chậm), caller tự xử lý item
+ *   (offerTimeoutMs = 0: không bao giờ block thread gọi)
+ */
+@Slf4j
+public class WriteBehindBuffer<T> {
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int maxBatch;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final Consumer<List<T>> flusher;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public WriteBehindBuffer(String name, int capacity, int maxBatch, long flushIntervalMs, long offerTimeoutMs,
+                             Consumer<List<T>> flusher) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.flusher = flusher;
+        this.thread = new Thread(this::run, name + "-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return false nếu queue vẫn đầy sau offerTimeoutMs (item không được nhận)
+     */
+    public boolean add(T item) {
+        try {
+            if (queue.offer(item, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("⚠️ Write buffer {} full ({} items), item rejected", name, queue.size());
+        return false;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Dừng thread và flush phần còn lại
+     */
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<T> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                T first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || remaining <= 0) {
+                        break;
+                    }
+                    T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch = new ArrayList<>(maxBatch);
+            }
+        }
+    }
+
+    private void flush(List<T> batch) {
+        try {
+            flusher.accept(batch);
+            log.debug("💾 {} flushed {} item(s)", name, batch.size());
+        } catch (Exception e) {
+            log.error("❌ {} flush of {} item(s) failed: {}", name, batch.size(), e.getMessage());
+        }
+    }
+}
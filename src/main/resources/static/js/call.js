@@ -3,6 +3,10 @@
 let stompClient = null;
 let currentComPort = null;
 
+// Trạng thái đầy đủ theo port, dựng lại từ snapshot + delta
+let callStates = {};
+let lastSeq = -1;
+
 /**
  * Initialize WebSocket connection
  */
@@ -13,12 +17,11 @@ function connectWebSocket() {
     stompClient.connect({}, function(frame) {
         console.log('✅ WebSocket Connected:', frame);
         
-        // Subscribe to call status updates
+        // Subscribe to call status updates (delta, gom theo port)
         stompClient.subscribe('/topic/call-status', function(message) {
-            const status = JSON.parse(message.body);
-            console.log('📡 Received call status:', status);
-            updateCallStatusDisplay(status);
+            applyStatusBatch(JSON.parse(message.body));
         });
+        loadStatusSnapshot();
     }, function(error) {
         console.error('❌ WebSocket Error:', error);
         // Retry connection after 5 seconds
@@ -26,6 +29,53 @@ function connectWebSocket() {
     });
 }
 
+/**
+ * Lấy state đầy đủ khi mới kết nối hoặc bị hụt seq
+ */
+async function loadStatusSnapshot() {
+    try {
+        const response = await fetch('/api/call/status-snapshot');
+        const snapshot = await response.json();
+        callStates = snapshot.ports || {};
+        lastSeq = snapshot.seq;
+        const current = currentComPort && callStates[currentComPort];
+        if (current) {
+            updateCallStatusDisplay(current);
+        }
+    } catch (error) {
+        console.error('Error loading call status snapshot:', error);
+    }
+}
+
+/**
+ * Áp 1 batch delta: {seq, updates: [{comPort, seq, changes | removed}]}
+ */
+function applyStatusBatch(batch) {
+    if (lastSeq < 0) {
+        return; // Đang chờ snapshot
+    }
+    if (batch.seq <= lastSeq) {
+        return; // Đã có trong snapshot
+    }
+    if (batch.seq !== lastSeq + 1) {
+        lastSeq = -1;
+        loadStatusSnapshot();
+        return;
+    }
+    lastSeq = batch.seq;
+    batch.updates.forEach(update => {
+        if (update.removed) {
+            delete callStates[update.comPort];
+            return;
+        }
+        const state = Object.assign(callStates[update.comPort] || {}, update.changes);
+        state.seq = update.seq;
+        callStates[update.comPort] = state;
+        console.log('📡 Received call status:', state);
+        updateCallStatusDisplay(state);
+    });
+}
+
 /**
  * Update call status display
  */
@@ -205,3 +205,41 @@ function toggleSelectAll(selectAllCheckbox) {
         cb.dispatchEvent(new Event('change'));
     });
 }
+
+/**
+ * Live update khi cắm/rút modem (SSE từ PortWatcher)
+ */
+function watchPortEvents() {
+    if (!window.EventSource) {
+        return;
+    }
+    const source = new EventSource('/call-ui/api/modem-call/port-events');
+
+    source.addEventListener('port-added', function(e) {
+        const port = JSON.parse(e.data);
+        console.log('🔌 Port added:', port.comPort);
+        scannedSims = scannedSims.filter(sim => sim.comPort !== port.comPort);
+        scannedSims.push(port);
+        refreshSimList();
+    });
+
+    source.addEventListener('port-removed', function(e) {
+        const port = JSON.parse(e.data);
+        console.log('🔌 Port removed:', port.comPort);
+        scannedSims = scannedSims.filter(sim => sim.comPort !== port.comPort);
+        refreshSimList();
+    });
+}
+
+function refreshSimList() {
+    if (isScanning) {
+        return;
+    }
+    const simCount = document.getElementById('simCount');
+    if (simCount) {
+        simCount.textContent = `SIMs: ${scannedSims.length}`;
+    }
+    renderSimsTable(scannedSims);
+}
+
+document.addEventListener('DOMContentLoaded', watchPortEvents);
@@ -27,7 +27,7 @@ async function sendSms() {
         const data = await response.json();
 
         if (data.success) {
-            showStatus('✅ SMS sent successfully!', 'success');
+            showStatus('✅ SMS queued for sending!', 'success');
             clearSmsForm();
             setTimeout(() => loadSmsHistory(), 1000);
         } else {
@@ -0,0 +1,67 @@
+package app.simsmartgsm.modem;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtFramerTest {
+
+	private final List<String> lines = new ArrayList<>();
+	private int prompts;
+
+	private final AtFramer framer = new AtFramer(16, new AtFramer.Listener() {
+		@Override
+		public void onLine(CharSequence line) {
+			lines.add(line.toString());
+		}
+
+		@Override
+		public void onPrompt() {
+			prompts++;
+		}
+	});
+
+	private void feed(String data) {
+		byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+		framer.feed(bytes, 0, bytes.length);
+	}
+
+	@Test
+	void splitsLinesAcrossChunksAndRingWrap() {
+		for (int i = 0; i < 5; i++) {
+			feed("+CSQ: 2");
+			feed("5,99\r\n\r\nOK\r\n");
+		}
+		assertEquals(10, lines.size());
+		assertEquals("+CSQ: 25,99", lines.get(8));
+		assertEquals("OK", lines.get(9));
+	}
+
+	@Test
+	void detectsPromptWithoutLineEnding() {
+		feed("AT+CMGS=\"0987\"\r\r\n> ");
+		assertEquals(List.of("AT+CMGS=\"0987\""), lines);
+		assertEquals(1, prompts);
+	}
+
+	@Test
+	void dropsLinesLongerThanRing() {
+		feed("0123456789ABCDEFXYZ\r\nOK\r\n");
+		assertEquals(List.of("OK"), lines);
+	}
+
+	@Test
+	void finalResultCodes() {
+		assertTrue(AtFramer.isFinalResult("+CMS ERROR: 500"));
+		assertTrue(AtCommandEngine.isFinalResult("NO CARRIER", "ATD0987654321;"));
+		assertTrue(AtCommandEngine.isUnsolicited("NO CARRIER", "AT+CLCC"));
+		assertTrue(AtCommandEngine.isUnsolicited("+CLCC: 1,0,0,0,0", "AT+CSQ"));
+		assertFalse(AtCommandEngine.isUnsolicited("+CLCC: 1,0,0,0,0", "AT+CLCC"));
+	}
+}
@@ -0,0 +1,52 @@
+package app.simsmartgsm.modem;
+
+import app.simsmartgsm.config.ContinuousFlightRecorder;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightRecorderEventsTest {
+
+	@Test
+	void dumpContainsSerialAndAtCommandEvents(@TempDir Path dir) throws Exception {
+		ContinuousFlightRecorder recorder = new ContinuousFlightRecorder();
+		ReflectionTestUtils.setField(recorder, "enabled", true);
+		ReflectionTestUtils.setField(recorder, "settings", "default");
+		ReflectionTestUtils.setField(recorder, "maxAgeMinutes", 5L);
+		ReflectionTestUtils.invokeMethod(recorder, "start");
+		assertTrue(recorder.isRunning());
+
+		VirtualModem modem = new VirtualModem("VCOM1", 1, VirtualModem.Profile.builder().latencyMs(1).jitterMs(1).build());
+		SerialPortHandler handler = new SerialPortHandler(modem);
+		try {
+			assertTrue(handler.open());
+			assertTrue(handler.sendCommandAsync("AT+CSQ", 2000).orTimeout(5, TimeUnit.SECONDS).join().isOk());
+
+			Path file = dir.resolve("dump.jfr");
+			recorder.dump(1, file);
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+			RecordedEvent command = events.stream()
+					.filter(e -> e.getEventType().getName().equals("app.simsmartgsm.AtCommand"))
+					.filter(e -> "VCOM1".equals(e.getString("port")))
+					.findFirst().orElseThrow();
+			assertEquals("AT+CSQ", command.getString("command"));
+			assertEquals("ok", command.getString("result"));
+			assertTrue(command.getDuration().toNanos() > 0);
+			assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("app.simsmartgsm.SerialRead")
+					&& "VCOM1".equals(e.getString("port")) && e.getInt("bytes") > 0));
+		} finally {
+			handler.close();
+			ReflectionTestUtils.invokeMethod(recorder, "stop");
+		}
+	}
+}
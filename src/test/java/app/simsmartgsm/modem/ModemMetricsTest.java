@@ -0,0 +1,79 @@
+package app.simsmartgsm.modem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModemMetricsTest {
+
+	@Test
+	void groupsCommandsByFamily() {
+		assertEquals("CLCC", ModemMetrics.commandFamily("AT+CLCC=1"));
+		assertEquals("DSCI", ModemMetrics.commandFamily("AT^DSCI=1"));
+		assertEquals("QFDWL", ModemMetrics.commandFamily("AT+QFDWL=\"RAM:record_1.wav\""));
+		assertEquals("COPS", ModemMetrics.commandFamily("AT+COPS?"));
+		assertEquals("BATCH", ModemMetrics.commandFamily("AT+CGSN;+COPS?;+CSQ;+CNUM"));
+		assertEquals("D", ModemMetrics.commandFamily("ATD0912345678;"));
+		assertEquals("H", ModemMetrics.commandFamily("ATH"));
+		assertEquals("&W", ModemMetrics.commandFamily("AT&W"));
+		assertEquals("AT", ModemMetrics.commandFamily("AT"));
+	}
+
+	@Test
+	void classifiesUrcs() {
+		assertEquals("CMTI", ModemMetrics.urcType("+CMTI: \"SM\",3"));
+		assertEquals("DSCI", ModemMetrics.urcType("^DSCI: 1,0,2,0,0912345678,129"));
+		assertEquals("RING", ModemMetrics.urcType("RING"));
+		assertEquals("NO CARRIER", ModemMetrics.urcType("NO CARRIER"));
+		assertEquals("other", ModemMetrics.urcType("garbage 123"));
+		assertEquals("other", ModemMetrics.urcType("+VERYLONGPREFIXNAME: 1"));
+	}
+
+	@Test
+	void recordsLatencyBytesTimeoutsAndUrcs() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		VirtualModem modem = new VirtualModem("VCOM1", 1, VirtualModem.Profile.builder().latencyMs(1).jitterMs(1).build());
+		modem.script("+CSQ", command -> List.of()); // không trả lời -> timeout
+		SerialPortHandler handler = new SerialPortHandler(modem, new ModemMetrics(registry));
+		assertTrue(handler.open());
+		try {
+			for (int i = 0; i < 3; i++) {
+				assertTrue(handler.sendCommandAsync("AT+CGSN", 2000).orTimeout(5, TimeUnit.SECONDS).join().isOk());
+			}
+			assertThrows(CompletionException.class, () -> handler.sendCommandAsync("AT+CSQ", 100).join());
+			modem.deliverSms("0011000B914819325476F80000AA0568656C6C6F");
+			waitFor(() -> registry.find("modem.urc").tags("port", "VCOM1", "type", "CMTI").counter() != null);
+
+			assertEquals(3, registry.get("modem.at.command")
+					.tags("port", "VCOM1", "command", "CGSN", "result", "ok").timer().count());
+			assertEquals(1, registry.get("modem.at.command")
+					.tags("port", "VCOM1", "command", "CSQ", "result", "timeout").timer().count());
+			// + "AT" đồng bộ lại sau timeout
+			assertEquals("AT+CGSN\r".length() * 3 + "AT+CSQ\r".length() + "AT\r".length(),
+					registry.get("modem.serial.bytes").tags("port", "VCOM1", "direction", "out").counter().count());
+			assertTrue(registry.get("modem.serial.bytes").tags("direction", "in").counter().count() > 0);
+		} finally {
+			handler.close();
+		}
+	}
+
+	private static void waitFor(java.util.function.BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + 3000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+}
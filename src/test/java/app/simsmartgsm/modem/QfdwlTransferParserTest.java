@@ -0,0 +1,111 @@
+package app.simsmartgsm.modem;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QfdwlTransferParserTest {
+
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+	private Boolean checksumValid;
+	private String error;
+
+	private QfdwlTransferParser parser(long expectedSize) {
+		return new QfdwlTransferParser("COM1", expectedSize, new QfdwlTransferParser.Sink() {
+			@Override
+			public void onData(byte[] data, int offset, int length) {
+				received.write(data, offset, length);
+			}
+
+			@Override
+			public void onComplete(long size, boolean valid) {
+				checksumValid = valid;
+			}
+
+			@Override
+			public void onError(String reason) {
+				error = reason;
+			}
+		});
+	}
+
+	private static byte[] payload() {
+		byte[] data = new byte[5000];
+		new Random(7).nextBytes(data);
+		// Payload chứa marker giả với size sai
+		byte[] fake = "\r\n+QFDWL: 12,abcd\r\n".getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(fake, 0, data, 2000, fake.length);
+		return data;
+	}
+
+	private static byte[] transfer(byte[] data, String trailerPrefix) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(data);
+		String trailer = trailerPrefix + "+QFDWL: " + data.length + ","
+				+ Integer.toHexString(QfdwlTransferParser.checksum(data)) + "\r\n\r\nOK\r\n";
+		out.writeBytes(trailer.getBytes(StandardCharsets.US_ASCII));
+		return out.toByteArray();
+	}
+
+	private static int feedInChunks(QfdwlTransferParser parser, byte[] stream, int chunk) {
+		int pos = 0;
+		while (pos < stream.length && !parser.isDone()) {
+			int length = Math.min(chunk, stream.length - pos);
+			pos += parser.onBytes(stream, pos, length);
+		}
+		return pos;
+	}
+
+	@Test
+	void unknownSizeIgnoresFakeTrailerInPayload() {
+		byte[] data = payload();
+		byte[] stream = transfer(data, "\r\n");
+
+		int consumed = feedInChunks(parser(-1), stream, 333);
+
+		assertArrayEquals(data, received.toByteArray());
+		assertEquals(Boolean.TRUE, checksumValid);
+		assertEquals("\r\nOK\r\n", new String(stream, consumed, stream.length - consumed, StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void knownSizeWritesExactlySizeBytes() {
+		byte[] data = payload();
+		byte[] stream = transfer(data, "");
+
+		int consumed = feedInChunks(parser(data.length), stream, 1024);
+
+		assertArrayEquals(data, received.toByteArray());
+		assertTrue(checksumValid);
+		assertEquals("\r\nOK\r\n", new String(stream, consumed, stream.length - consumed, StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void checksumMismatchIsReported() {
+		byte[] data = payload();
+		byte[] stream = transfer(data, "");
+		stream[10] ^= 0x55;
+
+		feedInChunks(parser(data.length), stream, 4096);
+
+		assertFalse(checksumValid);
+	}
+
+	@Test
+	void abortBeforeTrailer() {
+		QfdwlTransferParser parser = parser(-1);
+		byte[] data = payload();
+		parser.onBytes(data, 0, 100);
+		parser.abort("timeout");
+
+		assertTrue(parser.isDone());
+		assertEquals("timeout", error);
+	}
+}
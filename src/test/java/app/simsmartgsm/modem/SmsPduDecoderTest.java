@@ -0,0 +1,45 @@
+package app.simsmartgsm.modem;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmsPduDecoderTest {
+
+	@Test
+	void decodesGsm7Deliver() {
+		// SCTS 02-08-26 19:37:41, TZ +8 quarter (+02:00)
+		SmsPduDecoder.DeliveredSms sms = SmsPduDecoder.decode(
+				"07911326040000F0040B911346610089F60000208062917314800CC8F71D14969741F977FD07");
+
+		assertEquals("+31641600986", sms.getSender());
+		assertEquals("How are you?", sms.getText());
+		assertEquals(Instant.parse("2002-08-26T17:37:41Z"), sms.getTimestamp());
+		assertFalse(sms.isConcatenated());
+	}
+
+	@Test
+	void decodesConcatenatedUcs2Part() {
+		// UDHI, OA +84912345678, DCS 08, UDH 05 00 03 AB 02 01, "Xin"
+		SmsPduDecoder.DeliveredSms sms = SmsPduDecoder.decode(
+				"00440B914819325476F80008521090310000220C050003AB020100580069006E");
+
+		assertEquals("+84912345678", sms.getSender());
+		assertEquals("Xin", sms.getText());
+		assertTrue(sms.isConcatenated());
+		assertEquals(0xAB, sms.getReference());
+		assertEquals(2, sms.getTotalParts());
+		assertEquals(1, sms.getPartNumber());
+	}
+
+	@Test
+	void rejectsSubmitPdu() {
+		String submit = SmsPduEncoder.encode("0912345678", "hi").get(0).getHex();
+		assertThrows(IllegalArgumentException.class, () -> SmsPduDecoder.decode(submit));
+	}
+}
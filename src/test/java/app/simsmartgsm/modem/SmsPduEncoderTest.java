@@ -0,0 +1,52 @@
+package app.simsmartgsm.modem;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmsPduEncoderTest {
+
+	@Test
+	void singleGsm7Message() {
+		List<SmsPduEncoder.Pdu> pdus = SmsPduEncoder.encode("+84912345678", "hellohello");
+
+		assertEquals(1, pdus.size());
+		// SCA 00, SUBMIT, MR, DA (11 digits, 0x91), PID, DCS, UDL 10, packed "hellohello"
+		assertEquals("0001000B914819325476F800000AE8329BFD4697D9EC37", pdus.get(0).getHex());
+		assertEquals(22, pdus.get(0).getTpduLength());
+	}
+
+	@Test
+	void longGsm7MessageIsConcatenated() {
+		String text = "a".repeat(200);
+		List<SmsPduEncoder.Pdu> pdus = SmsPduEncoder.encode("0912345678", text);
+
+		assertEquals(2, pdus.size());
+		String first = pdus.get(0).getHex();
+		// UDHI set, UDL = 7 septet header + 153
+		assertTrue(first.startsWith("004100"));
+		int udh = first.indexOf("0000A0050003") + 12;
+		assertTrue(udh > 12);
+		// reference, total 2, part 1
+		assertEquals("0201", first.substring(udh + 2, udh + 6));
+	}
+
+	@Test
+	void extensionCharactersUseEscape() {
+		assertEquals(2, SmsPduEncoder.toGsm7("€").length);
+		assertEquals(1, SmsPduEncoder.countParts("{".repeat(80)));
+		assertEquals(2, SmsPduEncoder.countParts("{".repeat(81)));
+	}
+
+	@Test
+	void unicodeUsesUcs2() {
+		List<SmsPduEncoder.Pdu> pdus = SmsPduEncoder.encode("0912345678", "Xin chào bạn");
+		assertEquals(1, pdus.size());
+		// DCS 08, UDL 24 octets
+		assertTrue(pdus.get(0).getHex().contains("000818"));
+		assertEquals(3, SmsPduEncoder.countParts("ệ".repeat(140)));
+	}
+}
@@ -0,0 +1,218 @@
+package app.simsmartgsm.modem;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualModemTest {
+
+	private static final VirtualModem.Profile FAST = VirtualModem.Profile.builder()
+			.latencyMs(1)
+			.jitterMs(2)
+			.alertDelayMs(20)
+			.answerDelayMs(50)
+			.transferChunkBytes(1000)
+			.transferBytesPerSecond(0)
+			.build();
+
+	private final List<SerialPortHandler> handlers = new ArrayList<>();
+
+	@AfterEach
+	void closeHandlers() {
+		handlers.forEach(SerialPortHandler::close);
+	}
+
+	private SerialPortHandler open(VirtualModem modem) {
+		SerialPortHandler handler = new SerialPortHandler(modem);
+		assertTrue(handler.open());
+		handlers.add(handler);
+		return handler;
+	}
+
+	private static AtResponse send(SerialPortHandler handler, String command) {
+		return handler.sendCommandAsync(command, 2000).orTimeout(5, TimeUnit.SECONDS).join();
+	}
+
+	@Test
+	void answersIdentityBatch() {
+		VirtualModem modem = new VirtualModem("VCOM1", 1, FAST);
+		SerialPortHandler handler = open(modem);
+
+		AtResponse response = send(handler, "AT+CGSN;+COPS?;+CSQ;+CNUM");
+
+		assertTrue(response.isOk());
+		assertEquals(List.of(modem.getImei()), response.getLines().subList(0, 1));
+		assertTrue(response.firstLine("+COPS:").contains("\"Viettel\""));
+		assertNotNull(response.firstLine("+CSQ:"));
+		assertTrue(response.firstLine("+CNUM:").contains(modem.getPhoneNumber()));
+		assertTrue(send(handler, "AT+QCCID").firstLine("+QCCID:").endsWith(modem.getIccid()));
+	}
+
+	@Test
+	void reportsOutgoingCallAndDownloadsRecording() throws Exception {
+		VirtualModem modem = new VirtualModem("VCOM2", 2, FAST);
+		SerialPortHandler handler = open(modem);
+		List<Integer> stats = new CopyOnWriteArrayList<>();
+		handler.onCallEvent(event -> {
+			if (event.getType() == CallEvent.Type.STATUS) {
+				stats.add(event.getStat());
+			}
+		});
+		assertTrue(handler.enableCallReporting().get(5, TimeUnit.SECONDS));
+
+		assertTrue(send(handler, "ATD0912345678;").isOk());
+		long deadline = System.currentTimeMillis() + 3000;
+		while (!stats.contains(CallEvent.STAT_ACTIVE) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(List.of(CallEvent.STAT_DIALING, CallEvent.STAT_ALERTING, CallEvent.STAT_ACTIVE), stats);
+		assertTrue(send(handler, "AT+CLCC").firstLine("+CLCC:").startsWith("+CLCC: 1,0,0,"));
+
+		assertTrue(send(handler, "ATH").isOk());
+		String list = send(handler, "AT+QFLST=\"*\"").firstLine("+QFLST:");
+		assertTrue(list.startsWith("+QFLST: \"RAM:record_1.wav\","));
+
+		ByteArrayOutputStream received = new ByteArrayOutputStream();
+		CompletableFuture<Boolean> checksum = new CompletableFuture<>();
+		long size = Long.parseLong(list.substring(list.indexOf(',') + 1));
+		QfdwlTransferParser parser = new QfdwlTransferParser("VCOM2", size, new QfdwlTransferParser.Sink() {
+			@Override
+			public void onData(byte[] data, int offset, int length) {
+				received.write(data, offset, length);
+			}
+
+			@Override
+			public void onComplete(long total, boolean valid) {
+				checksum.complete(valid);
+			}
+
+			@Override
+			public void onError(String reason) {
+				checksum.completeExceptionally(new IllegalStateException(reason));
+			}
+		});
+
+		AtResponse download = handler.sendBinaryCommandAsync("AT+QFDWL=\"RAM:record_1.wav\"", parser, 5000)
+				.get(5, TimeUnit.SECONDS);
+		assertTrue(download.isOk());
+		assertTrue(checksum.get(1, TimeUnit.SECONDS));
+		assertEquals(size, received.size());
+	}
+
+	@Test
+	void downloadsPresetFileInChunks() throws Exception {
+		VirtualModem modem = new VirtualModem("VCOM3", 3, FAST);
+		byte[] data = new byte[12345];
+		new Random(3).nextBytes(data);
+		// Payload chứa text giống response AT
+		byte[] fake = "\r\nOK\r\n+QFDWL: 1,0\r\n".getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(fake, 0, data, 5000, fake.length);
+		modem.putFile("RAM:fixed.wav", data);
+		SerialPortHandler handler = open(modem);
+
+		ByteArrayOutputStream received = new ByteArrayOutputStream();
+		CompletableFuture<Boolean> checksum = new CompletableFuture<>();
+		QfdwlTransferParser parser = new QfdwlTransferParser("VCOM3", -1, new QfdwlTransferParser.Sink() {
+			@Override
+			public void onData(byte[] bytes, int offset, int length) {
+				received.write(bytes, offset, length);
+			}
+
+			@Override
+			public void onComplete(long total, boolean valid) {
+				checksum.complete(valid);
+			}
+
+			@Override
+			public void onError(String reason) {
+				checksum.completeExceptionally(new IllegalStateException(reason));
+			}
+		});
+
+		assertTrue(handler.sendBinaryCommandAsync("AT+QFDWL=\"RAM:fixed.wav\"", parser, 5000)
+				.get(5, TimeUnit.SECONDS).isOk());
+		assertTrue(checksum.get(1, TimeUnit.SECONDS));
+		assertArrayEquals(data, received.toByteArray());
+	}
+
+	@Test
+	void sendsAndReceivesSms() throws Exception {
+		VirtualModem modem = new VirtualModem("VCOM4", 4, FAST);
+		SerialPortHandler handler = open(modem);
+		CompletableFuture<String> cmti = new CompletableFuture<>();
+		handler.onUrc("+CMTI:", cmti::complete);
+
+		byte[] pdu = "0011000B914819325476F80000AA0568656C6C6F".getBytes(StandardCharsets.US_ASCII);
+		AtResponse sent = handler.sendCommandAsync("AT+CMGS=19", pdu, 2000).get(5, TimeUnit.SECONDS);
+		assertTrue(sent.isOk());
+		assertNotNull(sent.firstLine("+CMGS:"));
+
+		int index = modem.deliverSms("07914889200026F5040B914819325476F80000520101000000000568656C6C6F");
+		assertEquals("+CMTI: \"SM\"," + index, cmti.get(5, TimeUnit.SECONDS));
+		AtResponse read = send(handler, "AT+CMGR=" + index);
+		assertEquals("+CMGR: 0,,24", read.firstLine("+CMGR:"));
+		assertTrue(send(handler, "AT+CMGD=" + index).isOk());
+		assertTrue(send(handler, "AT+CMGR=" + index).isError());
+	}
+
+	@Test
+	void scriptedResponseOverridesDefault() {
+		VirtualModem modem = new VirtualModem("VCOM5", 5, FAST);
+		modem.script("+CSQ", command -> List.of("+CME ERROR: 10"));
+		SerialPortHandler handler = open(modem);
+
+		assertTrue(send(handler, "AT+CSQ").isError());
+		assertTrue(send(handler, "AT").isOk());
+	}
+
+	@Test
+	void lateResponseAfterTimeoutDoesNotCompleteNextCommand() {
+		VirtualModem.Profile slow = VirtualModem.Profile.builder().latencyMs(150).jitterMs(0).build();
+		VirtualModem modem = new VirtualModem("VCOM6", 6, slow);
+		SerialPortHandler handler = open(modem);
+
+		CompletableFuture<AtResponse> batch = handler.sendCommandAsync("AT+CGSN;+COPS?;+CSQ;+CNUM", 100);
+		CompletableFuture<AtResponse> imei = handler.sendCommandAsync("AT+CGSN", 2000);
+		CompletableFuture<AtResponse> ready = handler.sendCommandAsync("AT", 100);
+		CompletableFuture<AtResponse> csq = handler.sendCommandAsync("AT+CSQ", 2000);
+
+		assertTrue(batch.handle((response, error) -> error).join() instanceof TimeoutException);
+		assertEquals(List.of(modem.getImei()), imei.orTimeout(5, TimeUnit.SECONDS).join().getLines());
+		assertTrue(ready.handle((response, error) -> error).join() instanceof TimeoutException);
+		AtResponse signal = csq.orTimeout(5, TimeUnit.SECONDS).join();
+		assertEquals(1, signal.getLines().size());
+		assertTrue(signal.getLines().get(0).startsWith("+CSQ:"));
+	}
+
+	@Test
+	void keepsOrderAcrossManyConcurrentModems() {
+		List<CompletableFuture<AtResponse>> futures = new ArrayList<>();
+		for (int i = 0; i < 64; i++) {
+			SerialPortHandler handler = open(new VirtualModem("VCOM" + (100 + i), 100 + i, FAST));
+			for (int j = 0; j < 20; j++) {
+				futures.add(handler.sendCommandAsync(j % 2 == 0 ? "AT+CSQ" : "AT+CGSN", 5000));
+			}
+		}
+
+		for (int i = 0; i < futures.size(); i++) {
+			AtResponse response = futures.get(i).orTimeout(10, TimeUnit.SECONDS).join();
+			assertTrue(response.isOk());
+			String line = response.getLines().get(0);
+			assertTrue(i % 2 == 0 ? line.startsWith("+CSQ:") : line.matches("\\d{15}"), line);
+		}
+	}
+}
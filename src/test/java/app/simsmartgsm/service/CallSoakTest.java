@@ -0,0 +1,350 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.config.DeviceConfig;
+import app.simsmartgsm.entity.CallRecord;
+import app.simsmartgsm.modem.ModemMetrics;
+import app.simsmartgsm.modem.ModemRegistry;
+import app.simsmartgsm.modem.VirtualModem;
+import app.simsmartgsm.modem.VirtualPortProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Soak test: N cuộc gọi đồng thời qua ModemCallService trên modem ảo, có và không ghi âm
+ * - Đo p50/p99: ATD -> ACTIVE, publish -> WebSocket gửi đi, kết thúc cuộc gọi -> CallRecord ghi xong (Mongo giả có latency)
+ * - Heap cao nhất (tổng peak các heap pool), số thread cao nhất
+ * - So với src/test/resources/soak/baseline.properties, vượt quá tolerance thì fail
+ * Chạy: mvn -Psoak test (-Dsoak.ports=100 -Dsoak.tolerance=0.25 -Dsoak.mongo-latency-ms=20)
+ * Report + baseline mới ghi ra target/soak/
+ */
+@Tag("soak")
+@Slf4j
+class CallSoakTest {
+
+	private static final int PORTS = Integer.getInteger("soak.ports", 100);
+	private static final int CALL_SECONDS = Integer.getInteger("soak.call-seconds", 2);
+	private static final long MONGO_LATENCY_MS = Long.getLong("soak.mongo-latency-ms", 20);
+	private static final double TOLERANCE = Double.parseDouble(System.getProperty("soak.tolerance", "0.25"));
+	private static final long TIMEOUT_MS = Long.getLong("soak.timeout-ms", 120_000);
+
+	// Dao động nhỏ (vài ms, vài thread) không tính là regression
+	private static final double LATENCY_SLACK_MS = 25;
+	private static final double HEAP_SLACK_MB = 64;
+	private static final double THREAD_SLACK = 8;
+
+	private static final VirtualModem.Profile PROFILE = VirtualModem.Profile.builder()
+			.latencyMs(20)
+			.jitterMs(10)
+			.alertDelayMs(300)
+			.answerDelayMs(1000)
+			.build();
+
+	@Test
+	void concurrentCallsStayWithinBaseline() throws Exception {
+		Map<String, Double> results = new TreeMap<>();
+		results.putAll(run("no-recording", false));
+		results.putAll(run("recording", true));
+
+		Path out = Paths.get("target", "soak");
+		Files.createDirectories(out);
+		StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.ROOT, "Soak: %d port(s), %ds call, mongo %dms%n", PORTS, CALL_SECONDS, MONGO_LATENCY_MS));
+		results.forEach((key, value) -> report.append(String.format(Locale.ROOT, "%-36s %10.1f%n", key, value)));
+		Files.writeString(out.resolve("report.txt"), report);
+		Properties measured = new Properties();
+		results.forEach((key, value) -> measured.setProperty(key, String.format(Locale.ROOT, "%.1f", value)));
+		try (Writer writer = Files.newBufferedWriter(out.resolve("baseline.properties"))) {
+			measured.store(writer, "Soak baseline candidate (" + PORTS + " ports), copy to src/test/resources/soak/");
+		}
+		log.info("Soak report:{}{}", System.lineSeparator(), report);
+
+		Properties baseline = loadBaseline();
+		if (baseline == null || !String.valueOf(PORTS).equals(baseline.getProperty("ports"))) {
+			log.info("No soak baseline for {} port(s), comparison skipped", PORTS);
+			return;
+		}
+		List<String> regressions = new ArrayList<>();
+		results.forEach((key, value) -> {
+			String expected = baseline.getProperty(key);
+			if (expected == null) {
+				return;
+			}
+			double limit = Double.parseDouble(expected) * (1 + TOLERANCE) + slack(key);
+			if (value > limit) {
+				regressions.add(String.format(Locale.ROOT, "%s: %.1f > %.1f (baseline %s)", key, value, limit, expected));
+			}
+		});
+		if (!regressions.isEmpty()) {
+			fail("Soak regression:\n" + String.join("\n", regressions));
+		}
+	}
+
+	private Map<String, Double> run(String mode, boolean recording) throws Exception {
+		Path recordings = Files.createTempDirectory("soak-recordings");
+		Metrics metrics = new Metrics();
+
+		// ===== Wiring như Spring, thay serial bằng modem ảo và Mongo bằng mock có latency =====
+		VirtualPortProvider ports = new VirtualPortProvider(PORTS, PROFILE);
+		ModemRegistry registry = new ModemRegistry(ports, new ModemMetrics(new SimpleMeterRegistry()));
+		ModemRecordingService recordingService = new ModemRecordingService();
+		ReflectionTestUtils.setField(recordingService, "recordingSavePath", recordings.toString());
+		ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+		MongoTemplate mongoTemplate = mongo(metrics);
+		CallRecordWriter writer = new CallRecordWriter(mongoTemplate, objectMapper,
+				new RetentionService(mongoTemplate, objectMapper, recordingService),
+				Files.createTempDirectory("soak-journal").toString());
+		writer.init();
+		SimpMessagingTemplate messaging = new SimpMessagingTemplate((message, timeout) -> {
+			if (CallStatusBroadcaster.TOPIC.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+				metrics.onBroadcast((Map<?, ?>) message.getPayload());
+			}
+			return true;
+		});
+		MeasuredBroadcaster broadcaster = new MeasuredBroadcaster(messaging, metrics);
+		broadcaster.start();
+		ModemCallService callService = new ModemCallService(recordingService, writer, new DeviceConfig(), broadcaster,
+				registry);
+		callService.registerPortListener();
+
+		List<String> names = ports.listPorts();
+		for (String name : names) {
+			registry.open(name);
+			registry.activate(name);
+		}
+		// Đợi AT+CLCC=1 của mọi port
+		Thread.sleep(500);
+
+		System.gc();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+		List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getType() == MemoryType.HEAP)
+				.toList();
+		heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+		// ===== N cuộc gọi cùng lúc =====
+		for (int i = 0; i < names.size(); i++) {
+			String port = names.get(i);
+			metrics.dialStarted.put(port, System.nanoTime());
+			assertTrue(callService.startCall(port, String.format(Locale.ROOT, "09%08d", i), recording, CALL_SECONDS));
+		}
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (System.currentTimeMillis() < deadline) {
+			boolean leased = names.stream().anyMatch(registry::isLeased);
+			if (!leased && metrics.persisted() >= names.size()) {
+				break;
+			}
+			Thread.sleep(50);
+		}
+
+		long heapPeak = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+		int threadPeak = threads.getPeakThreadCount();
+
+		callService.cleanupAll();
+		broadcaster.stop();
+		writer.shutdown();
+		registry.closeAll();
+
+		assertEquals(names.size(), metrics.persisted(), mode + ": call records persisted");
+		assertEquals(names.size(), metrics.dialToConnect.size(), mode + ": calls connected");
+		if (recording) {
+			try (Stream<Path> files = Files.list(recordings)) {
+				assertEquals(names.size(), files.filter(path -> path.toString().endsWith(".wav")).count(),
+						mode + ": recordings saved");
+			}
+		}
+
+		Map<String, Double> result = new TreeMap<>();
+		metrics.dialToConnect.put(result, mode + ".dialToConnect");
+		metrics.broadcastDelay.put(result, mode + ".broadcastDelay");
+		metrics.persistLatency.put(result, mode + ".persist");
+		result.put(mode + ".heapPeakMb", heapPeak / (1024.0 * 1024.0));
+		result.put(mode + ".peakThreads", (double) threadPeak);
+		return result;
+	}
+
+	/**
+	 * MongoTemplate giả: bulkWrite mất MONGO_LATENCY_MS, ghi nhận thời điểm record được lưu
+	 */
+	private static MongoTemplate mongo(Metrics metrics) {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		BulkOperations bulk = mock(BulkOperations.class, RETURNS_SELF);
+		List<CallRecord> pending = Collections.synchronizedList(new ArrayList<>());
+		doAnswer(invocation -> {
+			pending.add(invocation.getArgument(1));
+			return bulk;
+		}).when(bulk).replaceOne(any(Query.class), any(Object.class), any(FindAndReplaceOptions.class));
+		doAnswer(invocation -> {
+			Thread.sleep(MONGO_LATENCY_MS);
+			Instant now = Instant.now();
+			synchronized (pending) {
+				for (CallRecord record : pending) {
+					metrics.onPersisted(record, now);
+				}
+				pending.clear();
+			}
+			return null;
+		}).when(bulk).execute();
+		when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), any(Class.class))).thenReturn(bulk);
+		return mongoTemplate;
+	}
+
+	private static Properties loadBaseline() throws IOException {
+		try (InputStream in = CallSoakTest.class.getResourceAsStream("/soak/baseline.properties")) {
+			if (in == null) {
+				return null;
+			}
+			Properties properties = new Properties();
+			properties.load(in);
+			return properties;
+		}
+	}
+
+	private static double slack(String key) {
+		if (key.endsWith("heapPeakMb")) {
+			return HEAP_SLACK_MB;
+		}
+		if (key.endsWith("peakThreads")) {
+			return THREAD_SLACK;
+		}
+		return LATENCY_SLACK_MS;
+	}
+
+	/**
+	 * Ghi lại thời điểm publish theo port + callState để đo độ trễ tới lúc gửi WebSocket
+	 */
+	private static class MeasuredBroadcaster extends CallStatusBroadcaster {
+		private final Metrics metrics;
+
+		MeasuredBroadcaster(SimpMessagingTemplate messagingTemplate, Metrics metrics) {
+			super(messagingTemplate, 100);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void publish(String comPort, Map<String, Object> state) {
+			metrics.onPublish(comPort, state);
+			super.publish(comPort, state);
+		}
+	}
+
+	private static class Metrics {
+		private final Map<String, Long> dialStarted = new ConcurrentHashMap<>();
+		private final Map<String, Long> published = new ConcurrentHashMap<>();
+		private final Map<String, Boolean> persistedIds = new ConcurrentHashMap<>();
+		private final Samples dialToConnect = new Samples();
+		private final Samples broadcastDelay = new Samples();
+		private final Samples persistLatency = new Samples();
+
+		void onPublish(String port, Map<String, Object> state) {
+			Object callState = state.get("callState");
+			long now = System.nanoTime();
+			if (published.putIfAbsent(port + "/" + callState, now) == null
+					&& callState == ModemCallService.CallState.ACTIVE) {
+				Long started = dialStarted.get(port);
+				if (started != null) {
+					dialToConnect.add(now - started);
+				}
+			}
+		}
+
+		void onBroadcast(Map<?, ?> batch) {
+			long now = System.nanoTime();
+			for (Object item : (List<?>) batch.get("updates")) {
+				Map<?, ?> update = (Map<?, ?>) item;
+				Object changes = update.get("changes");
+				if (changes instanceof Map<?, ?> changed && changed.containsKey("callState")) {
+					Long at = published.get(update.get("comPort") + "/" + changed.get("callState"));
+					if (at != null) {
+						broadcastDelay.add(now - at);
+					}
+				}
+			}
+		}
+
+		void onPersisted(CallRecord record, Instant at) {
+			if (persistedIds.putIfAbsent(record.getId(), true) == null && record.getEndTime() != null) {
+				persistLatency.add(Duration.between(record.getEndTime(), at).toNanos());
+			}
+		}
+
+		int persisted() {
+			return persistedIds.size();
+		}
+	}
+
+	/**
+	 * Mẫu latency (nano giây), percentile theo nearest-rank, kết quả tính bằng ms
+	 */
+	private static class Samples {
+		private final List<Long> values = Collections.synchronizedList(new ArrayList<>());
+
+		void add(long nanos) {
+			values.add(nanos);
+		}
+
+		int size() {
+			return values.size();
+		}
+
+		void put(Map<String, Double> result, String prefix) {
+			List<Long> sorted;
+			synchronized (values) {
+				sorted = new ArrayList<>(values);
+			}
+			Collections.sort(sorted);
+			result.put(prefix + ".p50", percentile(sorted, 50));
+			result.put(prefix + ".p99", percentile(sorted, 99));
+		}
+
+		private static double percentile(List<Long> sorted, int percentile) {
+			if (sorted.isEmpty()) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+			return sorted.get(Math.max(0, rank - 1)) / 1_000_000.0;
+		}
+	}
+}
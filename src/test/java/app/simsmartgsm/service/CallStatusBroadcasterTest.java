@@ -0,0 +1,31 @@
+package app.simsmartgsm.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CallStatusBroadcasterTest {
+
+	@Test
+	void diffContainsOnlyChangedAndRemovedFields() {
+		Map<String, Object> previous = new HashMap<>();
+		previous.put("callState", "DIALING");
+		previous.put("durationSeconds", 0);
+		previous.put("recordingFileName", "rec_1");
+
+		Map<String, Object> current = new HashMap<>();
+		current.put("callState", "ACTIVE");
+		current.put("durationSeconds", 0);
+		current.put("connectTime", null);
+
+		Map<String, Object> changes = CallStatusBroadcaster.diff(previous, current);
+
+		assertEquals(3, changes.size());
+		assertEquals("ACTIVE", changes.get("callState"));
+		assertEquals(true, changes.containsKey("connectTime"));
+		assertEquals(true, changes.containsKey("recordingFileName"));
+	}
+}
@@ -0,0 +1,34 @@
+package app.simsmartgsm.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LanguageDetectionServiceTest {
+
+	@Test
+	void templateMessagesShareCacheKey() {
+		assertEquals(LanguageDetectionService.cacheKey("Your code is 123456"),
+				LanguageDetectionService.cacheKey("Your  CODE is 9981"));
+	}
+
+	@Test
+	void detectsConfiguredLanguagesAndCachesByTemplate() {
+		LanguageDetectionService service = new LanguageDetectionService(true, List.of("vi", "en"), true, 100);
+
+		assertEquals("vi", service.detect("Mã xác thực của bạn là 123456, vui lòng không chia sẻ"));
+		assertEquals("en", service.detect("Your verification code is 123456, do not share it"));
+		assertEquals("en", service.detect("Your verification code is 777, do not share it"));
+		assertEquals(2, service.getCacheSize());
+	}
+
+	@Test
+	void disabledWithSingleLanguage() {
+		LanguageDetectionService service = new LanguageDetectionService(true, List.of("vi"), false, 100);
+
+		assertNull(service.detect("Xin chào"));
+	}
+}
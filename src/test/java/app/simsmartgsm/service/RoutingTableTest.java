@@ -0,0 +1,17 @@
+package app.simsmartgsm.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RoutingTableTest {
+
+	@Test
+	void normalizesInternationalAndNationalFormats() {
+		assertEquals("912345678", RoutingTable.normalize("+84 912 345 678"));
+		assertEquals("912345678", RoutingTable.normalize("0912345678"));
+		assertEquals(RoutingTable.normalize("+81 90-1234-5678"), RoutingTable.normalize("090-1234-5678"));
+		assertNull(RoutingTable.normalize("COM5"));
+	}
+}
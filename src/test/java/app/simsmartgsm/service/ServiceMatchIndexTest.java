@@ -0,0 +1,46 @@
+package app.simsmartgsm.service;
+
+import app.simsmartgsm.entity.Service;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ServiceMatchIndexTest {
+
+	private static Service service(String code, String country, boolean active, String... matches) {
+		return Service.builder().code(code).text(code).countryCode(country).isActive(active)
+				.matches(List.of(matches)).build();
+	}
+
+	private final ServiceMatchIndex index = ServiceMatchIndex.build(List.of(
+			service("go", "VN", true, "google", "g-"),
+			service("tg", "VN", true, "telegram code"),
+			service("fb", "US", true, "facebook"),
+			service("fb_vn", "VN", true, "facebook"),
+			service("old", "VN", false, "zalo")));
+
+	@Test
+	void matchesCaseInsensitiveAndExtractsNearestCode() {
+		ServiceMatchIndex.Match match = index.match("Ref 99887766. G-482913 is your GOOGLE verification code", null);
+
+		assertEquals("go", match.getServiceCode());
+		assertEquals("482913", match.getOtpCode());
+	}
+
+	@Test
+	void prefersLongerPatternAndSameCountry() {
+		assertEquals("tg", index.match("Telegram code: 12345. Do not give this code to anyone", "VN").getServiceCode());
+		assertEquals("fb_vn", index.match("1234 la ma xac nhan Facebook cua ban", "VN").getServiceCode());
+		assertEquals("fb", index.match("Your Facebook code is 1234", "US").getServiceCode());
+	}
+
+	@Test
+	void ignoresInactiveServicesAndUnmatchedText() {
+		assertNull(index.match("Ma Zalo cua ban: 5555", null));
+		assertNull(index.match("Khuyen mai 50% hom nay", null));
+		assertEquals(5, index.getPatternCount());
+	}
+}
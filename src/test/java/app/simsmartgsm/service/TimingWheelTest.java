@@ -0,0 +1,61 @@
+package app.simsmartgsm.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+	@Test
+	void expiresWithinOneTickAfterDeadline() {
+		long start = 1_000_000;
+		TimingWheel<String> wheel = new TimingWheel<>(1000, start);
+		wheel.schedule("a", start + 2_500);
+		wheel.schedule("b", start + 3_600_000);
+
+		assertTrue(wheel.advance(start + 2_000).isEmpty());
+		assertEquals(List.of("a"), wheel.advance(start + 3_000));
+		assertTrue(wheel.advance(start + 3_599_000).isEmpty());
+		assertEquals(List.of("b"), wheel.advance(start + 3_600_000));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	void rescheduleAndCancel() {
+		TimingWheel<String> wheel = new TimingWheel<>(1000, 0);
+		wheel.schedule("a", 5_000);
+		wheel.schedule("a", 90_000);
+		wheel.schedule("b", 5_000);
+		wheel.cancel("b");
+
+		assertTrue(wheel.advance(60_000).isEmpty());
+		assertEquals(List.of("a"), wheel.advance(90_000));
+	}
+
+	@Test
+	void cascadesAcrossLevelsInDeadlineOrder() {
+		Random random = new Random(42);
+		long start = 123_456_789;
+		TimingWheel<Integer> wheel = new TimingWheel<>(1000, start);
+		long[] deadlines = new long[2000];
+		for (int i = 0; i < deadlines.length; i++) {
+			deadlines[i] = start + (long) (random.nextDouble() * 3 * 24 * 3600 * 1000);
+			wheel.schedule(i, deadlines[i]);
+		}
+
+		List<Integer> expired = new ArrayList<>();
+		for (long now = start; now <= start + 3 * 24 * 3600 * 1000L + 1000; now += 7_000) {
+			for (Integer key : wheel.advance(now)) {
+				long lateness = now - deadlines[key];
+				assertTrue(lateness >= 0 && lateness < 8_000, "key " + key + " late by " + lateness);
+				expired.add(key);
+			}
+		}
+		assertEquals(deadlines.length, expired.size());
+	}
+}